@@ -26,6 +26,7 @@ import org.jlab.clara.base.ClaraQueries.ClaraQueryBuilder;
 import org.jlab.clara.base.ClaraRequests.DeployContainerRequest;
 import org.jlab.clara.base.ClaraRequests.DeployServiceRequest;
 import org.jlab.clara.base.ClaraRequests.ExitRequest;
+import org.jlab.clara.base.ClaraRequests.ResizeServiceRequest;
 import org.jlab.clara.base.ClaraRequests.ServiceConfigRequestBuilder;
 import org.jlab.clara.base.ClaraRequests.ServiceExecuteRequestBuilder;
 import org.jlab.clara.base.ClaraSubscriptions.GlobalSubscriptionBuilder;
@@ -193,6 +194,23 @@ public class BaseOrchestrator implements AutoCloseable {
         return new DeployServiceRequest(base, targetDpe, service, classPath);
     }
 
+    /**
+     * Creates a request to change the engine pool limits of the given service.
+     * The pool will keep at least the minimum number of engines,
+     * and it will grow up to the maximum number of engines when
+     * requests wait too long for a free engine.
+     *
+     * @param service the service to resize
+     * @param minPoolSize the minimum size of the engine pool
+     * @param maxPoolSize the maximum size of the engine pool
+     * @return the request to resize the service
+     */
+    public ResizeServiceRequest resize(ServiceName service, int minPoolSize, int maxPoolSize) {
+        String dpeName = ClaraUtil.getDpeName(service.canonicalName());
+        ClaraComponent targetDpe = ClaraComponent.dpe(dpeName);
+        return new ResizeServiceRequest(base, targetDpe, service, minPoolSize, maxPoolSize);
+    }
+
 
     /**
      * Creates a request to stop the given DPE.
@@ -229,6 +229,15 @@ public final class ClaraRequests {
         private final String classPath;
 
         private String initialState = ClaraConstants.UNDEFINED;
+        private boolean enginePerThread = false;
+        private int batchSize = 1;
+        private long batchTime = 0;
+        private int maxPoolSize = 0;
+        private long deadline = 0;
+        private boolean releaseOverruns = false;
+        private int sendThreads = 0;
+        private long growDelay = 0;
+        private long idleTimeout = 0;
 
         DeployServiceRequest(ClaraBase base, ClaraComponent frontEnd,
                              ServiceName service, String classPath) {
@@ -248,6 +257,134 @@ public final class ClaraRequests {
             return self();
         }
 
+        /**
+         * Creates a separate engine instance for each thread of the service pool.
+         * Every instance processes a single request at a time, so an engine
+         * with mutable state does not need to synchronize its methods.
+         * Configuration requests are applied to all instances.
+         *
+         * @return this object, so methods can be chained
+         */
+        public DeployServiceRequest withEnginePerThread() {
+            this.enginePerThread = true;
+            return self();
+        }
+
+        /**
+         * Executes the requests received by the service in batches.
+         * A batch is executed when it has collected the given number of
+         * requests, or when the given time has passed since its first
+         * request. The engine can override
+         * {@link org.jlab.clara.engine.Engine#executeBatch} to process
+         * the whole batch at once.
+         *
+         * @param size the maximum number of requests in a batch
+         * @param time the maximum time to wait for a batch to be filled
+         * @param unit the unit of the time
+         * @return this object, so methods can be chained
+         */
+        public DeployServiceRequest withBatching(int size, long time, TimeUnit unit) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("Invalid batch size: " + size);
+            }
+            if (time < 0) {
+                throw new IllegalArgumentException("Invalid batch time: " + time);
+            }
+            this.batchSize = size;
+            this.batchTime = unit.toMicros(time);
+            return self();
+        }
+
+        /**
+         * Allows the engine pool of the service to grow up to the given size
+         * when requests wait too long for a free engine.
+         * The pool shrinks back to its initial size when engines stay idle.
+         *
+         * @param maxPoolSize the maximum size of the engine pool
+         * @return this object, so methods can be chained
+         */
+        public DeployServiceRequest withMaxPoolsize(int maxPoolSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("Invalid max pool size: " + maxPoolSize);
+            }
+            this.maxPoolSize = maxPoolSize;
+            return self();
+        }
+
+        /**
+         * Sets how fast the elastic pool of the service is resized.
+         * A new engine is created when a request has been waiting for a free
+         * engine longer than the grow delay, and an engine that has been idle
+         * longer than the idle timeout is destroyed. Only used when the pool has
+         * a {@link #withMaxPoolsize maximum size}.
+         *
+         * @param growDelay how long a queued request can wait before the pool grows
+         * @param idleTimeout how long an engine can be idle before the pool shrinks
+         * @param unit the unit of the times
+         * @return this object, so methods can be chained
+         */
+        public DeployServiceRequest withPoolTimeouts(long growDelay, long idleTimeout,
+                                                     TimeUnit unit) {
+            if (growDelay <= 0) {
+                throw new IllegalArgumentException("Invalid grow delay: " + growDelay);
+            }
+            if (idleTimeout <= 0) {
+                throw new IllegalArgumentException("Invalid idle timeout: " + idleTimeout);
+            }
+            this.growDelay = unit.toMicros(growDelay);
+            this.idleTimeout = unit.toMicros(idleTimeout);
+            return self();
+        }
+
+        /**
+         * Sets a deadline for the execution of a single request by the service.
+         * A request that runs longer than the deadline is logged with its
+         * communication id and counted in the runtime reports of the DPE.
+         *
+         * @param time the maximum execution time of a request
+         * @param unit the unit of the time
+         * @return this object, so methods can be chained
+         */
+        public DeployServiceRequest withDeadline(long time, TimeUnit unit) {
+            if (time <= 0) {
+                throw new IllegalArgumentException("Invalid deadline: " + time);
+            }
+            this.deadline = unit.toMicros(time);
+            return self();
+        }
+
+        /**
+         * Releases the requests that run longer than the execution deadline.
+         * A new engine takes the place of the overrunning engine, and an error
+         * is reported for the request, so the rest of the data keeps flowing.
+         * The result of the request is dropped when the engine completes it.
+         * Requires {@link #withDeadline a deadline}.
+         *
+         * @return this object, so methods can be chained
+         */
+        public DeployServiceRequest withOverrunRelease() {
+            this.releaseOverruns = true;
+            return self();
+        }
+
+        /**
+         * Sends the results of the service from the given number of I/O threads.
+         * An engine is free to execute the next request as soon as it
+         * completes the current one, while its result is serialized and
+         * published in the background. The results wait in a bounded queue,
+         * and the engines block when it is full.
+         *
+         * @param threads the number of threads sending the results
+         * @return this object, so methods can be chained
+         */
+        public DeployServiceRequest withAsyncSend(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("Invalid number of send threads: " + threads);
+            }
+            this.sendThreads = threads;
+            return self();
+        }
+
         @Override
         String getData() {
             return MessageUtil.buildData(ClaraConstants.START_SERVICE,
@@ -256,7 +393,45 @@ public final class ClaraRequests {
                                          classPath,
                                          poolSize,
                                          description,
-                                         initialState);
+                                         initialState,
+                                         enginePerThread,
+                                         batchSize,
+                                         batchTime,
+                                         maxPoolSize,
+                                         deadline,
+                                         releaseOverruns,
+                                         sendThreads,
+                                         growDelay,
+                                         idleTimeout);
+        }
+    }
+
+    /**
+     * A request to change the engine pool limits of a running service.
+     */
+    public static class ResizeServiceRequest extends DataRequest<ResizeServiceRequest> {
+
+        private final String data;
+
+        ResizeServiceRequest(ClaraBase base, ClaraComponent frontEnd,
+                             ServiceName service, int minPoolSize, int maxPoolSize) {
+            super(base, frontEnd, getDpeTopic(service));
+            if (minPoolSize <= 0) {
+                throw new IllegalArgumentException("Invalid min pool size: " + minPoolSize);
+            }
+            if (maxPoolSize < minPoolSize) {
+                throw new IllegalArgumentException("Invalid max pool size: " + maxPoolSize);
+            }
+            data = MessageUtil.buildData(ClaraConstants.RESIZE_SERVICE,
+                                         service.container().name(),
+                                         service.name(),
+                                         minPoolSize,
+                                         maxPoolSize);
+        }
+
+        @Override
+        String getData() {
+            return data;
         }
     }
 
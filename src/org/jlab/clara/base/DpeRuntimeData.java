@@ -40,6 +40,9 @@ public class DpeRuntimeData implements ClaraReportData<DpeName> {
     private final double cpuUsage;
     private final long memUsage;
     private final double sysLoad;
+    private final long shmOccupancy;
+    private final long shmEvicted;
+    private final long connCreated;
 
     private final Set<ContainerRuntimeData> containers;
 
@@ -49,6 +52,9 @@ public class DpeRuntimeData implements ClaraReportData<DpeName> {
         this.cpuUsage = json.optDouble("cpu_usage", Double.NaN);
         this.memUsage = json.optLong("memory_usage");
         this.sysLoad = json.optDouble("load", -1);
+        this.shmOccupancy = json.optLong("shm_occupancy");
+        this.shmEvicted = json.optLong("shm_evicted");
+        this.connCreated = json.optLong("conn_created");
 
         this.containers = JsonUtils.containerStream(json)
                                    .map(ContainerRuntimeData::new)
@@ -98,6 +104,38 @@ public class DpeRuntimeData implements ClaraReportData<DpeName> {
         return sysLoad;
     }
 
+    /**
+     * Gets the number of events currently stored in the shared memory of the
+     * DPE, waiting to be received by local services.
+     *
+     * @return the number of events in the shared memory
+     */
+    public long sharedMemoryOccupancy() {
+        return shmOccupancy;
+    }
+
+    /**
+     * Gets the total number of events evicted from the shared memory of the
+     * DPE, because no local service received them before they expired.
+     * A growing value indicates lost requests.
+     *
+     * @return the accumulated number of evicted events
+     */
+    public long sharedMemoryEvictions() {
+        return shmEvicted;
+    }
+
+    /**
+     * Gets the total number of connections to proxies created by the
+     * services of the DPE. Each thread keeps its own connections, so the
+     * number should stop growing once all threads have sent their messages.
+     *
+     * @return the accumulated number of created connections
+     */
+    public long connectionsCreated() {
+        return connCreated;
+    }
+
     /**
      * Gets the runtime report of all the containers running on the DPE.
      *
@@ -23,9 +23,15 @@
 package org.jlab.clara.base;
 
 import org.jlab.clara.util.report.JsonUtils;
+import org.jlab.clara.util.report.LatencyHistogram;
+import org.jlab.clara.util.report.SlowestEvents;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The runtime data of a running service.
@@ -38,9 +44,38 @@ public class ServiceRuntimeData implements ClaraReportData<ServiceName> {
     private final long numFailures;
     private final long shmReads;
     private final long shmWrites;
+    private final long numDirectSent;
+    private final long numIpcSent;
+    private final long connHits;
+    private final long connMisses;
     private final long bytesRecv;
     private final long bytesSent;
+    private final long numPassThrough;
     private final long execTime;
+    private final long numEngines;
+    private final long queueDepth;
+    private final long numQueued;
+    private final long queueTime;
+    private final long numRejected;
+    private final long sendQueueDepth;
+    private final long numSendQueued;
+    private final long sendQueueTime;
+    private final long numSendBlocked;
+    private final long numBatches;
+    private final long numBatched;
+    private final long batchTime;
+    private final long numJoinEvicted;
+    private final long numControl;
+    private final long controlTime;
+    private final long controlMaxTime;
+    private final long numOverruns;
+    private final List<SlowestEvents.Event> slowestEvents;
+    private final LatencyHistogram execHistogram;
+    private final LatencyHistogram queueHistogram;
+    private final LatencyHistogram sendHistogram;
+    private final LatencyHistogram execIntervalHistogram;
+    private final LatencyHistogram queueIntervalHistogram;
+    private final LatencyHistogram sendIntervalHistogram;
 
     ServiceRuntimeData(JSONObject json) {
         this.name = new ServiceName(json.getString("name"));
@@ -49,9 +84,64 @@ public class ServiceRuntimeData implements ClaraReportData<ServiceName> {
         this.numFailures = json.optLong("n_failures");
         this.shmReads = json.optLong("shm_reads");
         this.shmWrites = json.optLong("shm_writes");
+        this.numDirectSent = json.optLong("n_direct_sent");
+        this.numIpcSent = json.optLong("n_ipc_sent");
+        this.connHits = json.optLong("conn_hits");
+        this.connMisses = json.optLong("conn_misses");
         this.bytesRecv = json.optLong("bytes_recv");
         this.bytesSent = json.optLong("bytes_sent");
+        this.numPassThrough = json.optLong("n_passthrough");
         this.execTime = json.optLong("exec_time");
+        this.numEngines = json.optLong("n_engines");
+        this.queueDepth = json.optLong("queue_depth");
+        this.numQueued = json.optLong("n_queued");
+        this.queueTime = json.optLong("queue_time");
+        this.numRejected = json.optLong("n_rejected");
+        this.sendQueueDepth = json.optLong("send_queue_depth");
+        this.numSendQueued = json.optLong("n_send_queued");
+        this.sendQueueTime = json.optLong("send_queue_time");
+        this.numSendBlocked = json.optLong("n_send_blocked");
+        this.numBatches = json.optLong("n_batches");
+        this.numBatched = json.optLong("n_batched");
+        this.batchTime = json.optLong("batch_time");
+        this.numJoinEvicted = json.optLong("n_join_evicted");
+        this.numControl = json.optLong("n_control");
+        this.controlTime = json.optLong("control_time");
+        this.controlMaxTime = json.optLong("control_max_time");
+        this.numOverruns = json.optLong("n_overruns");
+        this.slowestEvents = parseSlowestEvents(json.optJSONArray("slowest_events"));
+        this.execHistogram = parseHistogram(json.optJSONObject("exec_hist"));
+        this.queueHistogram = parseHistogram(json.optJSONObject("queue_hist"));
+        this.sendHistogram = parseHistogram(json.optJSONObject("send_hist"));
+        this.execIntervalHistogram = parseHistogram(json.optJSONObject("exec_hist_interval"));
+        this.queueIntervalHistogram = parseHistogram(json.optJSONObject("queue_hist_interval"));
+        this.sendIntervalHistogram = parseHistogram(json.optJSONObject("send_hist_interval"));
+    }
+
+    private static List<SlowestEvents.Event> parseSlowestEvents(JSONArray array) {
+        if (array == null) {
+            return Collections.emptyList();
+        }
+        List<SlowestEvents.Event> events = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject event = array.getJSONObject(i);
+            events.add(new SlowestEvents.Event(event.getInt("id"), event.getLong("exec_time")));
+        }
+        return Collections.unmodifiableList(events);
+    }
+
+    private static LatencyHistogram parseHistogram(JSONObject data) {
+        if (data == null) {
+            return new LatencyHistogram(LatencyHistogram.DEFAULT_PRECISION);
+        }
+        JSONArray buckets = data.getJSONArray("buckets");
+        JSONArray counts = data.getJSONArray("counts");
+        int size = buckets.length() > 0 ? buckets.getInt(buckets.length() - 1) + 1 : 0;
+        long[] values = new long[size];
+        for (int i = 0; i < buckets.length(); i++) {
+            values[buckets.getInt(i)] = counts.getLong(i);
+        }
+        return new LatencyHistogram(data.getInt("precision"), values);
     }
 
     @Override
@@ -122,6 +212,57 @@ public class ServiceRuntimeData implements ClaraReportData<ServiceName> {
         return shmWrites;
     }
 
+    /**
+     * Gets the total number of requests sent by the service directly to the
+     * queue of services running in the same DPE.
+     * This is the number of all requests sent since the service was deployed.
+     * <p>
+     * These requests are also counted by {@link #sharedMemoryWrites}, but they
+     * are not published through the proxy of the DPE.
+     *
+     * @return the accumulated number of requests queued directly
+     */
+    public long numDirectSent() {
+        return numDirectSent;
+    }
+
+    /**
+     * Gets the total number of requests sent by the service to services of
+     * other DPEs running on the same host, through the shared memory ring of
+     * the receiving DPE.
+     * This is the number of all requests sent since the service was deployed.
+     * <p>
+     * These requests are serialized, but they are not published through the
+     * proxy of the receiving DPE.
+     *
+     * @return the accumulated number of requests written into IPC rings
+     */
+    public long numIpcSent() {
+        return numIpcSent;
+    }
+
+    /**
+     * Gets the total number of messages published by the service with a
+     * connection already kept by the sending thread.
+     *
+     * @return the accumulated number of connection cache hits
+     */
+    public long connectionHits() {
+        return connHits;
+    }
+
+    /**
+     * Gets the total number of messages published by the service that
+     * required checking out a connection from the pool of the DPE,
+     * because it was the first message of the sending thread to that proxy,
+     * or because the previous connection failed.
+     *
+     * @return the accumulated number of connection cache misses
+     */
+    public long connectionMisses() {
+        return connMisses;
+    }
+
     /**
      * Gets the total amount of bytes received by the service through the
      * network.
@@ -153,6 +294,21 @@ public class ServiceRuntimeData implements ClaraReportData<ServiceName> {
         return bytesSent;
     }
 
+    /**
+     * Gets the total number of results that the service published with the
+     * received bytes of the request, without serializing the output again.
+     * This is the number of all requests whose output data was the untouched
+     * input data, since the service was deployed.
+     * <p>
+     * Services that do not read nor replace the input data (routing or
+     * filtering services, for example) forward the received bytes.
+     *
+     * @return the accumulated number of results published without serialization
+     */
+    public long numPassThrough() {
+        return numPassThrough;
+    }
+
     /**
      * Gets the total execution time of the service.
      * This is the sum of the execution time of all requests processed by the
@@ -163,4 +319,259 @@ public class ServiceRuntimeData implements ClaraReportData<ServiceName> {
     public long executionTime() {
         return execTime;
     }
+
+    /**
+     * Gets the number of engines of the service when the report was collected.
+     * It changes over time if the service pool is elastic.
+     *
+     * @return the current size of the engine pool
+     */
+    public long numEngines() {
+        return numEngines;
+    }
+
+    /**
+     * Gets the number of requests waiting for an idle engine of the service
+     * when the report was collected.
+     *
+     * @return the current length of the request queue
+     */
+    public long queueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Gets the total number of requests that had to wait in the queue
+     * because all the engines of the service were busy.
+     * This is the number of all queued requests since the service was
+     * deployed.
+     *
+     * @return the accumulated number of queued requests
+     */
+    public long numQueued() {
+        return numQueued;
+    }
+
+    /**
+     * Gets the total time that requests spent in the queue of the service,
+     * waiting for an idle engine.
+     * This is the sum of the waiting time of all queued requests since the
+     * service was deployed.
+     *
+     * @return the accumulated waiting time, in microseconds
+     */
+    public long queueTime() {
+        return queueTime;
+    }
+
+    /**
+     * Gets the total number of requests rejected by the service because its
+     * request queue was full.
+     * This is the number of all rejected requests since the service was
+     * deployed.
+     *
+     * @return the accumulated number of rejected requests
+     */
+    public long numRejected() {
+        return numRejected;
+    }
+
+    /**
+     * Gets the number of results waiting to be sent by the I/O threads of the
+     * service when the report was collected,
+     * if the service was deployed with asynchronous sending.
+     *
+     * @return the current length of the send queue
+     */
+    public long sendQueueDepth() {
+        return sendQueueDepth;
+    }
+
+    /**
+     * Gets the total number of results sent by the I/O threads of the service,
+     * if the service was deployed with asynchronous sending.
+     *
+     * @return the accumulated number of asynchronously sent results
+     */
+    public long numSendQueued() {
+        return numSendQueued;
+    }
+
+    /**
+     * Gets the total time that results spent in the send queue of the service,
+     * waiting for an I/O thread.
+     *
+     * @return the accumulated waiting time, in microseconds
+     */
+    public long sendQueueTime() {
+        return sendQueueTime;
+    }
+
+    /**
+     * Gets the total number of times that an engine had to wait to queue its
+     * result because the send queue of the service was full.
+     *
+     * @return the accumulated number of blocked sends
+     */
+    public long numSendBlocked() {
+        return numSendBlocked;
+    }
+
+    /**
+     * Gets the total number of batches executed by the service,
+     * if the service was deployed with batching.
+     *
+     * @return the accumulated number of executed batches
+     */
+    public long numBatches() {
+        return numBatches;
+    }
+
+    /**
+     * Gets the total number of requests executed as part of a batch.
+     * Divided by the number of batches, it gives the average batch size.
+     *
+     * @return the accumulated number of batched requests
+     */
+    public long numBatched() {
+        return numBatched;
+    }
+
+    /**
+     * Gets the total time spent filling batches, from the first request
+     * of a batch until the batch was full or its waiting time expired.
+     *
+     * @return the accumulated fill time of all batches, in microseconds
+     */
+    public long batchTime() {
+        return batchTime;
+    }
+
+    /**
+     * Gets the total number of incomplete AND-joins dropped by the service,
+     * because the data from some joined service did not arrive in time,
+     * or there were too many incomplete joins.
+     *
+     * @return the accumulated number of dropped joins
+     */
+    public long numJoinEvicted() {
+        return numJoinEvicted;
+    }
+
+    /**
+     * Gets the total number of control requests processed by the service.
+     * Configuration and report setup requests are control requests,
+     * and they are processed ahead of any queued data request.
+     *
+     * @return the accumulated number of control requests
+     */
+    public long numControl() {
+        return numControl;
+    }
+
+    /**
+     * Gets the total latency of the control requests processed by the service,
+     * from the reception of a request until it was completed.
+     *
+     * @return the accumulated latency of all control requests, in microseconds
+     */
+    public long controlTime() {
+        return controlTime;
+    }
+
+    /**
+     * Gets the largest latency of a control request processed by the service.
+     *
+     * @return the maximum latency of a control request, in microseconds
+     */
+    public long controlMaxTime() {
+        return controlMaxTime;
+    }
+
+    /**
+     * Gets the total number of requests that exceeded the execution deadline
+     * of the service, if the service was deployed with a deadline.
+     *
+     * @return the accumulated number of overrunning requests
+     */
+    public long numOverruns() {
+        return numOverruns;
+    }
+
+    /**
+     * Gets the slowest requests executed by the service,
+     * with their communication id and execution time.
+     *
+     * @return the slowest requests, sorted by decreasing execution time
+     */
+    public List<SlowestEvents.Event> slowestEvents() {
+        return slowestEvents;
+    }
+
+    /**
+     * Gets the histogram of the execution time of the requests processed by
+     * the service since it was deployed.
+     * <p>
+     * The histogram is cumulative. Use {@link #executionIntervalHistogram} to
+     * get the latencies of the requests processed since the previous report.
+     *
+     * @return the accumulated histogram of execution times, in microseconds
+     */
+    public LatencyHistogram executionHistogram() {
+        return execHistogram;
+    }
+
+    /**
+     * Gets the histogram of the time that queued requests spent waiting for
+     * an idle engine, since the service was deployed.
+     *
+     * @return the accumulated histogram of queue waiting times, in microseconds
+     * @see #executionHistogram
+     */
+    public LatencyHistogram queueHistogram() {
+        return queueHistogram;
+    }
+
+    /**
+     * Gets the histogram of the time spent serializing and sending the results
+     * of the requests processed by the service, since it was deployed.
+     *
+     * @return the accumulated histogram of send times, in microseconds
+     * @see #executionHistogram
+     */
+    public LatencyHistogram sendHistogram() {
+        return sendHistogram;
+    }
+
+    /**
+     * Gets the histogram of the execution time of the requests processed by
+     * the service since the previous report published by the DPE.
+     *
+     * @return the histogram of execution times of the report interval,
+     *         in microseconds
+     */
+    public LatencyHistogram executionIntervalHistogram() {
+        return execIntervalHistogram;
+    }
+
+    /**
+     * Gets the histogram of the time that queued requests spent waiting for
+     * an idle engine, since the previous report published by the DPE.
+     *
+     * @return the histogram of queue waiting times of the report interval,
+     *         in microseconds
+     */
+    public LatencyHistogram queueIntervalHistogram() {
+        return queueIntervalHistogram;
+    }
+
+    /**
+     * Gets the histogram of the time spent serializing and sending the results
+     * of the requests, since the previous report published by the DPE.
+     *
+     * @return the histogram of send times of the report interval, in microseconds
+     */
+    public LatencyHistogram sendIntervalHistogram() {
+        return sendIntervalHistogram;
+    }
 }
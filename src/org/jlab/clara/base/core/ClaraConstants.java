@@ -66,6 +66,7 @@ public final class ClaraConstants {
     public static final String START_REMOTE_SERVICE = "startRemoteService";
     public static final String STOP_SERVICE = "stopService";
     public static final String STOP_REMOTE_SERVICE = "stopRemoteService";
+    public static final String RESIZE_SERVICE = "resizeService";
     public static final String DEPLOY_SERVICE = "deployService";
     public static final String REMOVE_SERVICE = "removeService";
 
@@ -0,0 +1,95 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.base.core;
+
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
+
+import java.util.Set;
+
+/**
+ * A lookup table of data-types indexed by the ID of their mime-types.
+ * <p>
+ * Services create the tables of their engine when deployed,
+ * and then the data-type of every message is found with a single array
+ * access, without iterating the supported data-types.
+ * The table is immutable and it can be shared by many threads.
+ *
+ * @see MimeTypeRegistry
+ */
+public final class DataTypeTable {
+
+    private final EngineDataType[] types;
+
+    /**
+     * Creates the table for the given data-types.
+     * If many data-types have the same mime-type, the first one is used.
+     *
+     * @param dataTypes the set of supported data-types
+     */
+    public DataTypeTable(Set<EngineDataType> dataTypes) {
+        int size = 0;
+        for (EngineDataType dt : dataTypes) {
+            size = Math.max(size, dt.id() + 1);
+        }
+        types = new EngineDataType[size];
+        for (EngineDataType dt : dataTypes) {
+            if (types[dt.id()] == null) {
+                types[dt.id()] = dt;
+            }
+        }
+    }
+
+    /**
+     * Gets the data-type with the given mime-type ID.
+     *
+     * @param id the ID of the mime-type
+     * @return the data-type, or null if not supported
+     */
+    public EngineDataType get(int id) {
+        if (id < 0 || id >= types.length) {
+            return null;
+        }
+        return types[id];
+    }
+
+    /**
+     * Gets the data-type with the given mime-type.
+     *
+     * @param mimeType the mime-type
+     * @return the data-type, or null if not supported
+     */
+    public EngineDataType get(String mimeType) {
+        return get(MimeTypeRegistry.lookup(mimeType));
+    }
+
+    /**
+     * Gets the data-type of the given data.
+     *
+     * @param data the engine data
+     * @return the data-type, or null if not supported
+     */
+    public EngineDataType get(EngineData data) {
+        return get(data.getMimeTypeId());
+    }
+}
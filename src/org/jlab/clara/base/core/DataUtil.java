@@ -24,6 +24,8 @@ package org.jlab.clara.base.core;
 
 import org.jlab.clara.base.ClaraUtil;
 import org.jlab.clara.base.error.ClaraException;
+import org.jlab.clara.engine.ClaraBufferSerializer;
+import org.jlab.clara.engine.ClaraSerializer;
 import org.jlab.clara.engine.EngineData;
 import org.jlab.clara.engine.EngineDataType;
 import org.jlab.clara.engine.EngineStatus;
@@ -31,14 +33,22 @@ import org.jlab.coda.xmsg.core.xMsgMessage;
 import org.jlab.coda.xmsg.core.xMsgTopic;
 import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Set;
 
 public final class DataUtil {
 
     private static final EngineDataAccessor DATA_ACCESSOR = EngineDataAccessor.getDefault();
 
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_WRITE_BUFFER_SIZE = 64 * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> WRITE_BUFFER =
+            ThreadLocal.withInitial(DataUtil::newThreadBuffer);
+
     private DataUtil() { }
 
     public static EngineData buildErrorData(String msg, int severity, Throwable exception) {
@@ -60,6 +70,33 @@ public final class DataUtil {
         return DATA_ACCESSOR.getMetadata(data);
     }
 
+    /**
+     * Creates a view of the given data, to be shared with another service
+     * of the same DPE without copying the user-data.
+     * The view has its own copy of the metadata, and setting new user-data
+     * on the view does not change the original data.
+     * The user-data object itself is shared, and it must not be modified.
+     *
+     * @param data {@link org.jlab.clara.engine.EngineData} object
+     * @return a new {@link org.jlab.clara.engine.EngineData} object
+     *         with the same user-data
+     */
+    public static EngineData shareData(EngineData data) {
+        return DATA_ACCESSOR.share(data, DATA_ACCESSOR.getMetadata(data).clone());
+    }
+
+    /**
+     * Checks if the user-data of the given data is still the received bytes,
+     * i.e., it was not de-serialized nor replaced.
+     * Such data is serialized again by forwarding the received bytes.
+     *
+     * @param data {@link org.jlab.clara.engine.EngineData} object
+     * @return true if the data will be forwarded without encoding it
+     */
+    public static boolean hasWireData(EngineData data) {
+        return DATA_ACCESSOR.getWireData(data) != null;
+    }
+
     /**
      * Builds a message by serializing passed data object using serialization
      * routine defined in one of the data types objects.
@@ -73,29 +110,158 @@ public final class DataUtil {
                                         EngineData data,
                                         Set<EngineDataType> dataTypes)
             throws ClaraException {
+        return serialize(topic, data, findDataType(dataTypes, data.getMimeType()));
+    }
+
+    /**
+     * Builds a message by serializing passed data object using serialization
+     * routine defined in one of the data types of the given table.
+     *
+     * @param topic     the topic where the data will be published
+     * @param data      the data to be serialized
+     * @param dataTypes the table of registered data types
+     * @throws ClaraException if the data could not be serialized
+     */
+    public static xMsgMessage serialize(xMsgTopic topic,
+                                        EngineData data,
+                                        DataTypeTable dataTypes)
+            throws ClaraException {
+        return serialize(topic, data, dataTypes.get(data));
+    }
 
+    private static xMsgMessage serialize(xMsgTopic topic, EngineData data, EngineDataType dt)
+            throws ClaraException {
         xMsgMeta.Builder metadata = DATA_ACCESSOR.getMetadata(data);
-        String mimeType = metadata.getDataType();
+        ByteBuffer wireData = DATA_ACCESSOR.getWireData(data);
+        if (wireData != null) {
+            // untouched received data, the bytes are still valid
+            return new xMsgMessage(topic, metadata, getBytes(wireData));
+        }
+        if (dt == null) {
+            if (data.getMimeTypeId() == EngineDataType.STRING.id()) {
+                ByteBuffer bb = EngineDataType.STRING.serializer().write(data.getData());
+                return new xMsgMessage(topic, metadata, getBytes(bb));
+            }
+            throw new ClaraException("Unsupported mime-type = " + metadata.getDataType());
+        }
+        try {
+            ClaraSerializer serializer = dt.serializer();
+            if (serializer instanceof ClaraBufferSerializer) {
+                byte[] bytes = writeBytes((ClaraBufferSerializer) serializer, data.getData());
+                metadata.setByteOrder(getByteOrder(ByteOrder.nativeOrder()));
+                return new xMsgMessage(topic, metadata, bytes);
+            }
+            ByteBuffer bb = serializer.write(data.getData());
+            metadata.setByteOrder(getByteOrder(bb.order()));
+            return new xMsgMessage(topic, metadata, getBytes(bb));
+        } catch (ClaraException e) {
+            throw new ClaraException("Could not serialize " + dt.mimeType(), e);
+        }
+    }
+
+    private static EngineDataType findDataType(Set<EngineDataType> dataTypes, String mimeType) {
         for (EngineDataType dt : dataTypes) {
             if (dt.mimeType().equals(mimeType)) {
-                try {
-                    ByteBuffer bb = dt.serializer().write(data.getData());
-                    if (bb.order() == ByteOrder.BIG_ENDIAN) {
-                        metadata.setByteOrder(xMsgMeta.Endian.Big);
-                    } else {
-                        metadata.setByteOrder(xMsgMeta.Endian.Little);
-                    }
-                    return new xMsgMessage(topic, metadata, bb.array());
-                } catch (ClaraException e) {
-                    throw new ClaraException("Could not serialize " + mimeType, e);
+                return dt;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Serializes the data into a new array, sized with the hint of the
+     * serializer, that becomes the data of the message.
+     * If the hint is exact, the data is written only once.
+     * If the hint is too large, the written bytes are copied into a smaller
+     * array. If the hint is too small, the partial write is discarded, and the
+     * data is serialized again into the buffer of the current thread, and
+     * then copied.
+     * <p>
+     * A new array is allocated for every message. The message keeps the
+     * array after it is published, while it waits in a send queue or in the
+     * shared memory, and there is no signal of when xMsg is done with it,
+     * so the array cannot be returned to a pool.
+     */
+    static byte[] writeBytes(ClaraBufferSerializer serializer, Object data)
+            throws ClaraException {
+        int size = serializer.sizeHint(data);
+        if (size >= 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[size]).order(ByteOrder.nativeOrder());
+            try {
+                serializer.write(data, buffer);
+                if (buffer.position() == size) {
+                    return buffer.array();
                 }
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (BufferOverflowException e) {
+                // the hint was too small
             }
         }
-        if (mimeType.equals(EngineDataType.STRING.mimeType())) {
-            ByteBuffer bb = EngineDataType.STRING.serializer().write(data.getData());
-            return new xMsgMessage(topic, metadata, bb.array());
+        // the pooled buffer is reused, the message needs its own bytes
+        ByteBuffer buffer = writeBuffer(serializer, data);
+        return Arrays.copyOf(buffer.array(), buffer.limit());
+    }
+
+    /**
+     * Serializes the data into the buffer of the current thread.
+     * The buffer grows when the data does not fit, and it is kept for the next
+     * serialization, unless it is too large.
+     *
+     * @return a view of the serialized data, only valid until the next call
+     */
+    static ByteBuffer writeBuffer(ClaraBufferSerializer serializer, Object data)
+            throws ClaraException {
+        ByteBuffer buffer = WRITE_BUFFER.get();
+        int size = serializer.sizeHint(data);
+        if (size > buffer.capacity()) {
+            buffer = newWriteBuffer(size);
+        }
+        while (true) {
+            buffer.clear();
+            try {
+                serializer.write(data, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = newWriteBuffer(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private static ByteBuffer newThreadBuffer() {
+        return ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer newWriteBuffer(int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        if (size <= MAX_WRITE_BUFFER_SIZE) {
+            WRITE_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Gets the remaining bytes of the buffer.
+     * The backing array is used if it contains exactly the remaining bytes,
+     * otherwise they are copied.
+     */
+    static byte[] getBytes(ByteBuffer buffer) {
+        if (buffer.hasArray()
+                && buffer.arrayOffset() == 0
+                && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static xMsgMeta.Endian getByteOrder(ByteOrder order) {
+        if (order == ByteOrder.BIG_ENDIAN) {
+            return xMsgMeta.Endian.Big;
         }
-        throw new ClaraException("Unsupported mime-type = " + mimeType);
+        return xMsgMeta.Endian.Little;
     }
 
     /**
@@ -114,22 +280,104 @@ public final class DataUtil {
     public static EngineData deserialize(xMsgMessage msg, Set<EngineDataType> dataTypes)
             throws ClaraException {
         xMsgMeta.Builder metadata = msg.getMetaData();
-        String mimeType = metadata.getDataType();
-        for (EngineDataType dt : dataTypes) {
-            if (dt.mimeType().equals(mimeType)) {
-                try {
-                    ByteBuffer bb = ByteBuffer.wrap(msg.getData());
-                    if (metadata.getByteOrder() == xMsgMeta.Endian.Little) {
-                        bb.order(ByteOrder.LITTLE_ENDIAN);
-                    }
-                    Object userData = dt.serializer().read(bb);
-                    return DATA_ACCESSOR.build(userData, metadata);
-                } catch (ClaraException e) {
-                    throw new ClaraException("CLARA-Error: Could not deserialize " + mimeType, e);
-                }
+        return deserialize(msg, findDataType(dataTypes, metadata.getDataType()));
+    }
+
+    /**
+     * De-serializes data of the message {@link org.jlab.coda.xmsg.core.xMsgMessage},
+     * using the serialization routine of the data type with the mime-type of
+     * the message, found in the given table.
+     *
+     * @param msg {@link org.jlab.coda.xmsg.core.xMsgMessage} object
+     * @param dataTypes table of {@link org.jlab.clara.engine.EngineDataType} objects
+     * @return {@link org.jlab.clara.engine.EngineData} object containing de-serialized data object
+     *          and metadata
+     * @throws ClaraException if the data could not be de-serialized
+     */
+    public static EngineData deserialize(xMsgMessage msg, DataTypeTable dataTypes)
+            throws ClaraException {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        return deserialize(msg, dataTypes.get(metadata.getDataType()));
+    }
+
+    private static EngineData deserialize(xMsgMessage msg, EngineDataType dt)
+            throws ClaraException {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        if (dt == null) {
+            throw unsupportedType(metadata);
+        }
+        try {
+            ByteBuffer bb = wrapData(msg);
+            ClaraSerializer serializer = dt.serializer();
+            Object userData;
+            if (serializer instanceof ClaraBufferSerializer) {
+                userData = ((ClaraBufferSerializer) serializer).read(bb, 0, bb.limit());
+            } else {
+                userData = serializer.read(bb);
             }
+            return DATA_ACCESSOR.build(userData, metadata);
+        } catch (ClaraException e) {
+            throw new ClaraException("CLARA-Error: Could not deserialize " + dt.mimeType(), e);
+        }
+    }
+
+    /**
+     * Creates the data of the message {@link org.jlab.coda.xmsg.core.xMsgMessage}
+     * without de-serializing it.
+     * The bytes of the message are kept by the returned data, and they are
+     * de-serialized on the first call to {@link EngineData#getData}.
+     * If the user-data is never read nor replaced, the bytes are published
+     * again as they are when the data is serialized.
+     *
+     * @param msg {@link org.jlab.coda.xmsg.core.xMsgMessage} object
+     * @param dataTypes set of {@link org.jlab.clara.engine.EngineDataType} objects
+     * @return {@link org.jlab.clara.engine.EngineData} object containing the
+     *          serialized data and metadata
+     * @throws ClaraException if the mime-type of the message is not supported
+     */
+    public static EngineData deserializeLazy(xMsgMessage msg, Set<EngineDataType> dataTypes)
+            throws ClaraException {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        return deserializeLazy(msg, findDataType(dataTypes, metadata.getDataType()));
+    }
+
+    /**
+     * Creates the data of the message {@link org.jlab.coda.xmsg.core.xMsgMessage}
+     * without de-serializing it, using the data types of the given table.
+     *
+     * @param msg {@link org.jlab.coda.xmsg.core.xMsgMessage} object
+     * @param dataTypes table of {@link org.jlab.clara.engine.EngineDataType} objects
+     * @return {@link org.jlab.clara.engine.EngineData} object containing the
+     *          serialized data and metadata
+     * @throws ClaraException if the mime-type of the message is not supported
+     * @see #deserializeLazy(xMsgMessage, Set)
+     */
+    public static EngineData deserializeLazy(xMsgMessage msg, DataTypeTable dataTypes)
+            throws ClaraException {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        return deserializeLazy(msg, dataTypes.get(metadata.getDataType()));
+    }
+
+    private static EngineData deserializeLazy(xMsgMessage msg, EngineDataType dt)
+            throws ClaraException {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        if (dt == null) {
+            throw unsupportedType(metadata);
+        }
+        return DATA_ACCESSOR.build(wrapData(msg), dt.serializer(), metadata);
+    }
+
+    private static ClaraException unsupportedType(xMsgMeta.Builder metadata) {
+        return new ClaraException("CLARA-Error: Unsupported mime-type = "
+                                  + metadata.getDataType());
+    }
+
+    private static ByteBuffer wrapData(xMsgMessage msg) {
+        ByteBuffer bb = ByteBuffer.wrap(msg.getData());
+        if (msg.getMetaData().getByteOrder() == xMsgMeta.Endian.Little) {
+            bb.order(ByteOrder.LITTLE_ENDIAN);
         }
-        throw new ClaraException("CLARA-Error: Unsupported mime-type = " + mimeType);
+        return bb;
     }
 
 
@@ -155,6 +403,14 @@ public final class DataUtil {
 
         protected abstract xMsgMeta.Builder getMetadata(EngineData data);
 
+        protected abstract ByteBuffer getWireData(EngineData data);
+
         protected abstract EngineData build(Object data, xMsgMeta.Builder metadata);
+
+        protected abstract EngineData build(ByteBuffer wireData,
+                                            ClaraSerializer serializer,
+                                            xMsgMeta.Builder metadata);
+
+        protected abstract EngineData share(EngineData data, xMsgMeta.Builder metadata);
     }
 }
@@ -0,0 +1,92 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.base.core;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns the mime-types of the registered data-types to small integer IDs.
+ * <p>
+ * Every {@link org.jlab.clara.engine.EngineDataType} registers its mime-type
+ * when created, and data-types with the same mime-type get the same ID.
+ * Mime-types are case-insensitive, so they are interned in lower case.
+ * The IDs can be used to index lookup tables, such as {@link DataTypeTable},
+ * instead of comparing the mime-type strings.
+ */
+public final class MimeTypeRegistry {
+
+    /**
+     * The ID of a mime-type that is not registered.
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private MimeTypeRegistry() { }
+
+    /**
+     * Registers the given mime-type, if it is not registered yet.
+     *
+     * @param mimeType the mime-type to be registered
+     * @return the ID of the mime-type
+     */
+    public static int register(String mimeType) {
+        int id = IDS.computeIfAbsent(normalize(mimeType), k -> NEXT_ID.getAndIncrement());
+        // the registered spelling is found without normalizing it again
+        IDS.putIfAbsent(mimeType, id);
+        return id;
+    }
+
+    /**
+     * Gets the ID of the given mime-type.
+     * Mime-types received from the network are not registered by this method.
+     *
+     * @param mimeType the mime-type to be searched
+     * @return the ID of the mime-type, or {@link #UNKNOWN} if not registered
+     */
+    public static int lookup(String mimeType) {
+        Integer id = IDS.get(mimeType);
+        if (id == null) {
+            id = IDS.get(normalize(mimeType));
+        }
+        return id != null ? id : UNKNOWN;
+    }
+
+    /**
+     * Gets the number of registered mime-types.
+     * All IDs are smaller than this value.
+     *
+     * @return the number of registered mime-types
+     */
+    public static int size() {
+        return NEXT_ID.get();
+    }
+
+    private static String normalize(String mimeType) {
+        return mimeType.toLowerCase(Locale.ROOT);
+    }
+}
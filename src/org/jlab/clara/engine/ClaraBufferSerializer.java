@@ -0,0 +1,98 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.engine;
+
+import org.jlab.clara.base.error.ClaraException;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A serializer that writes into buffers provided by the caller,
+ * and reads from a region of a buffer.
+ * <p>
+ * CLARA serializes the data directly into the array of the published
+ * message, sized with {@link #sizeHint}, so an exact hint avoids any
+ * temporary buffer or copy. If the hint is too small, the data is serialized
+ * again into a buffer kept by the thread, and copied.
+ * The array of each message is still a new allocation, because the message
+ * may be kept after it is published.
+ * The implementations must use the byte order of the given buffers.
+ */
+public interface ClaraBufferSerializer extends ClaraSerializer {
+
+    /**
+     * Estimates the size of the serialized user object.
+     * If the buffer given to {@link #write(Object, ByteBuffer)} is too small,
+     * a larger buffer is tried. If it is too large, the written bytes are
+     * copied into an array of the right size.
+     *
+     * @param data the user object stored on the {@link EngineData}
+     * @return the expected number of bytes of the serialized object
+     */
+    int sizeHint(Object data);
+
+    /**
+     * Serializes the user object into the given buffer, starting at its
+     * current position. The position is advanced past the written bytes.
+     * If the buffer is too small, a {@link BufferOverflowException} must be
+     * thrown.
+     *
+     * @param data the user object stored on the {@link EngineData}
+     * @param buffer the destination buffer
+     * @throws ClaraException if the data could not be serialized
+     */
+    void write(Object data, ByteBuffer buffer) throws ClaraException;
+
+    @Override
+    default ByteBuffer write(Object data) throws ClaraException {
+        int size = Math.max(sizeHint(data), 16);
+        while (true) {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            try {
+                write(data, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                size *= 2;
+            }
+        }
+    }
+
+    /**
+     * De-serializes the user object from a region of the given buffer.
+     * The position and limit of the buffer are not used.
+     *
+     * @param buffer the buffer with the serialized data
+     * @param offset the index of the first byte of the serialized data
+     * @param length the number of bytes of the serialized data
+     * @return the user-object
+     * @throws ClaraException if the data could not be deserialized
+     */
+    Object read(ByteBuffer buffer, int offset, int length) throws ClaraException;
+
+    @Override
+    default Object read(ByteBuffer buffer) throws ClaraException {
+        return read(buffer, buffer.position(), buffer.remaining());
+    }
+}
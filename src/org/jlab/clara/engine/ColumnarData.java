@@ -0,0 +1,367 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A named set of primitive columns with the same number of rows.
+ * <p>
+ * Each column is stored contiguously, and it is accessed as a typed NIO
+ * buffer view (i.e. an {@link IntBuffer} for an {@link ColumnType#INT INT}
+ * column), with one element per row. New columns are added empty, and filled
+ * through the returned views.
+ * <p>
+ * This is the user-data of the {@link EngineDataType#COLUMNAR} data type.
+ * Received data is not copied into new arrays: the columns are read-only
+ * views over the bytes of the message.
+ */
+public final class ColumnarData {
+
+    /**
+     * The primitive type of a column.
+     */
+    public enum ColumnType {
+        /** 8 bits integers. */
+        BYTE(Byte.BYTES),
+        /** 16 bits integers. */
+        SHORT(Short.BYTES),
+        /** 32 bits integers. */
+        INT(Integer.BYTES),
+        /** 64 bits integers. */
+        LONG(Long.BYTES),
+        /** 32 bits floating-point numbers. */
+        FLOAT(Float.BYTES),
+        /** 64 bits floating-point numbers. */
+        DOUBLE(Double.BYTES);
+
+        private final int size;
+
+        ColumnType(int size) {
+            this.size = size;
+        }
+
+        /**
+         * Gets the size of the values of this type.
+         *
+         * @return the number of bytes of a value
+         */
+        public int size() {
+            return size;
+        }
+    }
+
+    private final String name;
+    private final int rows;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final boolean readOnly;
+
+    /**
+     * Creates an empty set of columns.
+     *
+     * @param name the name of the data (i.e. the name of a bank)
+     * @param rows the number of rows of every column
+     */
+    public ColumnarData(String name, int rows) {
+        this(name, rows, false);
+    }
+
+    ColumnarData(String name, int rows, boolean readOnly) {
+        Objects.requireNonNull(name, "null name");
+        if (rows < 0) {
+            throw new IllegalArgumentException("Invalid number of rows: " + rows);
+        }
+        this.name = name;
+        this.rows = rows;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Gets the name of the data.
+     *
+     * @return the name
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Gets the number of rows of the columns.
+     *
+     * @return the number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Gets the names of the columns, in the order they were added.
+     *
+     * @return the names of the columns
+     */
+    public List<String> columnNames() {
+        return Collections.unmodifiableList(new ArrayList<>(columns.keySet()));
+    }
+
+    /**
+     * Checks if there is a column with the given name.
+     *
+     * @param column the name of the column
+     * @return true if the column exists
+     */
+    public boolean hasColumn(String column) {
+        return columns.containsKey(column);
+    }
+
+    /**
+     * Gets the type of the given column.
+     *
+     * @param column the name of the column
+     * @return the type of the column
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public ColumnType columnType(String column) {
+        return getColumn(column).type;
+    }
+
+    /**
+     * Checks if the columns can be modified.
+     * The columns of received data are read-only.
+     *
+     * @return true if the columns are read-only
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Adds a new column of bytes.
+     *
+     * @param column the name of the column
+     * @return a view of the new column, with all values set to zero
+     * @throws IllegalArgumentException if the column already exists
+     */
+    public ByteBuffer addByteColumn(String column) {
+        return addColumn(column, ColumnType.BYTE).duplicate();
+    }
+
+    /**
+     * Adds a new column of shorts.
+     *
+     * @param column the name of the column
+     * @return a view of the new column, with all values set to zero
+     * @throws IllegalArgumentException if the column already exists
+     */
+    public ShortBuffer addShortColumn(String column) {
+        return view(addColumn(column, ColumnType.SHORT)).asShortBuffer();
+    }
+
+    /**
+     * Adds a new column of ints.
+     *
+     * @param column the name of the column
+     * @return a view of the new column, with all values set to zero
+     * @throws IllegalArgumentException if the column already exists
+     */
+    public IntBuffer addIntColumn(String column) {
+        return view(addColumn(column, ColumnType.INT)).asIntBuffer();
+    }
+
+    /**
+     * Adds a new column of longs.
+     *
+     * @param column the name of the column
+     * @return a view of the new column, with all values set to zero
+     * @throws IllegalArgumentException if the column already exists
+     */
+    public LongBuffer addLongColumn(String column) {
+        return view(addColumn(column, ColumnType.LONG)).asLongBuffer();
+    }
+
+    /**
+     * Adds a new column of floats.
+     *
+     * @param column the name of the column
+     * @return a view of the new column, with all values set to zero
+     * @throws IllegalArgumentException if the column already exists
+     */
+    public FloatBuffer addFloatColumn(String column) {
+        return view(addColumn(column, ColumnType.FLOAT)).asFloatBuffer();
+    }
+
+    /**
+     * Adds a new column of doubles.
+     *
+     * @param column the name of the column
+     * @return a view of the new column, with all values set to zero
+     * @throws IllegalArgumentException if the column already exists
+     */
+    public DoubleBuffer addDoubleColumn(String column) {
+        return view(addColumn(column, ColumnType.DOUBLE)).asDoubleBuffer();
+    }
+
+    /**
+     * Gets a view of a column of bytes.
+     *
+     * @param column the name of the column
+     * @return a view of the column
+     * @throws IllegalArgumentException if the column does not exist or it
+     *         has a different type
+     */
+    public ByteBuffer getByteColumn(String column) {
+        return getColumn(column, ColumnType.BYTE).duplicate();
+    }
+
+    /**
+     * Gets a view of a column of shorts.
+     *
+     * @param column the name of the column
+     * @return a view of the column
+     * @throws IllegalArgumentException if the column does not exist or it
+     *         has a different type
+     */
+    public ShortBuffer getShortColumn(String column) {
+        return view(getColumn(column, ColumnType.SHORT)).asShortBuffer();
+    }
+
+    /**
+     * Gets a view of a column of ints.
+     *
+     * @param column the name of the column
+     * @return a view of the column
+     * @throws IllegalArgumentException if the column does not exist or it
+     *         has a different type
+     */
+    public IntBuffer getIntColumn(String column) {
+        return view(getColumn(column, ColumnType.INT)).asIntBuffer();
+    }
+
+    /**
+     * Gets a view of a column of longs.
+     *
+     * @param column the name of the column
+     * @return a view of the column
+     * @throws IllegalArgumentException if the column does not exist or it
+     *         has a different type
+     */
+    public LongBuffer getLongColumn(String column) {
+        return view(getColumn(column, ColumnType.LONG)).asLongBuffer();
+    }
+
+    /**
+     * Gets a view of a column of floats.
+     *
+     * @param column the name of the column
+     * @return a view of the column
+     * @throws IllegalArgumentException if the column does not exist or it
+     *         has a different type
+     */
+    public FloatBuffer getFloatColumn(String column) {
+        return view(getColumn(column, ColumnType.FLOAT)).asFloatBuffer();
+    }
+
+    /**
+     * Gets a view of a column of doubles.
+     *
+     * @param column the name of the column
+     * @return a view of the column
+     * @throws IllegalArgumentException if the column does not exist or it
+     *         has a different type
+     */
+    public DoubleBuffer getDoubleColumn(String column) {
+        return view(getColumn(column, ColumnType.DOUBLE)).asDoubleBuffer();
+    }
+
+    private ByteBuffer addColumn(String column, ColumnType type) {
+        Objects.requireNonNull(column, "null column name");
+        if (readOnly) {
+            throw new IllegalStateException("read-only data: " + name);
+        }
+        if (columns.containsKey(column)) {
+            throw new IllegalArgumentException("Column already exists: " + column);
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(rows * type.size).order(ByteOrder.nativeOrder());
+        columns.put(column, new Column(type, bytes));
+        return bytes;
+    }
+
+    void putColumn(String column, ColumnType type, ByteBuffer bytes) {
+        columns.put(column, new Column(type, bytes));
+    }
+
+    private Column getColumn(String column) {
+        Column c = columns.get(column);
+        if (c == null) {
+            throw new IllegalArgumentException("Column does not exist: " + column);
+        }
+        return c;
+    }
+
+    private ByteBuffer getColumn(String column, ColumnType type) {
+        Column c = getColumn(column);
+        if (c.type != type) {
+            throw new IllegalArgumentException("Column " + column + " is of type " + c.type);
+        }
+        return c.bytes;
+    }
+
+    Map<String, Column> columns() {
+        return columns;
+    }
+
+    private static ByteBuffer view(ByteBuffer bytes) {
+        return bytes.duplicate().order(bytes.order());
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarData: " + name + " " + rows + " rows " + columns.keySet();
+    }
+
+
+    /**
+     * The bytes of a column.
+     */
+    static final class Column {
+
+        final ColumnType type;
+        final ByteBuffer bytes;
+
+        Column(ColumnType type, ByteBuffer bytes) {
+            this.type = type;
+            this.bytes = bytes;
+        }
+    }
+}
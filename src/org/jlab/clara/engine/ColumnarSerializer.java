@@ -0,0 +1,193 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.engine;
+
+import org.jlab.clara.base.error.ClaraException;
+import org.jlab.clara.engine.ColumnarData.Column;
+import org.jlab.clara.engine.ColumnarData.ColumnType;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Serializes {@link ColumnarData} with every column stored contiguously.
+ * <p>
+ * The header contains the name, the number of rows, and the name and type
+ * of every column. The columns follow the header, each one aligned to
+ * 8 bytes from the start of the data. The values use the byte order of the
+ * buffer, so the read columns are just views over the received bytes.
+ */
+final class ColumnarSerializer implements ClaraBufferSerializer {
+
+    static final int FORMAT_VERSION = 1;
+
+    private static final int ALIGNMENT = 8;
+
+    private static final ColumnType[] TYPES = ColumnType.values();
+
+    @Override
+    public int sizeHint(Object data) {
+        ColumnarData cd = (ColumnarData) data;
+        int size = 3 * Integer.BYTES + stringSize(cd.name());
+        for (Map.Entry<String, Column> e : cd.columns().entrySet()) {
+            size += 1 + stringSize(e.getKey());
+        }
+        size = align(size);
+        for (Column c : cd.columns().values()) {
+            size += align(cd.rows() * c.type.size());
+        }
+        return size;
+    }
+
+    private static int stringSize(String value) {
+        return Integer.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    @Override
+    public void write(Object data, ByteBuffer buffer) throws ClaraException {
+        ColumnarData cd = (ColumnarData) data;
+        int start = buffer.position();
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(cd.rows());
+        buffer.putInt(cd.columns().size());
+        putString(buffer, cd.name());
+        for (Map.Entry<String, Column> e : cd.columns().entrySet()) {
+            buffer.put((byte) e.getValue().type.ordinal());
+            putString(buffer, e.getKey());
+        }
+        pad(buffer, start);
+        for (Column c : cd.columns().values()) {
+            putColumn(buffer, c, cd.rows());
+            pad(buffer, start);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void pad(ByteBuffer buffer, int start) {
+        while ((buffer.position() - start) % ALIGNMENT != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static void putColumn(ByteBuffer buffer, Column column, int rows) {
+        int size = rows * column.type.size();
+        ByteBuffer src = column.bytes.duplicate().order(column.bytes.order());
+        src.position(0).limit(size);
+        if (src.order() == buffer.order() || column.type == ColumnType.BYTE) {
+            buffer.put(src);
+            return;
+        }
+        // the values must be swapped to the order of the buffer
+        switch (column.type) {
+            case SHORT:
+                buffer.asShortBuffer().put(src.asShortBuffer());
+                break;
+            case INT:
+                buffer.asIntBuffer().put(src.asIntBuffer());
+                break;
+            case LONG:
+                buffer.asLongBuffer().put(src.asLongBuffer());
+                break;
+            case FLOAT:
+                buffer.asFloatBuffer().put(src.asFloatBuffer());
+                break;
+            case DOUBLE:
+                buffer.asDoubleBuffer().put(src.asDoubleBuffer());
+                break;
+            default:
+                throw new IllegalStateException("Invalid column type: " + column.type);
+        }
+        buffer.position(buffer.position() + size);
+    }
+
+    @Override
+    public Object read(ByteBuffer buffer, int offset, int length) throws ClaraException {
+        ByteBuffer in = buffer.duplicate().order(buffer.order());
+        in.limit(offset + length);
+        in.position(offset);
+        try {
+            int version = in.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new ClaraException("Unsupported columnar format version: " + version);
+            }
+            int rows = in.getInt();
+            int size = in.getInt();
+            if (rows < 0 || size < 0 || size > in.remaining()) {
+                throw new ClaraException("Invalid columnar header");
+            }
+            ColumnarData data = new ColumnarData(getString(in), rows, true);
+            ColumnType[] types = new ColumnType[size];
+            String[] names = new String[size];
+            for (int i = 0; i < size; i++) {
+                int type = in.get();
+                if (type < 0 || type >= TYPES.length) {
+                    throw new ClaraException("Invalid column type: " + type);
+                }
+                types[i] = TYPES[type];
+                names[i] = getString(in);
+            }
+            skipPadding(in, offset);
+            for (int i = 0; i < size; i++) {
+                long bytes = (long) rows * types[i].size();
+                if (bytes > in.remaining()) {
+                    throw new ClaraException("Truncated column: " + names[i]);
+                }
+                ByteBuffer column = in.slice(in.position(), (int) bytes)
+                                      .asReadOnlyBuffer()
+                                      .order(in.order());
+                data.putColumn(names[i], types[i], column);
+                in.position(in.position() + (int) bytes);
+                skipPadding(in, offset);
+            }
+            return data;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new ClaraException("Truncated columnar data", e);
+        }
+    }
+
+    private static String getString(ByteBuffer in) throws ClaraException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new ClaraException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipPadding(ByteBuffer in, int offset) {
+        int padding = align(in.position() - offset) - (in.position() - offset);
+        in.position(Math.min(in.position() + padding, in.limit()));
+    }
+}
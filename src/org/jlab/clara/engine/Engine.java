@@ -22,6 +22,8 @@
 
 package org.jlab.clara.engine;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -46,6 +48,8 @@ public interface Engine {
      * Executes the engine with the given input data.
      * <p>
      * This method can be executed concurrently in several threads.
+     * The user-data of the input may be shared with other services,
+     * and must not be modified (see {@link EngineData#getData}).
      *
      * @param input the data to execute the engine with
      * @return the result and/or status of the execution request,
@@ -58,6 +62,10 @@ public interface Engine {
      * Executes the engine with the given set of input data.
      * <p>
      * This method can be executed concurrently in several threads.
+     * <p>
+     * This method is called when the composition joins the outputs of
+     * several services into this service (i.e. {@code S1,S2+&S3;}),
+     * with the data of all the joined services for the same event.
      *
      * @param inputs the data set to execute the engine with
      * @return the result and/or status of the execution request,
@@ -66,6 +74,29 @@ public interface Engine {
      */
     EngineData executeGroup(Set<EngineData> inputs);
 
+    /**
+     * Executes the engine with a batch of independent events.
+     * <p>
+     * This method can be executed concurrently in several threads.
+     * <p>
+     * This method is called instead of {@link #execute} when the service is
+     * deployed with batching, with the data of several events (with different
+     * communication ids). The default implementation executes each event
+     * in order. Engines can override it to process the whole batch at once.
+     *
+     * @param inputs the data of the events to execute the engine with
+     * @return the results of the execution requests, one for each input and
+     *         in the same order, with the same restrictions than the result
+     *         of {@link #execute}
+     */
+    default List<EngineData> executeBatch(List<EngineData> inputs) {
+        List<EngineData> outputs = new ArrayList<>(inputs.size());
+        for (EngineData input : inputs) {
+            outputs.add(execute(input));
+        }
+        return outputs;
+    }
+
     /**
      * Gets the set of input data types supported by the engine.
      *
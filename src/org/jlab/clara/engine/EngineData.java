@@ -23,8 +23,12 @@
 package org.jlab.clara.engine;
 
 import org.jlab.clara.base.core.DataUtil.EngineDataAccessor;
+import org.jlab.clara.base.core.MimeTypeRegistry;
+import org.jlab.clara.base.error.ClaraException;
 import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
 
+import java.nio.ByteBuffer;
+
 /**
  * Engine data passed in/out to the service engine.
  */
@@ -33,6 +37,14 @@ public class EngineData {
     private Object data;
     private xMsgMeta.Builder metadata;
 
+    // the received bytes of the user-data, until they are decoded or replaced
+    private ByteBuffer wireData;
+    private ClaraSerializer serializer;
+
+    // the registered ID of the last resolved mime-type string
+    private String typeName;
+    private int typeId = MimeTypeRegistry.UNKNOWN;
+
     /**
      * Creates an empty engine data object.
      * The user-data must be set with {@link #setData}.
@@ -46,21 +58,63 @@ public class EngineData {
         this.metadata = metadata;
     }
 
+    private EngineData(ByteBuffer wireData,
+                       ClaraSerializer serializer,
+                       xMsgMeta.Builder metadata) {
+        this.wireData = wireData;
+        this.serializer = serializer;
+        this.metadata = metadata;
+    }
+
     private xMsgMeta.Builder getMetadata() {
         return metadata;
     }
 
+    private ByteBuffer getWireData() {
+        return serializer != null ? wireData : null;
+    }
+
+    private EngineData share(xMsgMeta.Builder metadata) {
+        if (serializer != null) {
+            return new EngineData(wireData, serializer, metadata);
+        }
+        return new EngineData(data, metadata);
+    }
+
     /**
      * Gets the user-data.
      * The value must be cast to its proper Java class.
      * Use {@link #getMimeType} to get information about the type of the data.
+     * <p>
+     * The user-data received by a service is de-serialized on the first call,
+     * so a service that does not need the user-data can forward it without
+     * decoding it. If the received bytes cannot be de-serialized,
+     * an {@link IllegalStateException} is thrown.
+     * <p>
+     * The input of a service can be the same user-data object received by
+     * other services of the DPE, if the sender routes its output to several
+     * local services. The received user-data must be treated as read-only:
+     * to change it, create a copy and set it as the output data.
      *
      * @return the user-data or null if not set
      */
     public Object getData() {
+        if (serializer != null) {
+            decode();
+        }
         return data;
     }
 
+    private void decode() {
+        try {
+            data = serializer.read(wireData.duplicate().order(wireData.order()));
+        } catch (ClaraException e) {
+            throw new IllegalStateException("Could not deserialize " + getMimeType(), e);
+        }
+        wireData = null;
+        serializer = null;
+    }
+
     /**
      * Gets the mime-type string for the user-data.
      * The mime-type acts as a clue for which Java class must be used when
@@ -72,6 +126,25 @@ public class EngineData {
         return metadata.getDataType();
     }
 
+    /**
+     * Gets the registered ID of the mime-type for the user-data.
+     * The ID can be compared with {@link EngineDataType#id} to check the
+     * type of the data without comparing the mime-type strings.
+     * As with the mime-type strings, the comparison is case-insensitive.
+     *
+     * @return the ID of the mime-type, or {@link MimeTypeRegistry#UNKNOWN}
+     *         if the mime-type is not registered
+     */
+    public int getMimeTypeId() {
+        String mimeType = metadata.getDataType();
+        // the ID is resolved again only if the mime-type was replaced
+        if (!mimeType.equals(typeName)) {
+            typeId = MimeTypeRegistry.lookup(mimeType);
+            typeName = mimeType;
+        }
+        return typeId;
+    }
+
     /**
      * Sets a new string data for this object.
      *
@@ -93,6 +166,8 @@ public class EngineData {
      */
     public void setData(EngineDataType dataType, Object data) {
         setData(dataType.mimeType(), data);
+        this.typeName = dataType.mimeType();
+        this.typeId = dataType.id();
     }
 
     /**
@@ -108,6 +183,8 @@ public class EngineData {
     public void setData(String mimeType, Object data) {
         this.data = data;
         this.metadata.setDataType(mimeType);
+        this.wireData = null;
+        this.serializer = null;
     }
 
     /**
@@ -320,6 +397,10 @@ public class EngineData {
 
     @Override
     public String toString() {
+        if (serializer != null) {
+            return "EngineData: " + metadata.getDataType()
+                    + " (" + wireData.remaining() + " bytes)";
+        }
         return "EngineData: " + metadata.getDataType() + " " + data;
     }
 
@@ -335,9 +416,26 @@ public class EngineData {
             return data.getMetadata();
         }
 
+        @Override
+        protected ByteBuffer getWireData(EngineData data) {
+            return data.getWireData();
+        }
+
         @Override
         protected EngineData build(Object data, xMsgMeta.Builder metadata) {
             return new EngineData(data, metadata);
         }
+
+        @Override
+        protected EngineData build(ByteBuffer wireData,
+                                   ClaraSerializer serializer,
+                                   xMsgMeta.Builder metadata) {
+            return new EngineData(wireData, serializer, metadata);
+        }
+
+        @Override
+        protected EngineData share(EngineData data, xMsgMeta.Builder metadata) {
+            return data.share(metadata);
+        }
     }
 }
@@ -24,11 +24,17 @@ package org.jlab.clara.engine;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import org.jlab.clara.base.core.MimeTypeRegistry;
 import org.jlab.clara.base.error.ClaraException;
 import org.jlab.coda.xmsg.data.xMsgD.xMsgData;
 import org.jlab.coda.xmsg.data.xMsgD.xMsgPayload;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Objects;
@@ -117,6 +123,48 @@ public class EngineDataType {
      * An array of strings.
      */
     public static final EngineDataType ARRAY_STRING = buildPrimitive(MimeType.ARRAY_STRING);
+    /**
+     * A packed array of 32 bits integers.
+     * On Java an {@code int[]} is used. An {@link java.nio.IntBuffer} can also
+     * be published, with its remaining elements.
+     * <p>
+     * The integers are written as raw fixed-size values, with the byte order of
+     * the platform, and copied in bulk, so no objects are created per element.
+     */
+    public static final EngineDataType PACKED_INT32 = buildPacked(MimeType.PACKED_INT32);
+    /**
+     * A packed array of 64 bits integers.
+     * On Java a {@code long[]} is used. A {@link java.nio.LongBuffer} can also
+     * be published, with its remaining elements.
+     *
+     * @see #PACKED_INT32
+     */
+    public static final EngineDataType PACKED_INT64 = buildPacked(MimeType.PACKED_INT64);
+    /**
+     * A packed array of floats (32 bits floating-point numbers).
+     * On Java a {@code float[]} is used. A {@link java.nio.FloatBuffer} can
+     * also be published, with its remaining elements.
+     *
+     * @see #PACKED_INT32
+     */
+    public static final EngineDataType PACKED_FLOAT = buildPacked(MimeType.PACKED_FLOAT);
+    /**
+     * A packed array of doubles (64 bits floating-point numbers).
+     * On Java a {@code double[]} is used. A {@link java.nio.DoubleBuffer} can
+     * also be published, with its remaining elements.
+     *
+     * @see #PACKED_INT32
+     */
+    public static final EngineDataType PACKED_DOUBLE = buildPacked(MimeType.PACKED_DOUBLE);
+    /**
+     * A named set of primitive columns with the same number of rows.
+     * On Java a {@link ColumnarData} object is used.
+     * <p>
+     * The columns are serialized contiguously, and the received columns are
+     * read-only views over the bytes of the message, without copying the
+     * values into new arrays.
+     */
+    public static final EngineDataType COLUMNAR = buildColumnar();
     /**
      * JSON text.
      */
@@ -131,8 +179,11 @@ public class EngineDataType {
      */
     public static final EngineDataType NATIVE_PAYLOAD = buildPayload();
 
+    private static final String OBJECT_MIME_TYPE = "binary/object;class=";
+
     private final String mimeType;
     private final ClaraSerializer serializer;
+    private final int id;
 
     /**
      * Creates a new user data type.
@@ -151,16 +202,78 @@ public class EngineDataType {
         }
         this.mimeType = mimeType;
         this.serializer = serializer;
+        this.id = MimeTypeRegistry.register(mimeType);
+    }
+
+    /**
+     * Creates a data type for the objects of the given record or POJO class.
+     * The mime-type is {@code binary/object;class=} followed by the name of the
+     * class.
+     *
+     * @param type the class of the user-data
+     * @return the data type for the class
+     * @throws IllegalArgumentException if the class cannot be serialized
+     * @see #forClass(String, Class)
+     */
+    public static EngineDataType forClass(Class<?> type) {
+        return forClass(OBJECT_MIME_TYPE + type.getName(), type);
+    }
+
+    /**
+     * Creates a data type for the objects of the given record or POJO class,
+     * with a custom mime-type.
+     * <p>
+     * The serializer is generated once per class, using method handles to
+     * access the properties of the objects, and it writes a compact binary
+     * format into the reused serialization buffers of CLARA.
+     * Records are serialized by their components. Other classes are
+     * serialized by their non-static and non-transient fields (final fields
+     * are not supported), and they must have a no-argument constructor.
+     * The properties can be primitives and their wrappers, strings, enums,
+     * byte and primitive arrays, other records or POJOs, and lists of them.
+     * Object graphs must be trees.
+     * <p>
+     * Only objects of the exact given class can be serialized, subclasses
+     * are rejected.
+     * <p>
+     * The components of a record are identified by their position, so new
+     * versions of the record can add components at the end, and remove the
+     * last ones. Unknown components are skipped when reading data written by
+     * a newer version. The components must not be reordered.
+     * <p>
+     * The fields of other classes are identified by a tag derived from their
+     * name, so fields can be added, removed or reordered, but not renamed.
+     * Unknown fields are rejected when reading data, so a new field can only
+     * be written once all the readers know it.
+     * <p>
+     * Missing properties get their default value when reading data written
+     * by another version. The properties must not change their type.
+     *
+     * @param mimeType the name of the data type
+     * @param type the class of the user-data
+     * @return the data type for the class
+     * @throws IllegalArgumentException if the class cannot be serialized
+     */
+    public static EngineDataType forClass(String mimeType, Class<?> type) {
+        return new EngineDataType(mimeType, ObjectSerializer.forClass(type));
     }
 
     private static EngineDataType buildPrimitive(MimeType mimeType) {
         return new EngineDataType(mimeType.toString(), new PrimitiveSerializer(mimeType));
     }
 
+    private static EngineDataType buildPacked(MimeType mimeType) {
+        return new EngineDataType(mimeType.toString(), new PackedArraySerializer(mimeType));
+    }
+
     private static EngineDataType buildRawBytes() {
         return new EngineDataType(MimeType.BYTES.toString(), new RawBytesSerializer());
     }
 
+    private static EngineDataType buildColumnar() {
+        return new EngineDataType(MimeType.COLUMNAR.toString(), new ColumnarSerializer());
+    }
+
     private static EngineDataType buildJson() {
         return new EngineDataType(MimeType.JSON.toString(), new StringSerializer());
     }
@@ -182,6 +295,17 @@ public class EngineDataType {
         return mimeType;
     }
 
+    /**
+     * Returns the registered ID of the mime-type of this data type.
+     * Data types with the same mime-type have the same ID.
+     *
+     * @return the mime-type ID
+     * @see MimeTypeRegistry
+     */
+    public int id() {
+        return id;
+    }
+
     /**
      * Returns the serializer of this data type.
      *
@@ -217,6 +341,13 @@ public class EngineDataType {
         ARRAY_STRING    ("binary/array-string"),
         ARRAY_BYTES     ("binary/array-string"),
 
+        PACKED_INT32    ("binary/packed-int32"),
+        PACKED_INT64    ("binary/packed-int64"),
+        PACKED_FLOAT    ("binary/packed-float"),
+        PACKED_DOUBLE   ("binary/packed-double"),
+
+        COLUMNAR        ("binary/columnar"),
+
         JSON            ("application/json"),
 
         NATIVE_DATA     ("xmsg/data"),
@@ -303,6 +434,129 @@ public class EngineDataType {
     }
 
 
+    private static class PackedArraySerializer implements ClaraBufferSerializer {
+
+        private final MimeType mimeType;
+
+        PackedArraySerializer(MimeType mimeType) {
+            this.mimeType = mimeType;
+        }
+
+        @Override
+        public int sizeHint(Object data) {
+            switch (mimeType) {
+                case PACKED_INT32:
+                    return ints(data).remaining() * Integer.BYTES;
+                case PACKED_INT64:
+                    return longs(data).remaining() * Long.BYTES;
+                case PACKED_FLOAT:
+                    return floats(data).remaining() * Float.BYTES;
+                case PACKED_DOUBLE:
+                    return doubles(data).remaining() * Double.BYTES;
+                default:
+                    throw new IllegalStateException("Invalid mime-type: " + mimeType.toString());
+            }
+        }
+
+        @Override
+        public ByteBuffer write(Object data) throws ClaraException {
+            ByteBuffer bb = ByteBuffer.allocate(sizeHint(data)).order(ByteOrder.nativeOrder());
+            write(data, bb);
+            bb.flip();
+            return bb;
+        }
+
+        @Override
+        public void write(Object data, ByteBuffer buffer) throws ClaraException {
+            int size;
+            switch (mimeType) {
+                case PACKED_INT32: {
+                    IntBuffer src = ints(data);
+                    size = src.remaining() * Integer.BYTES;
+                    buffer.asIntBuffer().put(src);
+                    break;
+                }
+                case PACKED_INT64: {
+                    LongBuffer src = longs(data);
+                    size = src.remaining() * Long.BYTES;
+                    buffer.asLongBuffer().put(src);
+                    break;
+                }
+                case PACKED_FLOAT: {
+                    FloatBuffer src = floats(data);
+                    size = src.remaining() * Float.BYTES;
+                    buffer.asFloatBuffer().put(src);
+                    break;
+                }
+                case PACKED_DOUBLE: {
+                    DoubleBuffer src = doubles(data);
+                    size = src.remaining() * Double.BYTES;
+                    buffer.asDoubleBuffer().put(src);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Invalid mime-type: " + mimeType.toString());
+            }
+            buffer.position(buffer.position() + size);
+        }
+
+        @Override
+        public Object read(ByteBuffer buffer, int offset, int length) throws ClaraException {
+            ByteBuffer data = buffer.duplicate().order(buffer.order());
+            data.limit(offset + length);
+            data.position(offset);
+            switch (mimeType) {
+                case PACKED_INT32: {
+                    IntBuffer src = data.asIntBuffer();
+                    int[] a = new int[src.remaining()];
+                    src.get(a);
+                    return a;
+                }
+                case PACKED_INT64: {
+                    LongBuffer src = data.asLongBuffer();
+                    long[] a = new long[src.remaining()];
+                    src.get(a);
+                    return a;
+                }
+                case PACKED_FLOAT: {
+                    FloatBuffer src = data.asFloatBuffer();
+                    float[] a = new float[src.remaining()];
+                    src.get(a);
+                    return a;
+                }
+                case PACKED_DOUBLE: {
+                    DoubleBuffer src = data.asDoubleBuffer();
+                    double[] a = new double[src.remaining()];
+                    src.get(a);
+                    return a;
+                }
+                default:
+                    throw new IllegalStateException("Invalid mime-type: " + mimeType.toString());
+            }
+        }
+
+        private static IntBuffer ints(Object data) {
+            return data instanceof int[] ? IntBuffer.wrap((int[]) data)
+                                         : ((IntBuffer) data).duplicate();
+        }
+
+        private static LongBuffer longs(Object data) {
+            return data instanceof long[] ? LongBuffer.wrap((long[]) data)
+                                          : ((LongBuffer) data).duplicate();
+        }
+
+        private static FloatBuffer floats(Object data) {
+            return data instanceof float[] ? FloatBuffer.wrap((float[]) data)
+                                           : ((FloatBuffer) data).duplicate();
+        }
+
+        private static DoubleBuffer doubles(Object data) {
+            return data instanceof double[] ? DoubleBuffer.wrap((double[]) data)
+                                            : ((DoubleBuffer) data).duplicate();
+        }
+    }
+
+
     private static class PrimitiveSerializer implements ClaraSerializer {
 
         private final MimeType mimeType;
@@ -0,0 +1,924 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.engine;
+
+import org.jlab.clara.base.error.ClaraException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serializes the objects of a record or POJO class into a compact binary
+ * format.
+ * <p>
+ * The properties of the class are resolved once, when the serializer is
+ * created, into method handles to read and write them. Records use their
+ * components and canonical constructor. Other classes use their non-static
+ * non-transient fields, including the fields of the super-classes, and they
+ * must have a no-argument constructor.
+ * <p>
+ * Every property is written with a key composed of its number and its wire
+ * type. Null properties are not written, and the reader leaves the missing
+ * properties with their default values.
+ * <p>
+ * The properties of a record are numbered in the order of its components.
+ * The reader skips the properties it does not know, so a record can evolve
+ * by appending new components, or by removing the last ones.
+ * <p>
+ * The fields of other classes have no stable order (reflection does not
+ * return them in the order of declaration), so each field is numbered with
+ * a tag derived from the hash of its name, which does not change when other
+ * fields are added or removed. Two fields with the same tag are rejected
+ * when the serializer is created. The reader rejects the tags it does not
+ * know, instead of skipping them, since they may come from a renamed field.
+ * So new fields can be added to a class once all the readers know them,
+ * and removed fields must not be written anymore.
+ * <p>
+ * Only objects of the exact class of the property can be written, since the
+ * properties of a subclass would be lost.
+ */
+final class ObjectSerializer implements ClaraBufferSerializer {
+
+    static final int FORMAT_VERSION = 1;
+
+    private static final int END = 0;
+
+    private static final int VARINT = 0;
+    private static final int FIXED32 = 1;
+    private static final int FIXED64 = 2;
+    private static final int LENGTH = 3;
+    private static final int OBJECT = 4;
+    private static final int LIST = 5;
+
+    private static final int WIRE_BITS = 3;
+    private static final int WIRE_MASK = (1 << WIRE_BITS) - 1;
+
+    // the tags of POJO fields fit in a key of three bytes
+    private static final int MAX_TAG = (1 << 21) - 1;
+
+    private static final ClassValue<ObjectSerializer> SERIALIZERS = new SerializerCache();
+
+    private final ObjectCodec root;
+
+    // the size of the last object, as a hint for the next one
+    private volatile int lastSize = 256;
+
+    private ObjectSerializer(Class<?> type) {
+        root = new Builder().objectCodec(type);
+    }
+
+    /**
+     * Gets the serializer of the given class.
+     * The serializer is created only once per class.
+     *
+     * @throws IllegalArgumentException if the class cannot be serialized
+     */
+    static ObjectSerializer forClass(Class<?> type) {
+        return SERIALIZERS.get(type);
+    }
+
+    @Override
+    public int sizeHint(Object data) {
+        return lastSize;
+    }
+
+    @Override
+    public void write(Object data, ByteBuffer buffer) throws ClaraException {
+        if (!root.type.isInstance(data)) {
+            throw new ClaraException("Expected " + root.type.getName() + " but got "
+                                     + (data == null ? "null" : data.getClass().getName()));
+        }
+        int start = buffer.position();
+        buffer.put((byte) FORMAT_VERSION);
+        root.write(data, buffer);
+        lastSize = buffer.position() - start;
+    }
+
+    @Override
+    public Object read(ByteBuffer buffer, int offset, int length) throws ClaraException {
+        ByteBuffer in = buffer.duplicate().order(buffer.order());
+        in.limit(offset + length);
+        in.position(offset);
+        try {
+            int version = in.get();
+            if (version != FORMAT_VERSION) {
+                throw new ClaraException("Unsupported object format version: " + version);
+            }
+            return root.read(in);
+        } catch (BufferUnderflowException e) {
+            throw new ClaraException("Truncated " + root.type.getName() + " data", e);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // a position or length beyond the data
+            throw new ClaraException("Malformed " + root.type.getName() + " data", e);
+        }
+    }
+
+
+    private static void writeVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long readVarint(ByteBuffer in) throws ClaraException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ClaraException("Malformed varint");
+    }
+
+    private static void writeSigned(ByteBuffer out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static long readSigned(ByteBuffer in) throws ClaraException {
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int readLength(ByteBuffer in) throws ClaraException {
+        long length = readVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new ClaraException("Invalid length: " + length);
+        }
+        return (int) length;
+    }
+
+    private static void skip(ByteBuffer in, int wireType) throws ClaraException {
+        switch (wireType) {
+            case VARINT:
+                readVarint(in);
+                break;
+            case FIXED32:
+                in.position(in.position() + Integer.BYTES);
+                break;
+            case FIXED64:
+                in.position(in.position() + Long.BYTES);
+                break;
+            case LENGTH:
+                in.position(in.position() + readLength(in));
+                break;
+            case OBJECT:
+                for (long key = readVarint(in); key != END; key = readVarint(in)) {
+                    skip(in, (int) (key & WIRE_MASK));
+                }
+                break;
+            case LIST: {
+                long size = readVarint(in);
+                int elementType = in.get();
+                for (long i = 0; i < size; i++) {
+                    skip(in, elementType);
+                }
+                break;
+            }
+            default:
+                throw new ClaraException("Unknown wire type: " + wireType);
+        }
+    }
+
+    private static final class SerializerCache extends ClassValue<ObjectSerializer> {
+
+        @Override
+        protected ObjectSerializer computeValue(Class<?> type) {
+            return new ObjectSerializer(type);
+        }
+    }
+
+
+    private static ClaraException propertyError(String action, Property property, Throwable t) {
+        return new ClaraException("Could not " + action + " property " + property.name, t);
+    }
+
+
+    /**
+     * Encodes a value of some (non-primitive) Java type.
+     */
+    private abstract static class Codec {
+
+        final int wireType;
+
+        Codec(int wireType) {
+            this.wireType = wireType;
+        }
+
+        abstract void write(Object value, ByteBuffer out) throws ClaraException;
+
+        abstract Object read(ByteBuffer in) throws ClaraException;
+    }
+
+
+    /**
+     * The Java kind of a property.
+     * Primitive properties are accessed without boxing.
+     */
+    private enum Kind {
+        BOOLEAN, BYTE, SHORT, CHAR, INT, LONG, FLOAT, DOUBLE, REFERENCE
+    }
+
+
+    /**
+     * A property of a class, with its method handles.
+     */
+    private static final class Property {
+
+        final String name;
+        final int key;
+        final Kind kind;
+        final Codec codec;
+        final Object defaultValue;
+
+        // typed as (Object)T, with T the primitive type or Object
+        final MethodHandle getter;
+        // typed as (Object,T)void, or null for records
+        final MethodHandle setter;
+
+        Property(String name, int number, Class<?> type, Codec codec,
+                 MethodHandle getter, MethodHandle setter) {
+            this.name = name;
+            this.kind = kindOf(type);
+            this.codec = codec;
+            this.key = (number << WIRE_BITS) | wireType();
+            this.defaultValue = defaultValue(type);
+            Class<?> erased = type.isPrimitive() ? type : Object.class;
+            this.getter = getter.asType(MethodType.methodType(erased, Object.class));
+            this.setter = setter == null ? null
+                    : setter.asType(MethodType.methodType(void.class, Object.class, erased));
+        }
+
+        private static Kind kindOf(Class<?> type) {
+            if (!type.isPrimitive()) {
+                return Kind.REFERENCE;
+            }
+            return Kind.valueOf(type.getName().toUpperCase(Locale.ROOT));
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            switch (kindOf(type)) {
+                case BOOLEAN:
+                    return false;
+                case BYTE:
+                    return (byte) 0;
+                case SHORT:
+                    return (short) 0;
+                case CHAR:
+                    return (char) 0;
+                case INT:
+                    return 0;
+                case LONG:
+                    return 0L;
+                case FLOAT:
+                    return 0.0f;
+                case DOUBLE:
+                    return 0.0;
+                default:
+                    return null;
+            }
+        }
+
+        int wireType() {
+            switch (kind) {
+                case FLOAT:
+                    return FIXED32;
+                case DOUBLE:
+                    return FIXED64;
+                case REFERENCE:
+                    return codec.wireType;
+                default:
+                    return VARINT;
+            }
+        }
+
+        void write(Object obj, ByteBuffer out) throws Throwable {
+            switch (kind) {
+                case BOOLEAN: {
+                    boolean value = (boolean) getter.invokeExact(obj);
+                    writeVarint(out, key);
+                    writeVarint(out, value ? 1 : 0);
+                    break;
+                }
+                case BYTE:
+                    writeVarint(out, key);
+                    writeSigned(out, (byte) getter.invokeExact(obj));
+                    break;
+                case SHORT:
+                    writeVarint(out, key);
+                    writeSigned(out, (short) getter.invokeExact(obj));
+                    break;
+                case CHAR:
+                    writeVarint(out, key);
+                    writeVarint(out, (char) getter.invokeExact(obj));
+                    break;
+                case INT:
+                    writeVarint(out, key);
+                    writeSigned(out, (int) getter.invokeExact(obj));
+                    break;
+                case LONG:
+                    writeVarint(out, key);
+                    writeSigned(out, (long) getter.invokeExact(obj));
+                    break;
+                case FLOAT:
+                    writeVarint(out, key);
+                    out.putFloat((float) getter.invokeExact(obj));
+                    break;
+                case DOUBLE:
+                    writeVarint(out, key);
+                    out.putDouble((double) getter.invokeExact(obj));
+                    break;
+                default: {
+                    Object value = (Object) getter.invokeExact(obj);
+                    if (value != null) {
+                        writeVarint(out, key);
+                        codec.write(value, out);
+                    }
+                }
+            }
+        }
+
+        Object readValue(ByteBuffer in) throws ClaraException {
+            switch (kind) {
+                case BOOLEAN:
+                    return readVarint(in) != 0;
+                case BYTE:
+                    return (byte) readSigned(in);
+                case SHORT:
+                    return (short) readSigned(in);
+                case CHAR:
+                    return (char) readVarint(in);
+                case INT:
+                    return (int) readSigned(in);
+                case LONG:
+                    return readSigned(in);
+                case FLOAT:
+                    return in.getFloat();
+                case DOUBLE:
+                    return in.getDouble();
+                default:
+                    return codec.read(in);
+            }
+        }
+
+        void readInto(Object obj, ByteBuffer in) throws Throwable {
+            switch (kind) {
+                case BOOLEAN:
+                    setter.invokeExact(obj, readVarint(in) != 0);
+                    break;
+                case BYTE:
+                    setter.invokeExact(obj, (byte) readSigned(in));
+                    break;
+                case SHORT:
+                    setter.invokeExact(obj, (short) readSigned(in));
+                    break;
+                case CHAR:
+                    setter.invokeExact(obj, (char) readVarint(in));
+                    break;
+                case INT:
+                    setter.invokeExact(obj, (int) readSigned(in));
+                    break;
+                case LONG:
+                    setter.invokeExact(obj, readSigned(in));
+                    break;
+                case FLOAT:
+                    setter.invokeExact(obj, in.getFloat());
+                    break;
+                case DOUBLE:
+                    setter.invokeExact(obj, in.getDouble());
+                    break;
+                default:
+                    setter.invokeExact(obj, codec.read(in));
+            }
+        }
+    }
+
+
+    /**
+     * Encodes the properties of a record or POJO class.
+     * The codec is created empty and completed later,
+     * to support classes that contain themselves.
+     */
+    private static final class ObjectCodec extends Codec {
+
+        final Class<?> type;
+        final boolean isRecord;
+
+        Property[] properties;
+        // the sorted tags of the properties, for POJOs
+        int[] tags;
+        // the canonical constructor spread over an array, for records,
+        // or the no-argument constructor, for POJOs
+        MethodHandle constructor;
+
+        ObjectCodec(Class<?> type) {
+            super(OBJECT);
+            this.type = type;
+            this.isRecord = type.isRecord();
+        }
+
+        @Override
+        void write(Object value, ByteBuffer out) throws ClaraException {
+            if (value.getClass() != type) {
+                throw new ClaraException("Expected " + type.getName() + " but got subclass "
+                                         + value.getClass().getName());
+            }
+            for (Property property : properties) {
+                try {
+                    property.write(value, out);
+                } catch (ClaraException | RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw propertyError("write", property, t);
+                }
+            }
+            writeVarint(out, END);
+        }
+
+        @Override
+        Object read(ByteBuffer in) throws ClaraException {
+            if (isRecord) {
+                return readRecord(in);
+            }
+            return readObject(in);
+        }
+
+        private Object readRecord(ByteBuffer in) throws ClaraException {
+            Object[] args = new Object[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+                args[i] = properties[i].defaultValue;
+            }
+            for (long key = readVarint(in); key != END; key = readVarint(in)) {
+                Property property = find(key);
+                if (property == null) {
+                    skip(in, (int) (key & WIRE_MASK));
+                } else {
+                    args[(int) (key >>> WIRE_BITS) - 1] = property.readValue(in);
+                }
+            }
+            try {
+                return (Object) constructor.invokeExact(args);
+            } catch (Throwable t) {
+                throw new ClaraException("Could not create " + type.getName(), t);
+            }
+        }
+
+        private Object readObject(ByteBuffer in) throws ClaraException {
+            Object obj;
+            try {
+                obj = (Object) constructor.invokeExact();
+            } catch (Throwable t) {
+                throw new ClaraException("Could not create " + type.getName(), t);
+            }
+            for (long key = readVarint(in); key != END; key = readVarint(in)) {
+                Property property = find(key);
+                if (property == null) {
+                    skip(in, (int) (key & WIRE_MASK));
+                    continue;
+                }
+                try {
+                    property.readInto(obj, in);
+                } catch (ClaraException | RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw propertyError("read", property, t);
+                }
+            }
+            return obj;
+        }
+
+        private Property find(long key) throws ClaraException {
+            long number = key >>> WIRE_BITS;
+            Property property;
+            if (isRecord) {
+                if (number < 1 || number > properties.length) {
+                    return null;
+                }
+                property = properties[(int) number - 1];
+            } else {
+                int index = number > MAX_TAG ? -1 : Arrays.binarySearch(tags, (int) number);
+                if (index < 0) {
+                    throw new ClaraException("Unknown property tag " + number
+                                             + " of " + type.getName());
+                }
+                property = properties[index];
+            }
+            if (property.key != key) {
+                throw new ClaraException("Incompatible wire type for property " + property.name
+                                         + " of " + type.getName());
+            }
+            return property;
+        }
+    }
+
+
+    /**
+     * Encodes a list, with the wire type of its elements.
+     */
+    private static final class ListCodec extends Codec {
+
+        final Codec element;
+
+        ListCodec(Codec element) {
+            super(LIST);
+            this.element = element;
+        }
+
+        @Override
+        void write(Object value, ByteBuffer out) throws ClaraException {
+            List<?> list = (List<?>) value;
+            writeVarint(out, list.size());
+            out.put((byte) element.wireType);
+            for (Object e : list) {
+                if (e == null) {
+                    throw new ClaraException("null elements are not supported");
+                }
+                element.write(e, out);
+            }
+        }
+
+        @Override
+        Object read(ByteBuffer in) throws ClaraException {
+            long size = readVarint(in);
+            if (size < 0 || size > in.remaining()) {
+                throw new ClaraException("Invalid list size: " + size);
+            }
+            int wireType = in.get();
+            if (wireType != element.wireType) {
+                throw new ClaraException("Incompatible wire type for list elements");
+            }
+            List<Object> list = new ArrayList<>((int) size);
+            for (long i = 0; i < size; i++) {
+                list.add(element.read(in));
+            }
+            return list;
+        }
+    }
+
+
+    /**
+     * The simple types supported as properties or list elements.
+     */
+    private enum Value {
+        STRING, BYTES, INTS, LONGS, FLOATS, DOUBLES,
+        BOOLEAN, CHAR, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, ENUM
+    }
+
+
+    /**
+     * Encodes the values of a simple type.
+     */
+    private static final class ValueCodec extends Codec {
+
+        private final Value value;
+        private final Object[] constants;
+
+        ValueCodec(Value value, int wireType, Class<?> type) {
+            super(wireType);
+            this.value = value;
+            this.constants = value == Value.ENUM ? type.getEnumConstants() : null;
+        }
+
+        @Override
+        void write(Object obj, ByteBuffer out) {
+            switch (value) {
+                case STRING:
+                    writeBytes(((String) obj).getBytes(StandardCharsets.UTF_8), out);
+                    break;
+                case BYTES:
+                    writeBytes((byte[]) obj, out);
+                    break;
+                case INTS: {
+                    int[] array = (int[]) obj;
+                    int size = array.length * Integer.BYTES;
+                    writeVarint(out, size);
+                    out.asIntBuffer().put(array);
+                    out.position(out.position() + size);
+                    break;
+                }
+                case LONGS: {
+                    long[] array = (long[]) obj;
+                    int size = array.length * Long.BYTES;
+                    writeVarint(out, size);
+                    out.asLongBuffer().put(array);
+                    out.position(out.position() + size);
+                    break;
+                }
+                case FLOATS: {
+                    float[] array = (float[]) obj;
+                    int size = array.length * Float.BYTES;
+                    writeVarint(out, size);
+                    out.asFloatBuffer().put(array);
+                    out.position(out.position() + size);
+                    break;
+                }
+                case DOUBLES: {
+                    double[] array = (double[]) obj;
+                    int size = array.length * Double.BYTES;
+                    writeVarint(out, size);
+                    out.asDoubleBuffer().put(array);
+                    out.position(out.position() + size);
+                    break;
+                }
+                case BOOLEAN:
+                    writeVarint(out, (Boolean) obj ? 1 : 0);
+                    break;
+                case CHAR:
+                    writeVarint(out, (Character) obj);
+                    break;
+                case FLOAT:
+                    out.putFloat((Float) obj);
+                    break;
+                case DOUBLE:
+                    out.putDouble((Double) obj);
+                    break;
+                case ENUM:
+                    writeVarint(out, ((Enum<?>) obj).ordinal());
+                    break;
+                default:
+                    writeSigned(out, ((Number) obj).longValue());
+            }
+        }
+
+        private static void writeBytes(byte[] bytes, ByteBuffer out) {
+            writeVarint(out, bytes.length);
+            out.put(bytes);
+        }
+
+        @Override
+        Object read(ByteBuffer in) throws ClaraException {
+            switch (value) {
+                case STRING: {
+                    int length = readLength(in);
+                    if (in.hasArray()) {
+                        int start = in.arrayOffset() + in.position();
+                        in.position(in.position() + length);
+                        return new String(in.array(), start, length, StandardCharsets.UTF_8);
+                    }
+                    byte[] bytes = new byte[length];
+                    in.get(bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                case BYTES: {
+                    byte[] array = new byte[readLength(in)];
+                    in.get(array);
+                    return array;
+                }
+                case INTS: {
+                    int[] array = new int[readLength(in) / Integer.BYTES];
+                    in.asIntBuffer().get(array);
+                    in.position(in.position() + array.length * Integer.BYTES);
+                    return array;
+                }
+                case LONGS: {
+                    long[] array = new long[readLength(in) / Long.BYTES];
+                    in.asLongBuffer().get(array);
+                    in.position(in.position() + array.length * Long.BYTES);
+                    return array;
+                }
+                case FLOATS: {
+                    float[] array = new float[readLength(in) / Float.BYTES];
+                    in.asFloatBuffer().get(array);
+                    in.position(in.position() + array.length * Float.BYTES);
+                    return array;
+                }
+                case DOUBLES: {
+                    double[] array = new double[readLength(in) / Double.BYTES];
+                    in.asDoubleBuffer().get(array);
+                    in.position(in.position() + array.length * Double.BYTES);
+                    return array;
+                }
+                case BOOLEAN:
+                    return readVarint(in) != 0;
+                case CHAR:
+                    return (char) readVarint(in);
+                case BYTE:
+                    return (byte) readSigned(in);
+                case SHORT:
+                    return (short) readSigned(in);
+                case INT:
+                    return (int) readSigned(in);
+                case FLOAT:
+                    return in.getFloat();
+                case DOUBLE:
+                    return in.getDouble();
+                case ENUM: {
+                    long ordinal = readVarint(in);
+                    if (ordinal < 0 || ordinal >= constants.length) {
+                        throw new ClaraException("Unknown enum constant: " + ordinal);
+                    }
+                    return constants[(int) ordinal];
+                }
+                default:
+                    return readSigned(in);
+            }
+        }
+    }
+
+
+    /**
+     * Resolves the codecs and method handles of a class and its properties.
+     */
+    private static final class Builder {
+
+        private static final Map<Class<?>, Value> VALUES = new HashMap<>();
+
+        static {
+            VALUES.put(String.class, Value.STRING);
+            VALUES.put(byte[].class, Value.BYTES);
+            VALUES.put(int[].class, Value.INTS);
+            VALUES.put(long[].class, Value.LONGS);
+            VALUES.put(float[].class, Value.FLOATS);
+            VALUES.put(double[].class, Value.DOUBLES);
+            VALUES.put(Boolean.class, Value.BOOLEAN);
+            VALUES.put(Character.class, Value.CHAR);
+            VALUES.put(Byte.class, Value.BYTE);
+            VALUES.put(Short.class, Value.SHORT);
+            VALUES.put(Integer.class, Value.INT);
+            VALUES.put(Long.class, Value.LONG);
+            VALUES.put(Float.class, Value.FLOAT);
+            VALUES.put(Double.class, Value.DOUBLE);
+        }
+
+        private final Map<Class<?>, ObjectCodec> objects = new HashMap<>();
+
+        ObjectCodec objectCodec(Class<?> type) {
+            ObjectCodec codec = objects.get(type);
+            if (codec != null) {
+                return codec;
+            }
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers())
+                    || type.isArray() || type.isPrimitive() || type.isEnum()) {
+                throw new IllegalArgumentException("Not a record or POJO class: " + type);
+            }
+            codec = new ObjectCodec(type);
+            objects.put(type, codec);
+            try {
+                MethodHandles.Lookup lookup =
+                        MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                if (type.isRecord()) {
+                    initRecord(codec, lookup);
+                } else {
+                    initObject(codec, lookup);
+                }
+            } catch (IllegalAccessException | NoSuchMethodException e) {
+                throw new IllegalArgumentException("Cannot access class " + type.getName(), e);
+            }
+            return codec;
+        }
+
+        private void initRecord(ObjectCodec codec, MethodHandles.Lookup lookup)
+                throws IllegalAccessException, NoSuchMethodException {
+            RecordComponent[] components = codec.type.getRecordComponents();
+            Class<?>[] types = new Class<?>[components.length];
+            Property[] properties = new Property[components.length];
+            for (int i = 0; i < components.length; i++) {
+                RecordComponent rc = components[i];
+                types[i] = rc.getType();
+                properties[i] = new Property(rc.getName(), i + 1, rc.getType(),
+                                             codec(rc.getType(), rc.getGenericType()),
+                                             lookup.unreflect(rc.getAccessor()), null);
+            }
+            MethodHandle ctor = lookup.findConstructor(codec.type,
+                                                       MethodType.methodType(void.class, types));
+            codec.constructor = ctor.asSpreader(Object[].class, types.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            codec.properties = properties;
+        }
+
+        private void initObject(ObjectCodec codec, MethodHandles.Lookup lookup)
+                throws IllegalAccessException, NoSuchMethodException {
+            List<Field> fields = new ArrayList<>();
+            collectFields(codec.type, fields);
+            fields.sort(Comparator.comparingInt(f -> tag(f.getName())));
+            Property[] properties = new Property[fields.size()];
+            int[] tags = new int[fields.size()];
+            for (int i = 0; i < properties.length; i++) {
+                Field field = fields.get(i);
+                tags[i] = tag(field.getName());
+                if (i > 0 && tags[i] == tags[i - 1]) {
+                    throw new IllegalArgumentException("Fields " + fields.get(i - 1).getName()
+                            + " and " + field.getName() + " have the same tag, rename one: "
+                            + codec.type);
+                }
+                if (Modifier.isFinal(field.getModifiers())) {
+                    throw new IllegalArgumentException("Final field " + field.getName()
+                            + " is not supported, use a record instead: " + codec.type);
+                }
+                MethodHandles.Lookup fieldLookup =
+                        MethodHandles.privateLookupIn(field.getDeclaringClass(), lookup);
+                properties[i] = new Property(field.getName(), tags[i], field.getType(),
+                                             codec(field.getType(), field.getGenericType()),
+                                             fieldLookup.unreflectGetter(field),
+                                             fieldLookup.unreflectSetter(field));
+            }
+            codec.constructor = lookup.findConstructor(codec.type,
+                                                       MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            codec.properties = properties;
+            codec.tags = tags;
+        }
+
+        // String.hashCode is specified, so the tag is the same in every JVM
+        private static int tag(String name) {
+            return 1 + Math.floorMod(name.hashCode(), MAX_TAG);
+        }
+
+        private static int wireType(Value value) {
+            switch (value) {
+                case STRING:
+                case BYTES:
+                case INTS:
+                case LONGS:
+                case FLOATS:
+                case DOUBLES:
+                    return LENGTH;
+                case FLOAT:
+                    return FIXED32;
+                case DOUBLE:
+                    return FIXED64;
+                default:
+                    return VARINT;
+            }
+        }
+
+        private static void collectFields(Class<?> type, List<Field> fields) {
+            if (type == Object.class) {
+                return;
+            }
+            collectFields(type.getSuperclass(), fields);
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+                        && !field.isSynthetic()) {
+                    fields.add(field);
+                }
+            }
+        }
+
+        private Codec codec(Class<?> type, Type genericType) {
+            if (type.isPrimitive()) {
+                return null;
+            }
+            Value value = VALUES.get(type);
+            if (value != null) {
+                return new ValueCodec(value, wireType(value), type);
+            }
+            if (type.isEnum()) {
+                return new ValueCodec(Value.ENUM, VARINT, type);
+            }
+            if (type == List.class) {
+                if (genericType instanceof ParameterizedType) {
+                    Type arg = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+                    if (arg instanceof Class) {
+                        return new ListCodec(codec((Class<?>) arg, arg));
+                    }
+                }
+                throw new IllegalArgumentException("Unsupported list type: " + genericType);
+            }
+            if (type.isArray() || type.isInterface() || type.getName().startsWith("java.")) {
+                throw new IllegalArgumentException("Unsupported type: " + type.getName());
+            }
+            return objectCodec(type);
+        }
+    }
+}
@@ -80,7 +80,7 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
     @Override
     public EngineData configure(EngineData input) {
         final long startTime = System.currentTimeMillis();
-        if (input.getMimeType().equalsIgnoreCase(EngineDataType.JSON.mimeType())) {
+        if (input.getMimeTypeId() == EngineDataType.JSON.id()) {
             String source = (String) input.getData();
             JSONObject data = new JSONObject(source);
             if (data.has(CONF_ACTION) && data.has(CONF_FILENAME)) {
@@ -201,7 +201,7 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
         EngineData output = new EngineData();
 
         String dt = input.getMimeType();
-        if (dt.equalsIgnoreCase(EngineDataType.STRING.mimeType())) {
+        if (input.getMimeTypeId() == EngineDataType.STRING.id()) {
             String request = (String) input.getData();
             if (request.equals(REQUEST_NEXT) || request.equals(REQUEST_NEXT_REC)) {
                 getNextEvent(input, output);
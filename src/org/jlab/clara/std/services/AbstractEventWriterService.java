@@ -69,7 +69,7 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
     @Override
     public EngineData configure(EngineData input) {
         final long startTime = System.currentTimeMillis();
-        if (input.getMimeType().equalsIgnoreCase(EngineDataType.JSON.mimeType())) {
+        if (input.getMimeTypeId() == EngineDataType.JSON.id()) {
             String source = (String) input.getData();
             JSONObject configData = new JSONObject(source);
             if (configData.has(CONF_ACTION)) {
@@ -188,7 +188,7 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
         EngineData output = new EngineData();
 
         String dt = input.getMimeType();
-        if (!dt.equalsIgnoreCase(getDataType().mimeType())) {
+        if (input.getMimeTypeId() != getDataType().id()) {
             ServiceUtils.setError(output, String.format("Wrong input type '%s'", dt));
             return output;
         }
@@ -111,7 +111,7 @@ public class DataManager implements Engine {
     public EngineData configure(EngineData input) {
         EngineData output = new EngineData();
         String mt = input.getMimeType();
-        if (mt.equalsIgnoreCase(EngineDataType.JSON.mimeType())) {
+        if (input.getMimeTypeId() == EngineDataType.JSON.id()) {
             String source = (String) input.getData();
             try {
                 JSONObject data = new JSONObject(source);
@@ -179,7 +179,7 @@ public class DataManager implements Engine {
     public EngineData execute(EngineData input) {
         EngineData output = new EngineData();
         String mt = input.getMimeType();
-        if (mt.equalsIgnoreCase(EngineDataType.JSON.mimeType())) {
+        if (input.getMimeTypeId() == EngineDataType.JSON.id()) {
             String source = (String) input.getData();
             try {
                 JSONObject request = new JSONObject(source);
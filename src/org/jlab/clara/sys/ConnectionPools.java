@@ -22,15 +22,47 @@
 
 package org.jlab.clara.sys;
 
+import org.jlab.coda.xmsg.core.xMsgConnection;
 import org.jlab.coda.xmsg.core.xMsgConnectionPool;
 import org.jlab.coda.xmsg.core.xMsgUtil;
+import org.jlab.coda.xmsg.excp.xMsgException;
 import org.jlab.coda.xmsg.net.xMsgProxyAddress;
 
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The connections to the proxies, shared by all the services of a DPE.
+ * <p>
+ * Connections to proxies on the same host use TCP too. The xMsg proxy binds
+ * and connects TCP endpoints only, and the {@code ipc://} transport of
+ * JeroMQ is emulated over loopback TCP, so it would not save any latency
+ * nor ports. Requests between services on the same host skip the proxy
+ * instead, queued directly to services of the same DPE, or written into the
+ * shared memory ring of other DPEs (see {@link IpcTransport}).
+ * <p>
+ * Every thread that sends messages keeps the connections it checked out of
+ * the pools, one per pool and proxy, so the pools are only used the first
+ * time a thread publishes to a proxy, and after a connection fails.
+ * The connections of threads that are no longer alive are returned to the
+ * pools the next time a thread needs a new connection.
+ */
 class ConnectionPools implements AutoCloseable {
 
     final xMsgConnectionPool mainPool;
     final xMsgConnectionPool uncheckedPool;
 
+    private final ThreadLocal<ThreadConnections>
+            threadConnections = ThreadLocal.withInitial(this::newThreadConnections);
+    private final Set<ThreadConnections> allThreadConnections = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder createdConnections = new LongAdder();
+
     ConnectionPools(xMsgProxyAddress defaultProxy) {
         mainPool = xMsgConnectionPool.newBuilder()
                 .withProxy(defaultProxy)
@@ -38,7 +70,7 @@ class ConnectionPools implements AutoCloseable {
                     s.setRcvHWM(0);
                     s.setSndHWM(0);
                 })
-                .withPostConnectionSetup(() -> xMsgUtil.sleep(100))
+                .withPostConnectionSetup(this::connectionCreated)
                 .build();
 
         uncheckedPool = xMsgConnectionPool.newBuilder()
@@ -47,15 +79,142 @@ class ConnectionPools implements AutoCloseable {
                     s.setRcvHWM(0);
                     s.setSndHWM(0);
                 })
-                .withPostConnectionSetup(() -> xMsgUtil.sleep(100))
+                .withPostConnectionSetup(this::connectionCreated)
                 .checkConnection(false)
                 .checkSubscription(false)
                 .build();
     }
 
+    private void connectionCreated() {
+        createdConnections.increment();
+        xMsgUtil.sleep(100);
+    }
+
+    private ThreadConnections newThreadConnections() {
+        ThreadConnections connections = new ThreadConnections(Thread.currentThread());
+        allThreadConnections.add(connections);
+        return connections;
+    }
+
+    /**
+     * Gets the connection of the current thread to the given proxy.
+     *
+     * @param pool the pool of the connection
+     * @param address the address of the proxy
+     * @return the connection kept by the current thread,
+     *         or null if the thread has no connection to the proxy yet
+     */
+    xMsgConnection threadConnection(xMsgConnectionPool pool, xMsgProxyAddress address) {
+        return threadConnections.get().get(pool, address);
+    }
+
+    /**
+     * Checks out a connection to the given proxy from the pool,
+     * and keeps it as the connection of the current thread.
+     *
+     * @param pool the pool of the connection
+     * @param address the address of the proxy
+     * @return a connection to the proxy, to be used by the current thread only
+     * @throws xMsgException if a new connection could not be created
+     */
+    xMsgConnection checkoutConnection(xMsgConnectionPool pool, xMsgProxyAddress address)
+            throws xMsgException {
+        releaseDeadThreads();
+        xMsgConnection connection = pool.getConnection(address);
+        threadConnections.get().put(pool, address, connection);
+        return connection;
+    }
+
+    /**
+     * Destroys a failed connection of the current thread.
+     * The next message to the proxy will use a new connection.
+     *
+     * @param pool the pool of the connection
+     * @param address the address of the proxy
+     * @param connection the failed connection
+     */
+    void invalidateConnection(xMsgConnectionPool pool,
+                              xMsgProxyAddress address,
+                              xMsgConnection connection) {
+        threadConnections.get().remove(pool, address);
+        connection.destroy();
+    }
+
+    private void releaseDeadThreads() {
+        Iterator<ThreadConnections> iter = allThreadConnections.iterator();
+        while (iter.hasNext()) {
+            ThreadConnections connections = iter.next();
+            if (!connections.owner.isAlive()) {
+                iter.remove();
+                connections.release();
+            }
+        }
+    }
+
+    long createdCount() {
+        return createdConnections.sum();
+    }
+
+    int threadCount() {
+        return allThreadConnections.size();
+    }
+
     @Override
     public void close() {
+        for (ThreadConnections connections : allThreadConnections) {
+            connections.release();
+        }
+        allThreadConnections.clear();
         mainPool.close();
         uncheckedPool.close();
     }
+
+
+    /**
+     * The connections checked out by a thread.
+     * Only the owner thread uses them, but they can be released by any thread
+     * once the owner is dead, or when the pools are closed.
+     */
+    private static final class ThreadConnections {
+
+        private final Thread owner;
+        private final Map<xMsgConnectionPool, Map<xMsgProxyAddress, xMsgConnection>>
+                connections = new IdentityHashMap<>();
+
+        ThreadConnections(Thread owner) {
+            this.owner = owner;
+        }
+
+        synchronized xMsgConnection get(xMsgConnectionPool pool, xMsgProxyAddress address) {
+            Map<xMsgProxyAddress, xMsgConnection> proxies = connections.get(pool);
+            return proxies != null ? proxies.get(address) : null;
+        }
+
+        synchronized void put(xMsgConnectionPool pool,
+                              xMsgProxyAddress address,
+                              xMsgConnection connection) {
+            xMsgConnection old = connections.computeIfAbsent(pool, p -> new HashMap<>())
+                                             .put(address, connection);
+            if (old != null) {
+                old.close();
+            }
+        }
+
+        synchronized void remove(xMsgConnectionPool pool, xMsgProxyAddress address) {
+            Map<xMsgProxyAddress, xMsgConnection> proxies = connections.get(pool);
+            if (proxies != null) {
+                proxies.remove(address);
+            }
+        }
+
+        // return the connections to their pools
+        synchronized void release() {
+            for (Map<xMsgProxyAddress, xMsgConnection> proxies : connections.values()) {
+                for (xMsgConnection connection : proxies.values()) {
+                    connection.close();
+                }
+            }
+            connections.clear();
+        }
+    }
 }
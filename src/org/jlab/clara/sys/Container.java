@@ -75,12 +75,14 @@ class Container extends AbstractActor {
 
     public void addService(ClaraComponent comp,
                            ClaraComponent frontEnd,
-                           ConnectionPools connectionPools,
+                           DpeResources resources,
+                           DpeConfig config,
+                           ServiceOptions options,
                            String session) throws ClaraException {
         String serviceName = comp.getCanonicalName();
         Service service = myServices.get(serviceName);
         if (service == null) {
-            service = new Service(comp, frontEnd, connectionPools, session);
+            service = new Service(comp, frontEnd, resources, config, options, session);
             Service result = myServices.putIfAbsent(serviceName, service);
             if (result == null) {
                 try {
@@ -109,6 +111,15 @@ class Container extends AbstractActor {
         return false;
     }
 
+    public boolean resizeService(String serviceName, int minPoolSize, int maxPoolSize) {
+        Service service = myServices.get(serviceName);
+        if (service != null) {
+            service.resize(minPoolSize, maxPoolSize);
+            return true;
+        }
+        return false;
+    }
+
     private void removeAllServices() {
         myServices.values().parallelStream().forEach(Service::stop);
         myServices.clear();
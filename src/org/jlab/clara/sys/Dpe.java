@@ -51,11 +51,17 @@ import org.zeromq.ZMsg;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Objects;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -81,6 +87,11 @@ public final class Dpe extends AbstractActor {
     static final int DEFAULT_MAX_CORES = Runtime.getRuntime().availableProcessors();
     static final int DEFAULT_POOL_SIZE = DpeConfig.calculatePoolSize(DEFAULT_MAX_CORES);
     static final long DEFAULT_REPORT_PERIOD = 10_000;
+    static final int DEFAULT_QUEUE_SIZE = 1024;
+    static final String DEFAULT_TRACE_FILE = "clara-trace.json";
+    static final long TRACE_FLUSH_PERIOD = 5_000;
+    static final int DEFAULT_IPC_RING_SIZE = 0;
+    static final int MAX_IPC_RING_SIZE = 1024;
 
     static final int DEFAULT_MAX_SOCKETS = 1024;
     static final int DEFAULT_IO_THREADS = 1;
@@ -93,6 +104,17 @@ public final class Dpe extends AbstractActor {
     // shared connection pools between all services
     private volatile ConnectionPools connectionPools;
 
+    // shared execution pool between all services (null if disabled)
+    private volatile ExecutorService scheduler;
+
+    // shared event tracer between all services (null if disabled)
+    private volatile EventTracer tracer;
+    private Writer traceWriter;
+    private ScheduledExecutorService traceFlusher;
+
+    // shared memory transport with other DPEs of the same host (null if disabled)
+    private volatile IpcTransport ipcTransport;
+
     // session ID
     private volatile String session = "";
 
@@ -100,7 +122,7 @@ public final class Dpe extends AbstractActor {
     private final ConcurrentMap<String, Container> myContainers = new ConcurrentHashMap<>();
 
     private final ReportService reportService;
-    private final int maxCores;
+    private final DpeConfig config;
 
 
     public static void main(String[] args) {
@@ -155,6 +177,11 @@ public final class Dpe extends AbstractActor {
         int poolSize = DEFAULT_POOL_SIZE;
         int maxCores = DEFAULT_MAX_CORES;
         long reportPeriod = DEFAULT_REPORT_PERIOD;
+        int queueSize = DEFAULT_QUEUE_SIZE;
+        boolean sharedScheduler = false;
+        int traceSampling = 0;
+        String traceFile = DEFAULT_TRACE_FILE;
+        int ipcRingSize = DEFAULT_IPC_RING_SIZE;
         String description = "";
 
         /**
@@ -287,6 +314,78 @@ public final class Dpe extends AbstractActor {
             return this;
         }
 
+        /**
+         * Sets the maximum number of requests that a service can keep waiting
+         * for an idle engine. Further requests are rejected.
+         *
+         * @param queueSize the size of the request queue of a service
+         * @return this builder, so methods can be chained
+         */
+        public Builder withQueueSize(int queueSize) {
+            if (queueSize <= 0) {
+                throw new IllegalArgumentException("Invalid queue size: " + queueSize);
+            }
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * Runs the requests of all services in a single thread pool,
+         * with as many threads as the maximum number of cores.
+         * Each service still runs at most as many requests in parallel as
+         * the size of its engine pool, but idle services do not keep
+         * threads for themselves.
+         *
+         * @param sharedScheduler true if all services should share the same pool
+         * @return this builder, so methods can be chained
+         */
+        public Builder withSharedScheduler(boolean sharedScheduler) {
+            this.sharedScheduler = sharedScheduler;
+            return this;
+        }
+
+        /**
+         * Traces the events processed by the services of this DPE.
+         * The latencies of all events are published in the runtime reports,
+         * and the timestamps of one of every {@code sampling} events are
+         * written to the given trace file, in the Chrome trace event format.
+         * The file is written periodically while the DPE runs,
+         * and completed when the DPE is stopped.
+         *
+         * @param sampling keep the timestamps of one of every given events
+         * @param traceFile the path of the trace file
+         * @return this builder, so methods can be chained
+         */
+        public Builder withTracing(int sampling, String traceFile) {
+            if (sampling <= 0) {
+                throw new IllegalArgumentException("Invalid trace sampling: " + sampling);
+            }
+            Objects.requireNonNull(traceFile, "traceFile parameter is null");
+            this.traceSampling = sampling;
+            this.traceFile = traceFile;
+            return this;
+        }
+
+        /**
+         * Sets the size of the shared memory ring used to receive requests
+         * from the services of other DPEs running on the same host.
+         * The requests are written directly into the ring, instead of being
+         * published through the proxy.
+         * A size of zero disables the ring, and all requests from other DPEs
+         * are received through the proxy. The ring is disabled by default,
+         * since the shared memory file system may be small (i.e. 64 MB in
+         * a container).
+         *
+         * @param megabytes the size of the ring, in MB (rounded down to a power of two)
+         * @return this builder, so methods can be chained
+         */
+        public Builder withIpcRingSize(int megabytes) {
+            if (megabytes < 0 || megabytes > MAX_IPC_RING_SIZE) {
+                throw new IllegalArgumentException("Invalid IPC ring size: " + megabytes);
+            }
+            this.ipcRingSize = megabytes;
+            return this;
+        }
 
         /**
          * Sets a description for this DPE.
@@ -306,7 +405,9 @@ public final class Dpe extends AbstractActor {
          * @return a new DPE
          */
         public Dpe build() {
-            DpeConfig config = new DpeConfig(poolSize, maxCores, reportPeriod);
+            DpeConfig config = new DpeConfig(maxCores, poolSize, reportPeriod, queueSize,
+                                             sharedScheduler, traceSampling, traceFile,
+                                             ipcRingSize);
             return new Dpe(isFrontEnd, localAddress, frontEndAddress,
                            config, session, description);
         }
@@ -341,7 +442,7 @@ public final class Dpe extends AbstractActor {
         AbstractActor.isFrontEnd.set(isFrontEnd);
         this.reportService = new ReportService(config.reportPeriod(), session);
         this.session = session;
-        this.maxCores = config.maxCores();
+        this.config = config;
     }
 
     /**
@@ -391,6 +492,9 @@ public final class Dpe extends AbstractActor {
             try {
                 startProxyAndFrontEnd();
                 startConnectionPool();
+                startScheduler();
+                startTracer();
+                startIpcTransport();
                 startSubscription();
                 startHeartBeatReport();
             } catch (ClaraException e) {
@@ -407,6 +511,9 @@ public final class Dpe extends AbstractActor {
             stopHeartBeatReport();
             stopSubscription();
             stopContainers();
+            stopScheduler();
+            stopTracer();
+            stopIpcTransport();
             stopConnectionPool();
             stopProxyAndFrontEnd();
         }
@@ -428,9 +535,72 @@ public final class Dpe extends AbstractActor {
         connectionPools = new ConnectionPools(base.getDefaultProxyAddress());
     }
 
+    private void startScheduler() {
+        if (config.sharedScheduler()) {
+            // the engines block on I/O and sends, and every thread keeps
+            // its own connections, so the pool has fixed, long-lived threads
+            scheduler = xMsgUtil.newThreadPool(config.maxCores(), "dpe-scheduler");
+        }
+    }
+
+    private void startTracer() {
+        if (config.traceSampling() > 0) {
+            tracer = new EventTracer(config.traceSampling(), EventTracer.DEFAULT_CAPACITY);
+            try {
+                traceWriter = Files.newBufferedWriter(Paths.get(config.traceFile()));
+            } catch (IOException e) {
+                Logging.error("could not open event trace: %s", e.getMessage());
+                return;
+            }
+            traceFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "trace-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            traceFlusher.scheduleWithFixedDelay(this::flushTrace,
+                                                TRACE_FLUSH_PERIOD, TRACE_FLUSH_PERIOD,
+                                                TimeUnit.MILLISECONDS);
+            tracer.setFlushHandler(() -> {
+                try {
+                    traceFlusher.execute(this::flushTrace);
+                } catch (RejectedExecutionException e) {
+                    // the trace is completed when the DPE stops
+                }
+            });
+        }
+    }
+
+    private void flushTrace() {
+        try {
+            tracer.flush(traceWriter);
+        } catch (IOException e) {
+            Logging.error("could not write event trace: %s", e.getMessage());
+        }
+    }
+
+    private void startIpcTransport() {
+        int size = config.ipcRingSize();
+        if (size <= 0 || !IpcTransport.isSupported(IpcTransport.DEFAULT_DIRECTORY)) {
+            return;
+        }
+        // the capacity of the ring must be a power of two
+        int capacity = Integer.highestOneBit(Math.min(size, MAX_IPC_RING_SIZE)) << 20;
+        try {
+            ipcTransport = new IpcTransport(IpcTransport.DEFAULT_DIRECTORY,
+                                            base.getName(),
+                                            base.getMe().getDpeHost(),
+                                            capacity,
+                                            base::send);
+            ipcTransport.start();
+        } catch (IOException e) {
+            Logging.error("could not create the IPC ring: %s", e.getMessage());
+        }
+    }
+
     private void cacheConnections() throws ClaraException {
         base.cacheLocalConnection();
 
+        int maxCores = config.maxCores();
         int cachedConnections = (int) (maxCores * 1.5);
         int createdConnections = IntStream.range(0, cachedConnections)
                 .parallel()
@@ -495,6 +665,65 @@ public final class Dpe extends AbstractActor {
         myContainers.clear();
     }
 
+    private void stopScheduler() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void stopTracer() {
+        if (tracer != null) {
+            if (traceWriter != null) {
+                traceFlusher.shutdown();
+                try {
+                    traceFlusher.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                try (Writer writer = traceWriter) {
+                    tracer.close(writer);
+                    Logging.info("written event trace to %s", config.traceFile());
+                } catch (IOException e) {
+                    Logging.error("could not write event trace: %s", e.getMessage());
+                }
+                traceWriter = null;
+                traceFlusher = null;
+            }
+            if (tracer.droppedCount() > 0) {
+                Logging.error("trace buffer was full: dropped %d sampled events",
+                              tracer.droppedCount());
+            }
+            tracer = null;
+        }
+    }
+
+    private void stopIpcTransport() {
+        if (ipcTransport != null) {
+            ipcTransport.stop();
+            if (ipcTransport.droppedCount() > 0) {
+                Logging.error("IPC ring: dropped %d requests that could not be delivered",
+                              ipcTransport.droppedCount());
+            }
+            if (ipcTransport.reclaimedCount() > 0) {
+                Logging.error("IPC ring: dropped requests blocked by crashed senders %d times",
+                              ipcTransport.reclaimedCount());
+            }
+            if (ipcTransport.discardedCount() > 0) {
+                Logging.error("IPC ring: discarded corrupted requests %d times",
+                              ipcTransport.discardedCount());
+            }
+            ipcTransport = null;
+        }
+    }
+
     private void stopConnectionPool() {
         if (connectionPools != null) {
             connectionPools.close();
@@ -545,6 +774,12 @@ public final class Dpe extends AbstractActor {
         System.out.println(" Version          = " + VersionUtils.getClaraVersion());
         System.out.println(" Lang             = Java");
         System.out.println(" Pool size        = " + base.getPoolSize());
+        if (config.sharedScheduler()) {
+            System.out.println(" Scheduler size   = " + config.maxCores());
+        }
+        if (config.traceSampling() > 0) {
+            System.out.println(" Trace sampling   = 1/" + config.traceSampling());
+        }
         if (!base.getDescription().isEmpty()) {
             System.out.println(" Description      = " + base.getDescription());
         }
@@ -607,11 +842,21 @@ public final class Dpe extends AbstractActor {
         int poolSize = parser.nextInteger();
         String description = parser.nextString();
         String initialState = parser.nextString();
+        boolean enginePerThread = Boolean.parseBoolean(parser.nextString("false"));
+        int batchSize = parser.nextInteger(1);
+        long batchTime = parser.nextLong(0);
+        int maxPoolSize = parser.nextInteger(0);
+        long deadline = parser.nextLong(0);
+        boolean releaseOverruns = Boolean.parseBoolean(parser.nextString("false"));
+        int sendThreads = parser.nextInteger(0);
+        long growDelay = parser.nextLong(0);
+        long idleTimeout = parser.nextLong(0);
         if (poolSize <= 0) {
             poolSize = 1;
-        } else if (poolSize > maxCores) {
-            poolSize = maxCores;
+        } else if (poolSize > config.maxCores()) {
+            poolSize = config.maxCores();
         }
+        maxPoolSize = Math.min(Math.max(maxPoolSize, poolSize), config.maxCores());
         ClaraComponent serComp = ClaraComponent.service(base.getMe().getDpeHost(),
                                                         base.getMe().getDpePort(),
                                                         ClaraConstants.JAVA_LANG,
@@ -622,18 +867,73 @@ public final class Dpe extends AbstractActor {
                                                         description,
                                                         initialState);
 
+        if (batchSize <= 0 || batchTime < 0) {
+            String error = "could not start service = %s: invalid batch size or time";
+            throw new RequestException(String.format(error, serComp));
+        }
+        if (deadline < 0) {
+            String error = "could not start service = %s: invalid deadline";
+            throw new RequestException(String.format(error, serComp));
+        }
+        if (releaseOverruns && deadline == 0) {
+            String error = "could not start service = %s: overrun release requires a deadline";
+            throw new RequestException(String.format(error, serComp));
+        }
+        if (sendThreads < 0) {
+            String error = "could not start service = %s: invalid number of send threads";
+            throw new RequestException(String.format(error, serComp));
+        }
+        if (growDelay < 0 || idleTimeout < 0) {
+            String error = "could not start service = %s: invalid pool timeouts";
+            throw new RequestException(String.format(error, serComp));
+        }
+        ServiceOptions options = new ServiceOptions(enginePerThread, batchSize, batchTime,
+                                                    maxPoolSize, deadline, releaseOverruns,
+                                                    sendThreads, growDelay, idleTimeout);
+
         Container container = myContainers.get(containerName);
         if (container == null) {
             String error = "could not start service = %s: missing container";
             throw new RequestException(String.format(error, serComp));
         }
         try {
-            container.addService(serComp, base.getFrontEnd(), connectionPools, session);
+            DpeResources resources = new DpeResources(connectionPools, scheduler, tracer,
+                                                      ipcTransport);
+            container.addService(serComp, base.getFrontEnd(), resources,
+                                 config, options, session);
         } catch (ClaraException e) {
             throw new DpeException("could not start service " + serComp, e);
         }
     }
 
+    private void resizeService(RequestParser parser)
+            throws RequestException {
+        String containerName = parser.nextString();
+        String engineName = parser.nextString();
+        int minPoolSize = parser.nextInteger();
+        int maxPoolSize = parser.nextInteger();
+        String serviceName = MessageUtil.buildTopic(base.getName(), containerName, engineName)
+                                        .toString();
+
+        if (minPoolSize <= 0 || maxPoolSize < minPoolSize) {
+            String error = "could not resize service = %s: invalid pool size";
+            throw new RequestException(String.format(error, serviceName));
+        }
+        minPoolSize = Math.min(minPoolSize, config.maxCores());
+        maxPoolSize = Math.min(maxPoolSize, config.maxCores());
+
+        Container container = myContainers.get(containerName);
+        if (container == null) {
+            String error = "could not resize service = %s: missing container";
+            throw new RequestException(String.format(error, serviceName));
+        }
+        boolean resized = container.resizeService(serviceName, minPoolSize, maxPoolSize);
+        if (!resized) {
+            String error = "could not resize service = %s: service doesn't exist";
+            throw new RequestException(String.format(error, serviceName));
+        }
+    }
+
     private void stopService(RequestParser parser)
             throws RequestException, DpeException {
         String containerName = parser.nextString();
@@ -690,7 +990,7 @@ public final class Dpe extends AbstractActor {
 
 
     private String reportJson(RequestParser parser) {
-        return reportService.jsonReport();
+        return reportService.queryReport();
     }
 
 
@@ -703,6 +1003,8 @@ public final class Dpe extends AbstractActor {
 
         private final DpeReport myReport;
         private final JsonReportBuilder myReportBuilder = new JsonReportBuilder();
+        // the queried reports do not change the intervals of the published reports
+        private final JsonReportBuilder queryReportBuilder = new JsonReportBuilder();
 
         private final ScheduledExecutorService scheduledPingService;
         private final AtomicBoolean isReporting = new AtomicBoolean();
@@ -752,7 +1054,21 @@ public final class Dpe extends AbstractActor {
         }
 
         public String jsonReport() {
-            return myReportBuilder.generateReport(myReport);
+            return generateReport(myReportBuilder);
+        }
+
+        public String queryReport() {
+            return generateReport(queryReportBuilder);
+        }
+
+        private String generateReport(JsonReportBuilder builder) {
+            SharedMemory.evictExpired();
+            myReport.setSharedMemory(SharedMemory.occupancy(), SharedMemory.evictedCount());
+            ConnectionPools pools = connectionPools;
+            if (pools != null) {
+                myReport.setCreatedConnections(pools.createdCount());
+            }
+            return builder.generateReport(myReport);
         }
 
         // TODO: make xMsg support multiple addresses per connection
@@ -868,11 +1184,17 @@ public final class Dpe extends AbstractActor {
      * <li>
      *     CConstants.START_SERVICE ?
      *     containerName ? engineName ? engineClass ? poolSize ? description ? initialState
+     *     [? enginePerThread ? batchSize ? batchTime ? maxPoolSize
+     *      ? deadline ? releaseOverruns ? sendThreads ? growDelay ? idleTimeout]
      * </li>
      * <li>
      *     CConstants.STOP_SERVICE ?
      *     containerName ? engineName
      * </li>
+     * <li>
+     *     CConstants.RESIZE_SERVICE ?
+     *     containerName ? engineName ? minPoolSize ? maxPoolSize
+     * </li>
      */
     private class DpeCallBack implements xMsgCallBack {
 
@@ -917,6 +1239,10 @@ public final class Dpe extends AbstractActor {
                         stopService(parser);
                         break;
 
+                    case ClaraConstants.RESIZE_SERVICE:
+                        resizeService(parser);
+                        break;
+
                     case ClaraConstants.REPORT_JSON:
                     case ClaraConstants.REPORT_RUNTIME: // keep it to not break existing clients
                         response = reportJson(parser);
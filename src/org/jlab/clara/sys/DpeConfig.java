@@ -27,12 +27,26 @@ class DpeConfig {
     private final int maxCores;
     private final int poolSize;
     private final long reportPeriod;
+    private final int queueSize;
+    private final boolean sharedScheduler;
+    private final int traceSampling;
+    private final String traceFile;
+    private final int ipcRingSize;
 
-    DpeConfig(int maxCores, int poolSize, long reportPeriod) {
+    // checkstyle.off: ParameterNumber
+    DpeConfig(int maxCores, int poolSize, long reportPeriod, int queueSize,
+              boolean sharedScheduler, int traceSampling, String traceFile,
+              int ipcRingSize) {
         this.maxCores = maxCores;
         this.poolSize = poolSize;
         this.reportPeriod = reportPeriod;
+        this.queueSize = queueSize;
+        this.sharedScheduler = sharedScheduler;
+        this.traceSampling = traceSampling;
+        this.traceFile = traceFile;
+        this.ipcRingSize = ipcRingSize;
     }
+    // checkstyle.on: ParameterNumber
 
     int maxCores() {
         return maxCores;
@@ -46,6 +60,26 @@ class DpeConfig {
         return reportPeriod;
     }
 
+    int queueSize() {
+        return queueSize;
+    }
+
+    boolean sharedScheduler() {
+        return sharedScheduler;
+    }
+
+    int traceSampling() {
+        return traceSampling;
+    }
+
+    String traceFile() {
+        return traceFile;
+    }
+
+    int ipcRingSize() {
+        return ipcRingSize;
+    }
+
 
     static int calculatePoolSize(int cores) {
         int halfCores = cores / 2;
@@ -49,6 +49,11 @@ class DpeOptionsParser {
     private final OptionSpec<Integer> poolSize;
     private final OptionSpec<Integer> maxCores;
     private final OptionSpec<Long> reportPeriod;
+    private final OptionSpec<Integer> queueSize;
+    private final OptionSpec<Void> sharedScheduler;
+    private final OptionSpec<Integer> traceSampling;
+    private final OptionSpec<String> traceFile;
+    private final OptionSpec<Integer> ipcRingSize;
 
     private final OptionSpec<Integer> maxSockets;
     private final OptionSpec<Integer> ioThreads;
@@ -81,6 +86,11 @@ class DpeOptionsParser {
         poolSize = parser.accepts("poolsize").withRequiredArg().ofType(Integer.class);
         maxCores = parser.accepts("max-cores").withRequiredArg().ofType(Integer.class);
         reportPeriod = parser.accepts("report").withRequiredArg().ofType(Long.class);
+        queueSize = parser.accepts("queue-size").withRequiredArg().ofType(Integer.class);
+        sharedScheduler = parser.accepts("shared-scheduler");
+        traceSampling = parser.accepts("trace").withRequiredArg().ofType(Integer.class);
+        traceFile = parser.accepts("trace-file").withRequiredArg();
+        ipcRingSize = parser.accepts("ipc-ring").withRequiredArg().ofType(Integer.class);
 
         maxSockets = parser.accepts("max-sockets").withRequiredArg().ofType(Integer.class);
         ioThreads = parser.accepts("io-threads").withRequiredArg().ofType(Integer.class);
@@ -157,7 +167,18 @@ class DpeOptionsParser {
         long reportPeriodSeconds = valueOf(reportPeriod, defaultPeriodSeconds);
         long dpeReportPeriod = TimeUnit.SECONDS.toMillis(reportPeriodSeconds);
 
-        return new DpeConfig(dpeMaxCores, dpePoolSize, dpeReportPeriod);
+        int dpeQueueSize = valueOf(queueSize, Dpe.DEFAULT_QUEUE_SIZE);
+
+        boolean dpeSharedScheduler = options.has(sharedScheduler);
+
+        int dpeTraceSampling = valueOf(traceSampling, 0);
+        String dpeTraceFile = valueOf(traceFile, Dpe.DEFAULT_TRACE_FILE);
+
+        int dpeIpcRingSize = valueOf(ipcRingSize, Dpe.DEFAULT_IPC_RING_SIZE);
+
+        return new DpeConfig(dpeMaxCores, dpePoolSize, dpeReportPeriod, dpeQueueSize,
+                             dpeSharedScheduler, dpeTraceSampling, dpeTraceFile,
+                             dpeIpcRingSize);
     }
 
     public int maxSockets() {
@@ -196,9 +217,18 @@ class DpeOptionsParser {
              + OptUtils.optionHelp(poolSize, "size", "size of thread pool to handle requests")
              + OptUtils.optionHelp(maxCores, "cores", "how many cores can be used by a service")
              + OptUtils.optionHelp(reportPeriod, "seconds", "the period to publish reports")
+             + OptUtils.optionHelp(queueSize, "size", "max requests queued by a service")
+             + OptUtils.optionHelp(sharedScheduler, null,
+                                   "run all services in a single pool of max-cores threads")
+             + OptUtils.optionHelp(traceSampling, "n",
+                                   "trace events, and keep the timestamps of one in n events")
+             + OptUtils.optionHelp(traceFile, "file", "where to write the trace")
              + String.format("%n  Advanced options:%n")
              + OptUtils.optionHelp(maxSockets, "sockets", "maximum number of allowed ZMQ sockets")
-             + OptUtils.optionHelp(ioThreads, "threads", "size of ZMQ thread pool to handle I/O");
+             + OptUtils.optionHelp(ioThreads, "threads", "size of ZMQ thread pool to handle I/O")
+             + OptUtils.optionHelp(ipcRingSize, "MB",
+                                   "size of the shared memory ring to receive requests",
+                                   "from other DPEs on the same host (disabled by default)");
     }
 
     static class DpeOptionsException extends RuntimeException {
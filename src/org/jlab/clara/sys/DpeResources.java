@@ -0,0 +1,52 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The resources of a DPE shared by all its services.
+ */
+class DpeResources {
+
+    final ConnectionPools connectionPools;
+
+    // null if every service uses its own execution pool
+    final ExecutorService scheduler;
+
+    // null if tracing is disabled
+    final EventTracer tracer;
+
+    // null if the DPE has no IPC ring
+    final IpcTransport ipcTransport;
+
+    DpeResources(ConnectionPools connectionPools,
+                 ExecutorService scheduler,
+                 EventTracer tracer,
+                 IpcTransport ipcTransport) {
+        this.connectionPools = connectionPools;
+        this.scheduler = scheduler;
+        this.tracer = tracer;
+        this.ipcTransport = ipcTransport;
+    }
+}
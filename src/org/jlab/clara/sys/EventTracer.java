@@ -0,0 +1,329 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.util.report.LinkLatency;
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Traces the events processed by the services of a DPE.
+ * <p>
+ * Every hop of an event through a service is stamped when the request is
+ * received, when an engine takes it from the queue, when the engine starts
+ * and completes the execution, and when the result is sent.
+ * The send stamps are set by the thread that sends the result, which is
+ * not the engine thread if the service sends its results asynchronously.
+ * The latencies of all events are aggregated into histograms for each link,
+ * i.e. each pair of sender component and receiving service.
+ * The histograms only cover the time spent in the receiving DPE:
+ * the messages carry no send time, so the transport between DPEs
+ * is not measured.
+ * <p>
+ * The stamps of a sampled subset of the events are also kept, to be written
+ * into a trace file in the JSON array variant of the Chrome trace event
+ * format, that can be opened by Perfetto or {@code chrome://tracing}.
+ * An event is sampled by its communication id, so it is sampled at all the
+ * services of the chain. Each hop is linked by a flow arrow to the hop of
+ * its sender, so the transport between DPEs is shown when their trace files
+ * are merged, if the clocks of the nodes are synchronized.
+ * <p>
+ * The sampled hops are buffered until they are flushed into the trace.
+ * The flush handler is notified when the buffer is half full,
+ * and new hops are dropped when it is full.
+ */
+class EventTracer {
+
+    static final int DEFAULT_CAPACITY = 100_000;
+
+    private final int sampling;
+    private final int capacity;
+
+    private final Queue<Hop> sampled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sampledCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+
+    // the clock base, to convert nano time into wall time
+    private final long baseNanos = System.nanoTime();
+    private final long baseMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+
+    // the processes and events already written into the trace
+    private final Map<String, Integer> processes = new HashMap<>();
+    private long writtenEvents;
+
+    private volatile Runnable flushHandler = () -> { };
+
+
+    /**
+     * Creates a new tracer.
+     *
+     * @param sampling trace one of every {@code sampling} events
+     * @param capacity the maximum number of sampled hops to keep
+     *                 until they are flushed
+     */
+    EventTracer(int sampling, int capacity) {
+        if (sampling <= 0) {
+            throw new IllegalArgumentException("Invalid sampling: " + sampling);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.sampling = sampling;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the action to run when the buffer of sampled hops is half full.
+     * It is run by the thread that completes the hop, so it must not block.
+     *
+     * @param handler requests a flush of the buffer
+     */
+    void setFlushHandler(Runnable handler) {
+        this.flushHandler = handler;
+    }
+
+    /**
+     * Starts tracing a request received by a service.
+     *
+     * @param msg the received request
+     * @param report the report of the receiving service
+     * @return the hop of the event through the service
+     */
+    Hop receive(xMsgMessage msg, ServiceReport report) {
+        xMsgMeta.Builder meta = msg.getMetaData();
+        String source = meta.hasAuthor() ? meta.getAuthor() : "unknown";
+        int id = meta.getCommunicationId();
+        boolean isSampled = Math.floorMod(id, sampling) == 0;
+        return new Hop(this, report, source, id, meta.getComposition(), isSampled);
+    }
+
+    /**
+     * Gets the number of sampled hops that were dropped
+     * because the trace buffer was full.
+     *
+     * @return the number of dropped hops
+     */
+    int droppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Writes the buffered hops into the trace, and removes them from the buffer.
+     * The array of trace events is left open, so the trace can be read while
+     * it is still being written.
+     *
+     * @param writer where to write the trace
+     * @throws IOException if the trace could not be written
+     */
+    synchronized void flush(Writer writer) throws IOException {
+        if (writtenEvents == 0) {
+            writer.write("[");
+        }
+        Hop hop;
+        while ((hop = sampled.poll()) != null) {
+            sampledCount.decrementAndGet();
+            Integer pid = processes.get(hop.service);
+            if (pid == null) {
+                pid = processes.size() + 1;
+                processes.put(hop.service, pid);
+                write(writer, processEvent(hop.service, pid));
+            }
+            write(writer, flowEvent(hop, pid, "f", hop.source, hop.received, hop.thread));
+            write(writer, event(hop, pid, "queue", hop.received, hop.dequeued, hop.thread));
+            write(writer, event(hop, pid, "input", hop.dequeued, hop.engineStart, hop.thread));
+            write(writer, event(hop, pid, "engine", hop.engineStart, hop.engineEnd, hop.thread));
+            write(writer, event(hop, pid, "send queue", hop.engineEnd, hop.sendStart,
+                                hop.thread));
+            write(writer, event(hop, pid, "send", hop.sendStart, hop.sent, hop.sendThread));
+            write(writer, flowEvent(hop, pid, "s", hop.service, hop.sent, hop.sendThread));
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the buffered hops and closes the array of trace events.
+     *
+     * @param writer where to write the trace
+     * @throws IOException if the trace could not be written
+     */
+    synchronized void close(Writer writer) throws IOException {
+        flush(writer);
+        writer.write("\n]\n");
+        writer.flush();
+    }
+
+    private void write(Writer writer, JSONObject event) throws IOException {
+        writer.write(writtenEvents > 0 ? ",\n" : "\n");
+        writer.write(event.toString());
+        writtenEvents++;
+    }
+
+    private JSONObject processEvent(String service, int pid) {
+        JSONObject args = new JSONObject();
+        args.put("name", service);
+
+        JSONObject event = new JSONObject();
+        event.put("name", "process_name");
+        event.put("ph", "M");
+        event.put("pid", pid);
+        event.put("args", args);
+        return event;
+    }
+
+    private JSONObject event(Hop hop, int pid, String phase, long start, long end, long tid) {
+        JSONObject args = new JSONObject();
+        args.put("id", hop.id);
+        args.put("source", hop.source);
+        args.put("composition", hop.composition);
+
+        JSONObject event = new JSONObject();
+        event.put("name", phase);
+        event.put("cat", hop.service);
+        event.put("ph", "X");
+        event.put("ts", toMicros(start));
+        event.put("dur", TimeUnit.NANOSECONDS.toMicros(end - start));
+        event.put("pid", pid);
+        event.put("tid", tid);
+        event.put("args", args);
+        return event;
+    }
+
+    // the arrow from the send of the sender to the receive of the next service,
+    // identified by the sender and the communication id of the event
+    private JSONObject flowEvent(Hop hop, int pid, String phase,
+                                 String sender, long time, long tid) {
+        JSONObject event = new JSONObject();
+        event.put("name", "transport");
+        event.put("cat", "transport");
+        event.put("ph", phase);
+        event.put("id", sender + "#" + hop.id);
+        event.put("ts", toMicros(time));
+        event.put("pid", pid);
+        event.put("tid", tid);
+        if (phase.equals("f")) {
+            event.put("bp", "e");
+        }
+        return event;
+    }
+
+    private long toMicros(long nanos) {
+        return baseMicros + TimeUnit.NANOSECONDS.toMicros(nanos - baseNanos);
+    }
+
+    private void complete(Hop hop) {
+        LinkLatency link = hop.report.getLinkLatency(hop.source);
+        link.getQueueTime().record(TimeUnit.NANOSECONDS.toMicros(hop.dequeued - hop.received));
+        link.getEngineTime().record(TimeUnit.NANOSECONDS.toMicros(hop.engineEnd - hop.engineStart));
+        link.getSendTime().record(TimeUnit.NANOSECONDS.toMicros(hop.sent - hop.engineEnd));
+        link.getTotalTime().record(TimeUnit.NANOSECONDS.toMicros(hop.sent - hop.received));
+
+        if (hop.isSampled) {
+            int count = sampledCount.incrementAndGet();
+            if (count <= capacity) {
+                sampled.add(hop);
+                if (count == (capacity + 1) / 2) {
+                    flushHandler.run();
+                }
+            } else {
+                sampledCount.decrementAndGet();
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+
+    /**
+     * The timestamps of an event through a service.
+     * The send stamps are set by the thread that sends the result,
+     * all other stamps by the thread running the request.
+     * The hop is handed between them through the queue of the sender.
+     */
+    static final class Hop {
+
+        private final EventTracer tracer;
+        private final ServiceReport report;
+        private final String service;
+        private final String source;
+        private final int id;
+        private final String composition;
+        private final boolean isSampled;
+
+        private final long received = System.nanoTime();
+        private long dequeued;
+        private long engineStart;
+        private long engineEnd;
+        private long sendStart;
+        private long sent;
+        private long thread;
+        private long sendThread;
+        private boolean isExecuted;
+
+        private Hop(EventTracer tracer, ServiceReport report,
+                    String source, int id, String composition, boolean isSampled) {
+            this.tracer = tracer;
+            this.report = report;
+            this.service = report.getName();
+            this.source = source;
+            this.id = id;
+            this.composition = composition;
+            this.isSampled = isSampled;
+        }
+
+        void dequeued() {
+            dequeued = System.nanoTime();
+            thread = Thread.currentThread().getId();
+        }
+
+        void engineStarted() {
+            engineStart = System.nanoTime();
+            isExecuted = true;
+        }
+
+        void engineCompleted() {
+            engineEnd = System.nanoTime();
+        }
+
+        void sendStarted() {
+            sendStart = System.nanoTime();
+            sendThread = Thread.currentThread().getId();
+        }
+
+        void sent() {
+            sent = System.nanoTime();
+            if (isExecuted) {
+                tracer.complete(this);
+            }
+        }
+    }
+}
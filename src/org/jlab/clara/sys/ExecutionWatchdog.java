@@ -0,0 +1,201 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the execution of the requests received by a service,
+ * and reacts when an engine runs longer than the execution deadline.
+ * <p>
+ * An overrunning request is logged with its communication id and counted
+ * in the service report. If the watchdog releases overrunning requests,
+ * the handler is called to replace the engine and reply with an error,
+ * and the result of the request is discarded when the engine completes it.
+ * <p>
+ * A batch of requests is given the deadline of each request times the size
+ * of the batch, and all its requests are released together.
+ * <p>
+ * A watchdog with no deadline does not track the requests.
+ */
+class ExecutionWatchdog {
+
+    /**
+     * Releases an overrunning request.
+     */
+    @FunctionalInterface
+    interface OverrunHandler {
+        void release(ServiceEngine engine, xMsgMessage msg, long elapsed) throws Exception;
+    }
+
+    private final String name;
+    private final long deadline;
+    private final boolean release;
+    private final OverrunHandler handler;
+    private final ServiceDispatcher.ErrorHandler errorHandler;
+    private final ServiceReport sysReport;
+
+    private final Map<ServiceEngine, Execution> running = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+
+    /**
+     * Creates a watchdog for the given service.
+     *
+     * @param name the name of the service
+     * @param deadline the maximum execution time of a request,
+     *                 zero to disable the watchdog
+     * @param unit the unit of the deadline
+     * @param release if overrunning requests should be released
+     * @param handler releases the overrunning requests
+     * @param errorHandler reports unhandled exceptions thrown by the handler
+     * @param report the report of the service
+     */
+    ExecutionWatchdog(String name,
+                      long deadline,
+                      TimeUnit unit,
+                      boolean release,
+                      OverrunHandler handler,
+                      ServiceDispatcher.ErrorHandler errorHandler,
+                      ServiceReport report) {
+        if (deadline < 0) {
+            throw new IllegalArgumentException("Invalid deadline: " + deadline);
+        }
+        this.name = name;
+        this.deadline = unit.toNanos(deadline);
+        this.release = release;
+        this.handler = handler;
+        this.errorHandler = errorHandler;
+        this.sysReport = report;
+        if (this.deadline > 0) {
+            long period = Math.max(this.deadline / 4, TimeUnit.MILLISECONDS.toNanos(1));
+            this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, name + "-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.timer.scheduleAtFixedRate(this::check, period, period, TimeUnit.NANOSECONDS);
+        } else {
+            this.timer = null;
+        }
+    }
+
+    /**
+     * Starts watching the request executed by the given engine.
+     *
+     * @param engine the engine executing the request
+     * @param msg the request
+     */
+    void start(ServiceEngine engine, xMsgMessage msg) {
+        start(engine, Collections.singletonList(msg));
+    }
+
+    /**
+     * Starts watching the batch of requests executed by the given engine.
+     *
+     * @param engine the engine executing the batch
+     * @param batch the requests of the batch
+     */
+    void start(ServiceEngine engine, List<xMsgMessage> batch) {
+        if (timer != null) {
+            running.put(engine, new Execution(batch, deadline * batch.size()));
+        }
+    }
+
+    /**
+     * Stops watching the request executed by the given engine.
+     *
+     * @param engine the engine that completed the request
+     * @return false if the request was released, and its result must be dropped
+     */
+    boolean finish(ServiceEngine engine) {
+        if (timer == null) {
+            return true;
+        }
+        return running.remove(engine) != null;
+    }
+
+    /**
+     * Stops the watchdog.
+     */
+    void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            running.clear();
+        }
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (Map.Entry<ServiceEngine, Execution> entry : running.entrySet()) {
+            Execution execution = entry.getValue();
+            long elapsed = now - execution.startTime;
+            if (elapsed < execution.deadline || execution.isOverrun) {
+                continue;
+            }
+            execution.isOverrun = true;
+
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            for (xMsgMessage msg : execution.batch) {
+                sysReport.incrementOverrunCount();
+                int id = msg.getMetaData().getCommunicationId();
+                Logging.error("service = %s: request id = %d exceeded the execution deadline "
+                              + "(%d ms)", name, id, elapsedMillis);
+            }
+
+            ServiceEngine engine = entry.getKey();
+            if (release && running.remove(engine, execution)) {
+                for (xMsgMessage msg : execution.batch) {
+                    try {
+                        handler.release(engine, msg, elapsed);
+                    } catch (Exception e) {
+                        errorHandler.handle(e);
+                    }
+                }
+            }
+        }
+    }
+
+
+    private static final class Execution {
+
+        private final List<xMsgMessage> batch;
+        private final long deadline;
+        private final long startTime = System.nanoTime();
+        private boolean isOverrun;
+
+        private Execution(List<xMsgMessage> batch, long deadline) {
+            this.batch = batch;
+            this.deadline = deadline;
+        }
+    }
+}
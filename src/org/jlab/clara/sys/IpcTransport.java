@@ -0,0 +1,325 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Passes requests between DPEs running on the same host,
+ * through memory-mapped ring buffers.
+ * <p>
+ * Every DPE with the transport enabled creates a ring in the shared memory
+ * file system ({@code /dev/shm}), named after the DPE, and polls it with a
+ * single thread. The received requests are queued directly into the
+ * receiving services, without the proxy of the DPE. The reader never waits
+ * for a service: if the queue of the service is full, the request is
+ * forwarded through the proxy of the DPE, so the other services keep
+ * receiving their requests. When the ring is empty the reader backs off
+ * to millisecond parks.
+ * <p>
+ * A service sending a request to a service of another DPE on the same host
+ * writes the serialized message into the ring of that DPE. If the other DPE
+ * has no ring (i.e. it is not a Java DPE, or the transport is disabled),
+ * the ring is full, or the message is too large, the request is published
+ * through the proxy as usual. The ring of a DPE is reopened when that DPE
+ * is restarted, and it is not used while the DPE is not polling it
+ * (see {@link MappedRing}).
+ */
+class IpcTransport {
+
+    /**
+     * Publishes a received request through the proxy of the DPE.
+     */
+    @FunctionalInterface
+    interface Forwarder {
+        void forward(xMsgMessage msg) throws Exception;
+    }
+
+    static final Path DEFAULT_DIRECTORY = Paths.get("/dev/shm");
+
+    // how long to wait before checking again for the ring of a DPE
+    private static final long RETRY_PERIOD = TimeUnit.SECONDS.toNanos(10);
+
+    // how often to check if the ring of a DPE was replaced
+    private static final long CHECK_PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // how many empty polls before the reader starts to park,
+    // doubling the park time on every empty poll, up to the maximum
+    private static final int MAX_SPINS = 100;
+    private static final long MIN_PARK = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final Path directory;
+    private final String dpeName;
+    private final String host;
+    private final MappedRing inbox;
+    private final Forwarder forwarder;
+    private final Thread reader;
+
+    /*
+      key = <receiver-dpe>
+      value = the producer side of the ring of the receiver
+    */
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean running;
+
+    /**
+     * Creates the ring of the given DPE.
+     *
+     * @param directory where to create the rings
+     * @param dpeName the canonical name of the DPE
+     * @param host the host of the DPE
+     * @param capacity the size of the ring of the DPE, in bytes
+     * @param forwarder publishes the requests that cannot be queued directly
+     * @throws IOException if the ring could not be created
+     */
+    IpcTransport(Path directory, String dpeName, String host, int capacity,
+                 Forwarder forwarder) throws IOException {
+        this.directory = directory;
+        this.dpeName = dpeName;
+        this.host = host;
+        this.inbox = MappedRing.create(ringPath(directory, dpeName), capacity);
+        this.forwarder = forwarder;
+        this.reader = new Thread(this::run, "ipc-reader");
+        this.reader.setDaemon(true);
+    }
+
+    /**
+     * Checks if the transport can be used on this host.
+     *
+     * @param directory where the rings are created
+     * @return true if the directory exists and is writable
+     */
+    static boolean isSupported(Path directory) {
+        return Files.isDirectory(directory) && Files.isWritable(directory);
+    }
+
+    static Path ringPath(Path directory, String dpeName) {
+        return directory.resolve("clara-" + dpeName.replaceAll("[^\\w.-]", "_") + ".ring");
+    }
+
+    void start() {
+        running = true;
+        reader.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(reader);
+        try {
+            reader.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            inbox.close();
+        } catch (IOException e) {
+            Logging.error("ipc: could not remove %s: %s", inbox.path(), e.getMessage());
+        }
+        peers.clear();
+    }
+
+    /**
+     * Writes the given message into the ring of the DPE of the route,
+     * if that DPE runs on the same host and it has a ring with enough space.
+     *
+     * @param route the link to the receiving service
+     * @param msg the serialized request
+     * @return true if the message was written into the ring,
+     *         false if it should be published through the proxy
+     */
+    boolean send(RoutingPlan.Route route, xMsgMessage msg) {
+        if (!host.equals(route.address.host()) || dpeName.equals(route.dpe)) {
+            return false;
+        }
+        MappedRing ring = peers.computeIfAbsent(route.dpe, Peer::new).ring();
+        if (ring == null) {
+            return false;
+        }
+        return ring.offer(msg.getTopic().toString().getBytes(StandardCharsets.UTF_8),
+                          msg.getMetaData().build().toByteArray(),
+                          msg.getData());
+    }
+
+    long receivedCount() {
+        return received.sum();
+    }
+
+    long forwardedCount() {
+        return forwarded.sum();
+    }
+
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    long reclaimedCount() {
+        return inbox.reclaimedCount();
+    }
+
+    long discardedCount() {
+        return inbox.discardedCount();
+    }
+
+    private void run() {
+        int spins = 0;
+        long park = MIN_PARK;
+        while (running) {
+            byte[][] fields;
+            try {
+                fields = inbox.poll();
+            } catch (RuntimeException e) {
+                // keep reading the ring, only the pending requests are lost
+                Logging.error("ipc: discarded pending requests of %s: %s",
+                              inbox.path(), e.getMessage());
+                inbox.reset();
+                continue;
+            }
+            if (fields == null) {
+                if (spins < MAX_SPINS) {
+                    spins++;
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(park);
+                    park = Math.min(park * 2, MAX_PARK);
+                }
+                continue;
+            }
+            spins = 0;
+            park = MIN_PARK;
+            deliver(fields);
+        }
+    }
+
+    private void deliver(byte[][] fields) {
+        String receiver = new String(fields[0], StandardCharsets.UTF_8);
+        try {
+            xMsgMeta.Builder metadata = xMsgMeta.parseFrom(fields[1]).toBuilder();
+            xMsgMessage msg = new xMsgMessage(xMsgTopic.wrap(receiver), metadata, fields[2]);
+            received.increment();
+            if (SharedMemory.deliver(receiver, msg)) {
+                return;
+            }
+            if (!SharedMemory.containsReceiver(receiver)) {
+                dropped.increment();
+                Logging.error("ipc: dropped request to %s: service is not running", receiver);
+                return;
+            }
+            // the queue of the service is full,
+            // the request waits for a slot in the subscription of the service
+            forwarder.forward(msg);
+            forwarded.increment();
+        } catch (InvalidProtocolBufferException e) {
+            dropped.increment();
+            Logging.error("ipc: dropped request to %s: invalid metadata", receiver);
+        } catch (Exception e) {
+            dropped.increment();
+            Logging.error("ipc: could not deliver request to %s: %s", receiver, e.getMessage());
+        }
+    }
+
+
+    /**
+     * The ring of another DPE on the same host, opened on demand.
+     */
+    private final class Peer {
+
+        private final Path path;
+        private volatile MappedRing ring;
+        private volatile long checkTime;
+        private volatile long retryTime;
+
+        Peer(String dpe) {
+            this.path = ringPath(directory, dpe);
+            this.retryTime = System.nanoTime();
+        }
+
+        MappedRing ring() {
+            MappedRing current = ring;
+            long now = System.nanoTime();
+            if (current == null) {
+                // the DPE has no ring until the next retry,
+                // so the senders do not wait for the lock
+                if (now - retryTime < 0) {
+                    return null;
+                }
+            } else if (current.isAlive() && now - checkTime < 0) {
+                return current;
+            }
+            return reopen();
+        }
+
+        // the DPE may not have a ring yet, it may have been restarted
+        // (replacing the file), or it may have crashed (no heartbeat)
+        private synchronized MappedRing reopen() {
+            long now = System.nanoTime();
+            MappedRing current = ring;
+            if (current != null && current.isAlive()) {
+                if (now - checkTime < 0) {
+                    return current;
+                }
+                checkTime = now + CHECK_PERIOD;
+                if (current.isCurrent()) {
+                    return current;
+                }
+            }
+            ring = null;
+            if (now - retryTime < 0) {
+                return null;
+            }
+            try {
+                if (Files.exists(path)) {
+                    MappedRing opened = MappedRing.open(path);
+                    if (opened.isAlive()) {
+                        ring = opened;
+                        checkTime = now + CHECK_PERIOD;
+                        return opened;
+                    }
+                }
+            } catch (IOException e) {
+                Logging.error("ipc: could not open %s: %s", path, e.getMessage());
+            }
+            retryTime = now + RETRY_PERIOD;
+            return null;
+        }
+    }
+}
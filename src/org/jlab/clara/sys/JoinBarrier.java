@@ -0,0 +1,169 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.util.report.ServiceReport;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the inputs of a service that must AND-join the outputs of
+ * several services before executing its engine.
+ * <p>
+ * Partial inputs are kept by composition and communication id until the
+ * data from all joined services has been received, so events of different
+ * compositions that use the same ids are never joined together. The number of incomplete joins is
+ * bounded: the oldest join is evicted when a new one does not fit, and joins
+ * that have been waiting longer than the timeout are evicted as well.
+ */
+class JoinBarrier {
+
+    private final String name;
+    private final int capacity;
+    private final long timeout;
+    private final ServiceReport sysReport;
+
+    private final LinkedHashMap<JoinKey, Join> pending = new LinkedHashMap<>();
+
+
+    JoinBarrier(String name, int capacity, long timeout, TimeUnit unit, ServiceReport report) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid join capacity: " + capacity);
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.timeout = unit.toNanos(timeout);
+        this.sysReport = report;
+    }
+
+    /**
+     * Adds the data to the join of its composition and communication id.
+     *
+     * @param data the output of one of the joined services
+     * @param inputs the names of all joined services
+     * @return the data of all joined services, in the given order,
+     *         or null if some data is still missing
+     */
+    synchronized Set<EngineData> offer(EngineData data, Set<String> inputs) {
+        long now = System.nanoTime();
+        evictExpired(now);
+
+        JoinKey key = new JoinKey(data.getComposition(), data.getCommunicationId());
+        Join join = pending.get(key);
+        if (join == null) {
+            if (pending.size() >= capacity) {
+                evictOldest();
+            }
+            join = new Join(now);
+            pending.put(key, join);
+        }
+        join.inputs.put(data.getEngineName(), data);
+
+        if (!join.inputs.keySet().containsAll(inputs)) {
+            return null;
+        }
+        pending.remove(key);
+
+        Set<EngineData> joined = new LinkedHashSet<>();
+        for (String input : inputs) {
+            joined.add(join.inputs.get(input));
+        }
+        return joined;
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<JoinKey, Join>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<JoinKey, Join> entry = it.next();
+            if (now - entry.getValue().createdAt < timeout) {
+                break;
+            }
+            it.remove();
+            evicted(entry.getKey(), "timeout");
+        }
+    }
+
+    private void evictOldest() {
+        Iterator<Map.Entry<JoinKey, Join>> it = pending.entrySet().iterator();
+        Map.Entry<JoinKey, Join> entry = it.next();
+        it.remove();
+        evicted(entry.getKey(), "too many pending joins");
+    }
+
+    private void evicted(JoinKey key, String reason) {
+        sysReport.incrementJoinEvictions();
+        Logging.error("service = %s: dropped incomplete join of communication id = %d (%s)",
+                      name, key.id, reason);
+    }
+
+
+    private static final class JoinKey {
+
+        private final String composition;
+        private final int id;
+
+        private JoinKey(String composition, int id) {
+            this.composition = composition;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof JoinKey)) {
+                return false;
+            }
+            JoinKey other = (JoinKey) obj;
+            return id == other.id && Objects.equals(composition, other.composition);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id + Objects.hashCode(composition);
+        }
+    }
+
+
+    private static final class Join {
+
+        private final long createdAt;
+        private final Map<String, EngineData> inputs = new LinkedHashMap<>();
+
+        private Join(long createdAt) {
+            this.createdAt = createdAt;
+        }
+    }
+}
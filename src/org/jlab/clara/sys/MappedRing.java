@@ -0,0 +1,584 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * A bounded ring buffer in a memory-mapped file, to pass messages between
+ * processes running on the same host.
+ * <p>
+ * The ring is created by its single consumer, and it can be opened by any
+ * number of producers, in any process. Producers reserve space for a record
+ * with an atomic update of the tail, so they never block each other,
+ * and publish the record by writing its length last. The consumer reads the
+ * records in order, clears them, and releases the space by advancing the head.
+ * <p>
+ * A record never wraps around the end of the buffer. If it does not fit,
+ * the remaining space is skipped with a padding record.
+ * <p>
+ * Any of the processes may crash:
+ * <ul>
+ * <li>The consumer writes a heartbeat when it polls the ring. Producers
+ *     do not write into a ring without a recent heartbeat.
+ * <li>A consumer that creates a new ring in the same file first closes the
+ *     ring left by a crashed consumer, and producers can check if the file
+ *     they mapped was replaced, so they reopen the new ring instead of
+ *     writing into a deleted file.
+ * <li>A producer that crashes after reserving a record, before publishing
+ *     it, would stall the ring forever. If the record at the head is not
+ *     published after the reclaim timeout, the consumer drops all the
+ *     records reserved until then, which were blocked behind it.
+ * </ul>
+ * <p>
+ * A producer that was only paused (i.e. a long GC) may still write its record
+ * after the space was reclaimed, and even reserved again by another producer.
+ * Every record is stamped with its position when it is reserved, and
+ * a checksum of the stamp and the fields is written before the record is
+ * published. The producer only publishes a record that still has its stamp,
+ * and the consumer discards all the reserved records if the record at
+ * the head does not have the expected stamp or checksum, so a late write
+ * never delivers a corrupted message nor stops the consumer.
+ * <p>
+ * The file has the following layout (native byte order):
+ * <pre>
+ *     0   magic number (written last, once the ring is initialized)
+ *     8   capacity of the data region
+ *    16   closed flag (set by the consumer when it closes the ring)
+ *    64   tail: the next position to be reserved by the producers
+ *   128   head: the next position to be read by the consumer
+ *   136   heartbeat: the last time the consumer polled the ring (epoch ms)
+ *   192   data region
+ * </pre>
+ * The head and tail are kept on different cache lines.
+ * Each record has the following layout:
+ * <pre>
+ *     0   length of the record, published last
+ *     4   checksum (CRC32C of the record from the stamp)
+ *     8   stamp: the position of the record in the ring plus one,
+ *         so a cleared record is never stamped
+ *    16   number of fields
+ *    20   fields, each with its length
+ * </pre>
+ * A padding record is stamped with the complement of its position,
+ * if there is space for it.
+ */
+final class MappedRing implements AutoCloseable {
+
+    static final int MIN_CAPACITY = 4096;
+    static final int MAX_CAPACITY = 1 << 30;
+
+    static final long DEFAULT_RECLAIM_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+    static final long HEARTBEAT_TIMEOUT = TimeUnit.SECONDS.toMillis(2);
+
+    private static final long MAGIC = 0x434c415241524e33L; // CLARARN3
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int CLOSED_OFFSET = 16;
+    private static final int TAIL_OFFSET = 64;
+    private static final int HEAD_OFFSET = 128;
+    private static final int HEARTBEAT_OFFSET = 136;
+    static final int DATA_OFFSET = 192;
+
+    private static final int CHECKSUM_OFFSET = 4;
+    private static final int STAMP_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+    static final int RECORD_HEADER = 20;
+    private static final int FIELD_HEADER = 4;
+    private static final int PADDING = -1;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final boolean isOwner;
+
+    // identifies the mapped file, null if not supported by the file system
+    private final Object fileKey;
+
+    // consumer state
+    private long reclaimTimeout = DEFAULT_RECLAIM_TIMEOUT;
+    private long lastHeartbeat;
+    private long stalledHead = -1;
+    private long stalledTail;
+    private long stalledSince;
+    private volatile long reclaimed;
+    private volatile long discarded;
+
+    private MappedRing(Path path, MappedByteBuffer buffer, int capacity, boolean isOwner,
+                       Object fileKey) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.isOwner = isOwner;
+        this.fileKey = fileKey;
+        this.buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Creates a new ring in the given file, to be read by the caller.
+     * Any existing file is replaced. If it contains a ring left by a crashed
+     * consumer, that ring is closed first, so its producers stop using it.
+     * <p>
+     * The file can only be read and written by the owner. The pages of the
+     * mapped file are allocated when they are first written, so the file
+     * system must have enough free space for the whole ring, or writing into
+     * the ring would crash the JVM.
+     *
+     * @param path the file backing the ring
+     * @param capacity the size of the data region, a power of two
+     * @return the consumer side of the ring
+     * @throws IOException if the file could not be created or mapped,
+     *         or there is not enough free space for it
+     */
+    static MappedRing create(Path path, int capacity) throws IOException {
+        if (capacity < MIN_CAPACITY || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Invalid ring capacity: " + capacity);
+        }
+        closeStale(path);
+        Files.deleteIfExists(path);
+        long usable = Files.getFileStore(path.getParent()).getUsableSpace();
+        if (usable < DATA_OFFSET + capacity) {
+            throw new IOException(String.format("not enough space for the ring in %s: %d MB free",
+                                                path.getParent(), usable >> 20));
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path,
+                                                    EnumSet.of(StandardOpenOption.CREATE_NEW,
+                                                               StandardOpenOption.READ,
+                                                               StandardOpenOption.WRITE),
+                                                    ownerOnly(path))) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + capacity);
+        }
+        MappedRing ring = new MappedRing(path, buffer, capacity, true, fileKey(path));
+        LONGS.set(buffer, CAPACITY_OFFSET, (long) capacity);
+        LONGS.set(buffer, TAIL_OFFSET, 0L);
+        LONGS.set(buffer, HEAD_OFFSET, 0L);
+        ring.heartbeat();
+        LONGS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+        return ring;
+    }
+
+    private static FileAttribute<?>[] ownerOnly(Path path) throws IOException {
+        if (!Files.getFileStore(path.getParent())
+                  .supportsFileAttributeView(PosixFileAttributeView.class)) {
+            return new FileAttribute<?>[0];
+        }
+        return new FileAttribute<?>[] {
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))
+        };
+    }
+
+    private static void closeStale(Path path) {
+        try {
+            MappedRing stale = open(path);
+            INTS.setRelease(stale.buffer, CLOSED_OFFSET, 1);
+        } catch (IOException e) {
+            // no file, or not a ring
+        }
+    }
+
+    /**
+     * Opens an existing ring, to write into it.
+     *
+     * @param path the file backing the ring
+     * @return the producer side of the ring
+     * @throws IOException if the file could not be mapped or it is not a ring
+     */
+    static MappedRing open(Path path) throws IOException {
+        Object key = fileKey(path);
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size <= DATA_OFFSET) {
+                throw new IOException("not a ring buffer: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if ((long) LONGS.getAcquire(buffer, MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("not a ring buffer: " + path);
+            }
+            long capacity = (long) LONGS.get(buffer, CAPACITY_OFFSET);
+            if (capacity != size - DATA_OFFSET) {
+                throw new IOException("invalid ring buffer size: " + path);
+            }
+            if (!Objects.equals(key, fileKey(path))) {
+                throw new IOException("ring buffer replaced while opening: " + path);
+            }
+            return new MappedRing(path, buffer, (int) capacity, false, key);
+        }
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Gets the maximum size of a message, to always fit in the ring.
+     *
+     * @return the maximum total length of the fields of a message
+     */
+    int maxMessageSize() {
+        return capacity / 2 - RECORD_HEADER;
+    }
+
+    /**
+     * Writes a message into the ring, if there is space for it.
+     * Never blocks.
+     *
+     * @param fields the fields of the message
+     * @return true if the message was written, false if the ring is full,
+     *         the message is too large, or the consumer is not reading it
+     */
+    boolean offer(byte[]... fields) {
+        long length = RECORD_HEADER;
+        for (byte[] field : fields) {
+            length += FIELD_HEADER + field.length;
+        }
+        if (length - RECORD_HEADER > maxMessageSize()) {
+            return false;
+        }
+        if (!isAlive()) {
+            return false;
+        }
+        long position = reserve(align((int) length));
+        if (position < 0) {
+            return false;
+        }
+        return write(position, (int) length, fields);
+    }
+
+    /**
+     * Reserves space for a record of the given aligned size, and stamps it
+     * with its position. The record is not read until it is published by
+     * writing its length.
+     *
+     * @return the position of the record in the ring,
+     *         or -1 if the ring is full
+     */
+    long reserve(int size) {
+        while (true) {
+            long tail = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+            long head = (long) LONGS.getVolatile(buffer, HEAD_OFFSET);
+            int index = (int) (tail & mask);
+            int remaining = capacity - index;
+            int claim = size <= remaining ? size : remaining + size;
+            if (tail + claim - head > capacity) {
+                return -1;
+            }
+            if (LONGS.compareAndSet(buffer, TAIL_OFFSET, tail, tail + claim)) {
+                long position = tail;
+                if (claim != size) {
+                    int padding = DATA_OFFSET + index;
+                    if (remaining >= COUNT_OFFSET) {
+                        LONGS.set(buffer, padding + STAMP_OFFSET, ~tail);
+                    }
+                    INTS.setRelease(buffer, padding, PADDING);
+                    position += remaining;
+                }
+                // the space may contain a late write into a reclaimed record
+                int offset = offset(position);
+                INTS.set(buffer, offset, 0);
+                LONGS.setRelease(buffer, offset + STAMP_OFFSET, position + 1);
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Writes and publishes a reserved record, unless it was reclaimed
+     * by the consumer in the meantime.
+     *
+     * @return true if the record was published
+     */
+    boolean write(long position, int length, byte[][] fields) {
+        int offset = offset(position);
+        if (!isReserved(offset, position)) {
+            return false;
+        }
+        buffer.putInt(offset + COUNT_OFFSET, fields.length);
+        int index = offset + RECORD_HEADER;
+        for (byte[] field : fields) {
+            buffer.putInt(index, field.length);
+            buffer.put(index + FIELD_HEADER, field);
+            index += FIELD_HEADER + field.length;
+        }
+        if (!isReserved(offset, position)) {
+            return false;
+        }
+        buffer.putInt(offset + CHECKSUM_OFFSET, checksum(offset, length));
+        // publish the record, unless the space was reclaimed and reserved again
+        return INTS.compareAndSet(buffer, offset, 0, length);
+    }
+
+    private boolean isReserved(int offset, long position) {
+        return (long) LONGS.getAcquire(buffer, offset + STAMP_OFFSET) == position + 1;
+    }
+
+    private int checksum(int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + STAMP_OFFSET, length - STAMP_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private int offset(long position) {
+        return DATA_OFFSET + (int) (position & mask);
+    }
+
+    /**
+     * Reads the next message from the ring, if any.
+     * Must be called by the consumer thread only,
+     * more often than the heartbeat timeout.
+     *
+     * @return the fields of the next message, or null if the ring is empty,
+     *         or the next message is not completely written yet
+     */
+    byte[][] poll() {
+        heartbeat();
+        while (true) {
+            long head = (long) LONGS.get(buffer, HEAD_OFFSET);
+            if (head == (long) LONGS.getVolatile(buffer, TAIL_OFFSET)) {
+                // nothing reserved, ignoring any late write into the free space
+                return null;
+            }
+            int index = (int) (head & mask);
+            int offset = DATA_OFFSET + index;
+            int length = (int) INTS.getAcquire(buffer, offset);
+            if (length == 0) {
+                if (reclaimStalled(head)) {
+                    continue;
+                }
+                return null;
+            }
+            if (length == PADDING) {
+                int remaining = capacity - index;
+                if (remaining >= COUNT_OFFSET
+                        && (long) LONGS.get(buffer, offset + STAMP_OFFSET) != ~head) {
+                    reset();
+                    continue;
+                }
+                release(head, head + remaining);
+                continue;
+            }
+            if (length < RECORD_HEADER || length > capacity - index
+                    || (long) LONGS.get(buffer, offset + STAMP_OFFSET) != head + 1
+                    || buffer.getInt(offset + CHECKSUM_OFFSET) != checksum(offset, length)) {
+                reset();
+                continue;
+            }
+            byte[][] fields = read(offset);
+            release(head, head + align(length));
+            return fields;
+        }
+    }
+
+    /**
+     * Discards all the reserved records, when the record at the head
+     * cannot be trusted. Must be called by the consumer thread only.
+     */
+    void reset() {
+        long head = (long) LONGS.get(buffer, HEAD_OFFSET);
+        long tail = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+        release(head, tail);
+        stalledHead = -1;
+        discarded++;
+    }
+
+    // clears the records from the head and frees their space
+    private void release(long head, long next) {
+        long size = next - head;
+        int index = (int) (head & mask);
+        int first = (int) Math.min(size, capacity - index);
+        clear(DATA_OFFSET + index, first);
+        clear(DATA_OFFSET, (int) (size - first));
+        LONGS.setRelease(buffer, HEAD_OFFSET, next);
+    }
+
+    // drops the records blocked by a record that was never published
+    private boolean reclaimStalled(long head) {
+        long tail = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+        if (tail == head) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (stalledHead != head) {
+            // any record reserved until now is complete after the timeout,
+            // unless its producer crashed or it is paused, in which case
+            // its late write is detected by the stamp of the record
+            stalledHead = head;
+            stalledTail = tail;
+            stalledSince = now;
+            return false;
+        }
+        if (now - stalledSince < reclaimTimeout) {
+            return false;
+        }
+        release(head, stalledTail);
+        stalledHead = -1;
+        reclaimed++;
+        return true;
+    }
+
+    private byte[][] read(int offset) {
+        byte[][] fields = new byte[buffer.getInt(offset + COUNT_OFFSET)][];
+        int position = offset + RECORD_HEADER;
+        for (int i = 0; i < fields.length; i++) {
+            byte[] field = new byte[buffer.getInt(position)];
+            buffer.get(position + FIELD_HEADER, field);
+            fields[i] = field;
+            position += FIELD_HEADER + field.length;
+        }
+        return fields;
+    }
+
+    // the producers expect a zero length on every record they reserve
+    private void clear(int offset, int size) {
+        while (size > 0) {
+            int chunk = Math.min(size, ZEROS.length);
+            buffer.put(offset, ZEROS, 0, chunk);
+            offset += chunk;
+            size -= chunk;
+        }
+    }
+
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+
+    /**
+     * Checks if the consumer of the ring has closed it.
+     *
+     * @return true if no more messages will be read from the ring
+     */
+    boolean isClosed() {
+        return (int) INTS.getAcquire(buffer, CLOSED_OFFSET) != 0;
+    }
+
+    /**
+     * Checks if the consumer is reading the ring:
+     * it was not closed, and the last heartbeat is recent.
+     *
+     * @return true if the messages written into the ring will be read
+     */
+    boolean isAlive() {
+        return isAlive(HEARTBEAT_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    boolean isAlive(long timeout, TimeUnit unit) {
+        if (isClosed()) {
+            return false;
+        }
+        long heartbeat = (long) LONGS.getAcquire(buffer, HEARTBEAT_OFFSET);
+        return System.currentTimeMillis() - heartbeat <= unit.toMillis(timeout);
+    }
+
+    /**
+     * Checks if the file of the ring still is the mapped file.
+     * A restarted consumer replaces the file with a new ring.
+     *
+     * @return false if the file was removed or replaced
+     */
+    boolean isCurrent() {
+        try {
+            return fileKey == null || fileKey.equals(fileKey(path));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // tells the producers that the consumer is still reading the ring
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        if (now != lastHeartbeat) {
+            lastHeartbeat = now;
+            LONGS.setRelease(buffer, HEARTBEAT_OFFSET, now);
+        }
+    }
+
+    /**
+     * Sets how long the consumer waits for a reserved record to be published,
+     * before its producer is considered crashed.
+     */
+    void setReclaimTimeout(long timeout, TimeUnit unit) {
+        reclaimTimeout = unit.toNanos(timeout);
+    }
+
+    /**
+     * Gets how many times the consumer dropped the records blocked
+     * by a record that was never published.
+     */
+    long reclaimedCount() {
+        return reclaimed;
+    }
+
+    /**
+     * Gets how many times the consumer discarded the reserved records,
+     * because the record at the head had an invalid stamp or checksum.
+     */
+    long discardedCount() {
+        return discarded;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Closes the ring. If the caller is the consumer, the producers are
+     * notified and the file is removed, unless it was replaced by a new ring.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isOwner) {
+            INTS.setRelease(buffer, CLOSED_OFFSET, 1);
+            if (isCurrent()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -70,6 +70,21 @@ final class RequestParser {
         }
     }
 
+    public int nextInteger(int defaultValue) throws RequestException {
+        return tokenizer.hasMoreElements() ? nextInteger() : defaultValue;
+    }
+
+    public long nextLong(long defaultValue) throws RequestException {
+        if (!tokenizer.hasMoreElements()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(tokenizer.nextToken());
+        } catch (NumberFormatException e) {
+            throw new RequestException(invalidRequestMsg() + ": " + cmdData);
+        }
+    }
+
     public String request() {
         return cmdData;
     }
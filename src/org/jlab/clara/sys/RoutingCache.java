@@ -0,0 +1,91 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.error.ClaraException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the compiled routing plans of a service.
+ * <p>
+ * The plans are shared by all the engines of the service, and kept in LRU
+ * order, so compositions used at the same time (i.e. the main chain and
+ * a monitoring chain) are compiled only once.
+ */
+class RoutingCache {
+
+    static final int DEFAULT_CAPACITY = 16;
+
+    private final String service;
+    private final Map<String, RoutingPlan> plans;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param service the name of the service relative to which to compile
+     * @param capacity the maximum number of cached plans
+     */
+    RoutingCache(String service, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.service = service;
+        this.plans = new LinkedHashMap<String, RoutingPlan>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RoutingPlan> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets the routing plan for the given composition,
+     * compiling it if it is not cached.
+     *
+     * @param composition the composition of the received request
+     * @return the compiled plan
+     * @throws ClaraException if the composition could not be compiled
+     */
+    RoutingPlan get(String composition) throws ClaraException {
+        synchronized (plans) {
+            RoutingPlan plan = plans.get(composition);
+            if (plan != null) {
+                return plan;
+            }
+        }
+        // compile outside the lock, a concurrent compilation is harmless
+        RoutingPlan plan = new RoutingPlan(service, composition);
+        synchronized (plans) {
+            RoutingPlan cached = plans.putIfAbsent(composition, plan);
+            return cached != null ? cached : plan;
+        }
+    }
+
+    int size() {
+        synchronized (plans) {
+            return plans.size();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.base.error.ClaraException;
+import org.jlab.clara.sys.ccc.CompositionCompiler;
+import org.jlab.clara.sys.ccc.ServiceState;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.jlab.coda.xmsg.net.xMsgProxyAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The compiled routing of a composition, relative to a service.
+ * <p>
+ * The output links are resolved into routes, with the topic and the proxy
+ * address of the receiving service. If the composition has no conditional
+ * statements, the routes are the same for every event, and they are computed
+ * once. Otherwise the conditions are evaluated for every event, but the
+ * resolved routes are reused.
+ * <p>
+ * A plan is immutable after compilation, and it can be shared by all the
+ * engines of a service.
+ */
+class RoutingPlan {
+
+    private final String composition;
+    private final CompositionCompiler compiler;
+    private final Set<String> joinInputs;
+    private final List<Route> routes;
+    private final Map<String, Route> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Compiles the given composition.
+     *
+     * @param service the name of the service relative to which to compile
+     * @param composition the composition to compile
+     * @throws ClaraException if the composition could not be compiled
+     */
+    RoutingPlan(String service, String composition) throws ClaraException {
+        this.composition = composition;
+        this.compiler = new CompositionCompiler(service);
+        this.compiler.compile(composition);
+        this.joinInputs = Collections.unmodifiableSet(compiler.getJoinInputs());
+        if (compiler.isConditional()) {
+            this.routes = null;
+        } else {
+            List<Route> links = new ArrayList<>();
+            for (String link : compiler.getUnconditionalLinks()) {
+                links.add(resolve(link));
+            }
+            this.routes = Collections.unmodifiableList(links);
+        }
+    }
+
+    String composition() {
+        return composition;
+    }
+
+    Set<String> joinInputs() {
+        return joinInputs;
+    }
+
+    /**
+     * Gets the routes for the output of an event.
+     *
+     * @param ownerName the name of the service
+     * @param ownerState the execution state of the output data
+     * @param inputName the name of the service that sent the input data
+     * @param inputState the execution state of the input data
+     * @return the routes to the next services
+     */
+    List<Route> routes(String ownerName, String ownerState, String inputName, String inputState) {
+        if (routes != null) {
+            return routes;
+        }
+        ServiceState ownerSS = new ServiceState(ownerName, ownerState);
+        ServiceState inputSS = new ServiceState(inputName, inputState);
+        Set<String> links = compiler.getLinks(ownerSS, inputSS);
+        List<Route> conditional = new ArrayList<>(links.size());
+        for (String link : links) {
+            conditional.add(resolve(link));
+        }
+        return conditional;
+    }
+
+    private Route resolve(String link) {
+        return resolved.computeIfAbsent(link, Route::new);
+    }
+
+
+    /**
+     * A link to a service, resolved to its topic, DPE and proxy address.
+     */
+    static final class Route {
+
+        final String name;
+        final xMsgTopic topic;
+        final String dpe;
+        final xMsgProxyAddress address;
+
+        Route(String name) {
+            ClaraComponent component = ClaraComponent.dpe(name);
+            this.name = name;
+            this.topic = xMsgTopic.wrap(name);
+            this.dpe = component.getDpeCanonicalName();
+            this.address = component.getProxyAddress();
+        }
+    }
+}
@@ -24,8 +24,11 @@ package org.jlab.clara.sys;
 
 import org.jlab.clara.base.core.ClaraConstants;
 import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.base.core.DataTypeTable;
 import org.jlab.clara.base.error.ClaraException;
 import org.jlab.clara.engine.Engine;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineStatus;
 import org.jlab.clara.sys.RequestParser.RequestException;
 import org.jlab.clara.util.report.ServiceReport;
 import org.jlab.coda.xmsg.core.xMsgCallBack;
@@ -37,9 +40,16 @@ import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A CLARA service listening and executing requests.
@@ -47,16 +57,69 @@ import java.util.concurrent.TimeUnit;
  * An internal object pool contains N number of {@link ServiceEngine} objects,
  * where N is user specified value (usually equals to the number of cores).
  * A thread pool contains threads to run each object within.
- * Number of threads in the pool is equal to the size of the object pool.
- * Thread pool is fixed size, however object pool is capable of expanding.
+ * <p>
+ * The object pool is elastic: it grows when requests wait too long for an
+ * engine, up to the maximum pool size, and shrinks back to the deployed pool
+ * size when engines stay idle. The limits can be changed with a DPE request.
+ * <p>
+ * Received requests are passed to a {@link ServiceDispatcher}, which runs
+ * them on an idle engine, or keeps them in a bounded queue until an engine
+ * is released. The subscription threads never wait for a slot in the queue:
+ * when it is full, execute requests wait in order in a separate overflow
+ * thread, and configuration and setup requests are still handled as soon as
+ * they are received.
+ * <p>
+ * By default all the engines of the pool share the same user engine object.
+ * The service can also be deployed with a separate user engine object for
+ * each engine of the pool, to run stateful engines without synchronization.
+ * In that case configuration requests are broadcast to all engines.
+ * <p>
+ * If the DPE runs a shared scheduler, the requests are executed by the
+ * shared pool instead of a private thread pool. The size of the engine pool
+ * still limits how many requests of this service run in parallel.
+ * <p>
+ * If the service is deployed with batching, execute requests are grouped by
+ * a {@link ServiceBatcher}, and each batch is dispatched as a single request
+ * that runs {@link Engine#executeBatch} with all the events of the batch.
+ * <p>
+ * If the composition declares that the service must AND-join the data of
+ * several services, the partial inputs are kept in a {@link JoinBarrier}
+ * until the data of all joined services is received, and then the engine
+ * executes the group of inputs at once.
  */
 class Service extends AbstractActor {
 
+    // how long a request waits for a slot when the queue is full
+    private static final long QUEUE_TIMEOUT = 30;
+
+    // how long an incomplete AND-join waits for the data of all joined services
+    private static final long JOIN_TIMEOUT = 60;
+
+    // default time a request can wait in the queue before the pool grows (us)
+    private static final long GROW_DELAY = 10_000;
+
+    // default time an engine can stay idle before the pool shrinks (us)
+    private static final long IDLE_TIMEOUT = 60_000_000;
+
     private final String name;
     private final Engine userEngine;
+    private final EngineLoader engineLoader;
+    private final String engineClass;
+    private final boolean enginePerThread;
+    private final int maxCores;
 
     private final ExecutorService executionPool;
-    private final ServiceEngine[] enginePool;
+    private final boolean isSharedPool;
+    private final List<ServiceEngine> enginePool = new CopyOnWriteArrayList<>();
+    private final ServiceActor engineActor;
+    private final ServiceStages stages;
+    private final ServiceSender sender;
+    private final ExecutionWatchdog watchdog;
+    private final EventTracer tracer;
+    private final ServiceDispatcher dispatcher;
+    private final ExecutorService overflow;
+    private final AtomicInteger overflowing = new AtomicInteger();
+    private final ServiceBatcher batcher;
     private final ServiceSysConfig sysConfig;
     private final ServiceReport sysReport;
 
@@ -74,30 +137,82 @@ class Service extends AbstractActor {
      */
     Service(ClaraComponent comp,
             ClaraComponent frontEnd,
-            ConnectionPools connectionPools,
+            DpeResources resources,
+            DpeConfig config,
+            ServiceOptions options,
             String session) throws ClaraException {
         super(comp, frontEnd);
 
         name = comp.getCanonicalName();
+        this.tracer = resources.tracer;
         sysConfig = new ServiceSysConfig(name, comp.getInitialState());
 
         // Dynamic loading of the CLARA engine class
         // Note: using system class loader
-        EngineLoader cl = new EngineLoader(ClassLoader.getSystemClassLoader());
-        userEngine = cl.load(comp.getEngineClass());
+        engineLoader = new EngineLoader(ClassLoader.getSystemClassLoader());
+        engineClass = comp.getEngineClass();
+        enginePerThread = options.enginePerThread();
+        maxCores = config.maxCores();
+        userEngine = engineLoader.load(engineClass);
 
         sysReport = new ServiceReport(comp, userEngine, session);
 
-        // Creating thread pool
-        executionPool = xMsgUtil.newThreadPool(comp.getSubscriptionPoolSize(), name);
-
-        // Creating service object pool
-        enginePool = new ServiceEngine[comp.getSubscriptionPoolSize()];
+        // Creating thread pool, unless the DPE scheduler is shared.
+        // Sized for the largest engine pool, threads are created on demand
+        isSharedPool = resources.scheduler != null;
+        if (isSharedPool) {
+            executionPool = resources.scheduler;
+        } else {
+            executionPool = xMsgUtil.newThreadPool(maxCores, name);
+        }
 
         // Fill the object pool
-        ServiceActor engineActor = new ServiceActor(comp, frontEnd, connectionPools);
+        engineActor = new ServiceActor(comp, frontEnd, resources.connectionPools, sysReport);
+        RoutingCache routingCache = new RoutingCache(name, RoutingCache.DEFAULT_CAPACITY);
+        JoinBarrier joinBarrier = new JoinBarrier(name, config.queueSize(),
+                                                  JOIN_TIMEOUT, TimeUnit.SECONDS, sysReport);
+        watchdog = new ExecutionWatchdog(name,
+                                         options.deadline(),
+                                         TimeUnit.MICROSECONDS,
+                                         options.releaseOverruns(),
+                                         this::releaseOverrun,
+                                         this::printUnhandledException,
+                                         sysReport);
+        if (options.isAsyncSend()) {
+            sender = new ServiceSender(name, options.sendThreads(), config.queueSize(),
+                                       this::printUnhandledException, sysReport);
+        } else {
+            sender = null;
+        }
+        stages = new ServiceStages(routingCache, joinBarrier, watchdog, sender,
+                                   new DataTypeTable(userEngine.getInputDataTypes()),
+                                   new DataTypeTable(userEngine.getOutputDataTypes()),
+                                   resources.ipcTransport);
         for (int i = 0; i < comp.getSubscriptionPoolSize(); i++) {
-            enginePool[i] = new ServiceEngine(userEngine, engineActor, sysConfig, sysReport);
+            enginePool.add(createEngine());
+        }
+
+        dispatcher = new ServiceDispatcher(name,
+                                           executionPool,
+                                           enginePool.toArray(new ServiceEngine[0]),
+                                           config.queueSize(),
+                                           sysReport,
+                                           this::printUnhandledException);
+        long growDelay = options.growDelay() > 0 ? options.growDelay() : GROW_DELAY;
+        long idleTimeout = options.idleTimeout() > 0 ? options.idleTimeout() : IDLE_TIMEOUT;
+        dispatcher.setEngineFactory(new ElasticPool(), growDelay, idleTimeout,
+                                    TimeUnit.MICROSECONDS);
+        if (options.maxPoolSize() > comp.getSubscriptionPoolSize()) {
+            dispatcher.resize(comp.getSubscriptionPoolSize(), options.maxPoolSize());
+        }
+        overflow = Executors.newSingleThreadExecutor(r -> new Thread(r, name + "-overflow"));
+
+        if (options.isBatching()) {
+            batcher = new ServiceBatcher(name, options.batchSize(), options.batchTime(),
+                                         this::executeBatch, this::printUnhandledException,
+                                         sysReport);
+        } else {
+            batcher = null;
         }
 
         // Register with the shared memory
@@ -111,7 +226,7 @@ class Service extends AbstractActor {
 
         // start the engines
         try {
-            Arrays.stream(enginePool).parallel().forEach(s -> {
+            enginePool.parallelStream().forEach(s -> {
                 try {
                     s.start();
                 } catch (ClaraException e) {
@@ -127,13 +242,18 @@ class Service extends AbstractActor {
         xMsgCallBack callback = new ServiceCallBack();
         String description = base.getDescription();
         subscription = startRegisteredSubscription(topic, callback, description);
+
+        // services of the same DPE can queue requests directly
+        SharedMemory.addInbox(name, this::offer);
     }
 
 
     @Override
     void end() {
+        SharedMemory.removeInbox(name);
         stopSubscription();
         destroyEngines();
+        SharedMemory.removeReceiver(name);
     }
 
 
@@ -149,46 +269,206 @@ class Service extends AbstractActor {
     }
 
 
-    private void configure(final xMsgMessage msg) throws Exception {
-        while (true) {
-            for (final ServiceEngine engine : enginePool) {
-                if (engine.tryAcquire()) {
-                    executionPool.submit(() -> {
-                        try {
-                            engine.configure(msg);
-                        } catch (Exception e) {
-                            printUnhandledException(e);
-                        } finally {
-                            engine.release();
-                        }
-                    });
-                    return;
+    private void configure(xMsgMessage msg, long receivedAt) {
+        boolean dispatched;
+        if (!enginePerThread) {
+            dispatched = dispatcher.dispatchControl(msg, (engine, m) -> {
+                try {
+                    engine.configure(m);
+                } finally {
+                    reportControl(receivedAt);
                 }
+            });
+        } else {
+            dispatched = dispatcher.dispatchAll(msg, n -> configureTask(n, receivedAt),
+                                                this::configureNewEngine);
+        }
+        if (!dispatched && msg.hasReplyTopic()) {
+            sendResponse(msg, xMsgMeta.Status.ERROR, "request rejected");
+        }
+    }
+
+
+    private ServiceDispatcher.EngineTask configureTask(int engines, long receivedAt) {
+        // reply once, after the last engine has been configured,
+        // reporting the first error if any engine failed
+        AtomicInteger pending = new AtomicInteger(engines);
+        AtomicReference<EngineData> failure = new AtomicReference<>();
+        return (engine, m) -> {
+            EngineData outData = engine.applyConfiguration(m);
+            if (outData.getStatus() == EngineStatus.ERROR) {
+                failure.compareAndSet(null, outData);
+            }
+            if (pending.decrementAndGet() == 0) {
+                EngineData error = failure.get();
+                engine.sendConfigureResult(m, error != null ? error : outData);
+                reportControl(receivedAt);
             }
+        };
+    }
+
+
+    private void configureNewEngine(ServiceEngine engine, xMsgMessage msg) {
+        EngineData outData = engine.applyConfiguration(msg);
+        if (outData.getStatus() == EngineStatus.ERROR) {
+            Logging.error("service = %s: could not configure new engine", name);
         }
     }
 
 
-    private void execute(final xMsgMessage msg) {
-        while (true) {
-            for (final ServiceEngine engine : enginePool) {
-                if (engine.tryAcquire()) {
-                    executionPool.submit(() -> {
-                        try {
-                            engine.execute(msg);
-                        } catch (Exception e) {
-                            printUnhandledException(e);
-                        } finally {
-                            engine.release();
-                        }
-                    });
-                    return;
-                }
+    private void reportControl(long receivedAt) {
+        long latency = System.nanoTime() - receivedAt;
+        sysReport.addControlRequest(TimeUnit.NANOSECONDS.toMicros(latency));
+    }
+
+
+    void resize(int minPoolSize, int maxPoolSize) {
+        dispatcher.resize(minPoolSize, maxPoolSize);
+        Logging.info("service = %s: resized pool to %d-%d engines",
+                     name, minPoolSize, maxPoolSize);
+    }
+
+
+    private ServiceEngine createEngine() throws ClaraException {
+        Engine engine = userEngine;
+        if (enginePerThread && !enginePool.isEmpty()) {
+            engine = engineLoader.load(engineClass);
+        }
+        ServiceEngine serviceEngine = new ServiceEngine(engine, engineActor, sysConfig,
+                                                        sysReport, stages);
+        return serviceEngine;
+    }
+
+
+    private void releaseOverrun(ServiceEngine engine, xMsgMessage msg, long elapsed)
+            throws ClaraException {
+        // the engine cannot be interrupted, but its slot is given to a new engine
+        // and the stuck request is reported as failed, so the data keeps flowing
+        dispatcher.release(engine);
+        engine.sendDeadlineError(msg, elapsed);
+    }
+
+
+    private void destroyEngine(ServiceEngine engine) {
+        engine.stop();
+        if (enginePerThread) {
+            engine.getUserEngine().destroy();
+        }
+    }
+
+
+    private void execute(xMsgMessage msg) throws Exception {
+        if (batcher != null) {
+            batcher.add(msg);
+        } else {
+            dispatch(msg, executeTask(msg), Collections.singletonList(msg));
+        }
+    }
+
+
+    /**
+     * Queues an execute request sent by a service of the same DPE.
+     * The caller may be running a request of that service, so this never
+     * waits for a slot in the queue.
+     *
+     * @param msg the request
+     * @return false if the request must be published through the proxy
+     */
+    boolean offer(xMsgMessage msg) {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        if (!metadata.hasAction()
+                || !metadata.getAction().equals(xMsgMeta.ControlAction.EXECUTE)) {
+            return false;
+        }
+        if (overflowing.get() > 0) {
+            // keep the order of the requests waiting for a slot
+            return false;
+        }
+        if (batcher != null) {
+            try {
+                batcher.add(msg);
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return dispatcher.offer(msg, executeTask(msg));
+    }
+
+
+    private ServiceDispatcher.EngineTask executeTask(xMsgMessage msg) {
+        if (tracer == null) {
+            return ServiceEngine::execute;
+        }
+        EventTracer.Hop hop = tracer.receive(msg, sysReport);
+        return (engine, m) -> {
+            hop.dequeued();
+            engine.execute(m, hop);
+        };
+    }
+
+
+    private void executeBatch(List<xMsgMessage> batch) {
+        if (tracer == null) {
+            dispatch(batch.get(0), (engine, m) -> engine.executeBatch(batch), batch);
+            return;
+        }
+        // the events are traced from when their batch is complete,
+        // the time to fill the batch is reported separately
+        List<EventTracer.Hop> hops = new ArrayList<>(batch.size());
+        for (xMsgMessage msg : batch) {
+            hops.add(tracer.receive(msg, sysReport));
+        }
+        dispatch(batch.get(0), (engine, m) -> {
+            hops.forEach(EventTracer.Hop::dequeued);
+            engine.executeBatch(batch, hops);
+        }, batch);
+    }
+
+
+    private void dispatch(xMsgMessage msg,
+                          ServiceDispatcher.EngineTask task,
+                          List<xMsgMessage> requests) {
+        // never block the caller, so control requests received by the same
+        // subscription threads are not stuck behind a full queue
+        if (overflowing.get() == 0 && dispatcher.offer(msg, task)) {
+            return;
+        }
+        overflowing.incrementAndGet();
+        try {
+            overflow.execute(new WaitingRequest(msg, task, requests));
+        } catch (RejectedExecutionException e) {
+            overflowing.decrementAndGet();
+            requests.forEach(this::discardSharedData);
+        }
+    }
+
+
+    private void reject(List<xMsgMessage> requests) {
+        if (requests.size() == 1) {
+            Logging.error("service = %s: request rejected, the queue is full", name);
+        } else {
+            Logging.error("service = %s: batch of %d requests rejected, the queue is full",
+                          name, requests.size());
+        }
+        for (xMsgMessage msg : requests) {
+            discardSharedData(msg);
+            if (msg.hasReplyTopic()) {
+                sendResponse(msg, xMsgMeta.Status.ERROR, "request rejected");
             }
         }
     }
 
 
+    private void discardSharedData(xMsgMessage msg) {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        if (metadata.getDataType().equals(ClaraConstants.SHARED_MEMORY_KEY)) {
+            SharedMemory.getEngineData(name, metadata.getSender(),
+                                       metadata.getCommunicationId());
+        }
+    }
+
+
     private void setup(xMsgMessage msg) throws RequestException {
         RequestParser setup = RequestParser.build(msg);
         String report = setup.nextString();
@@ -250,13 +530,61 @@ class Service extends AbstractActor {
 
 
     private void destroyEngines() {
+        int dropped = 0;
+        if (batcher != null) {
+            List<xMsgMessage> pending = batcher.stop();
+            pending.forEach(this::discardSharedData);
+            dropped += pending.size();
+        }
+        dropped += stopOverflow();
+        dropped += dispatcher.stop();
+        watchdog.stop();
+        if (dropped > 0) {
+            Logging.error("service = %s: dropped %d queued requests", name, dropped);
+        }
         destroyPool();
-        Arrays.stream(enginePool).parallel().forEach(ServiceEngine::stop);
-        userEngine.destroy();
+        if (sender != null) {
+            int unsent = sender.stop(10, TimeUnit.SECONDS);
+            if (unsent > 0) {
+                Logging.error("service = %s: dropped %d unsent results", name, unsent);
+            }
+        }
+        enginePool.parallelStream().forEach(this::destroyEngine);
+        if (!enginePerThread) {
+            userEngine.destroy();
+        }
+    }
+
+
+    private int stopOverflow() {
+        int dropped = 0;
+        for (Runnable r : overflow.shutdownNow()) {
+            List<xMsgMessage> requests = ((WaitingRequest) r).requests;
+            requests.forEach(this::discardSharedData);
+            dropped += requests.size();
+        }
+        try {
+            if (!overflow.awaitTermination(10, TimeUnit.SECONDS)) {
+                Logging.error("service = %s: overflow thread did not terminate", name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return dropped;
     }
 
 
     private void destroyPool() {
+        if (isSharedPool) {
+            try {
+                if (!dispatcher.awaitIdle(10, TimeUnit.SECONDS)) {
+                    Logging.error("service = %s: running requests did not complete", name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
         executionPool.shutdown();
         try {
             if (!executionPool.awaitTermination(10, TimeUnit.SECONDS)) {
@@ -272,16 +600,76 @@ class Service extends AbstractActor {
     }
 
 
-    private class ServiceCallBack implements xMsgCallBack {
+    private class ElasticPool implements ServiceDispatcher.EngineFactory {
+
+        @Override
+        public ServiceEngine create() throws Exception {
+            ServiceEngine engine = createEngine();
+            engine.start();
+            enginePool.add(engine);
+            return engine;
+        }
+
+        @Override
+        public void destroy(ServiceEngine engine) {
+            enginePool.remove(engine);
+            destroyEngine(engine);
+        }
+    }
+
+
+    /**
+     * A request that waits in the overflow thread for a slot in the full
+     * queue. Each request is rejected if it could not be queued before
+     * the timeout, counting from when it was received.
+     */
+    private final class WaitingRequest implements Runnable {
+
+        private final xMsgMessage msg;
+        private final ServiceDispatcher.EngineTask task;
+        private final List<xMsgMessage> requests;
+        private final long receivedAt = System.nanoTime();
+
+        WaitingRequest(xMsgMessage msg,
+                       ServiceDispatcher.EngineTask task,
+                       List<xMsgMessage> requests) {
+            this.msg = msg;
+            this.task = task;
+            this.requests = requests;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long timeout = TimeUnit.SECONDS.toNanos(QUEUE_TIMEOUT);
+                long remaining = timeout - (System.nanoTime() - receivedAt);
+                if (!dispatcher.dispatch(msg, task, Math.max(remaining, 0),
+                                         TimeUnit.NANOSECONDS)) {
+                    reject(requests);
+                }
+            } catch (InterruptedException e) {
+                // the service is stopping
+                requests.forEach(Service.this::discardSharedData);
+                Thread.currentThread().interrupt();
+            } finally {
+                overflowing.decrementAndGet();
+            }
+        }
+    }
+
+
+    class ServiceCallBack implements xMsgCallBack {
 
         @Override
         public void callback(xMsgMessage msg) {
+            long receivedAt = System.nanoTime();
             try {
                 xMsgMeta.Builder metadata = msg.getMetaData();
                 if (!metadata.hasAction()) {
                     setup(msg);
+                    reportControl(receivedAt);
                 } else if (metadata.getAction().equals(xMsgMeta.ControlAction.CONFIGURE)) {
-                    configure(msg);
+                    configure(msg, receivedAt);
                 } else {
                     execute(msg);
                 }
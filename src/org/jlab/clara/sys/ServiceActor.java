@@ -25,6 +25,7 @@ package org.jlab.clara.sys;
 import org.jlab.clara.base.core.ClaraBase;
 import org.jlab.clara.base.core.ClaraComponent;
 import org.jlab.clara.base.error.ClaraException;
+import org.jlab.clara.util.report.ServiceReport;
 import org.jlab.coda.xmsg.core.xMsgConnection;
 import org.jlab.coda.xmsg.core.xMsgConnectionPool;
 import org.jlab.coda.xmsg.core.xMsgMessage;
@@ -35,10 +36,15 @@ class ServiceActor {
 
     private final ClaraBase base;
     private final ConnectionPools connectionPools;
+    private final ServiceReport sysReport;
 
-    ServiceActor(ClaraComponent me, ClaraComponent frontEnd, ConnectionPools connectionPools) {
+    ServiceActor(ClaraComponent me,
+                 ClaraComponent frontEnd,
+                 ConnectionPools connectionPools,
+                 ServiceReport sysReport) {
         this.base = new ClaraBase(me, frontEnd);
         this.connectionPools = connectionPools;
+        this.sysReport = sysReport;
     }
 
     public void close() {
@@ -65,11 +71,24 @@ class ServiceActor {
         sendMsg(connectionPools.uncheckedPool, address, msg);
     }
 
+    // every thread keeps its own connection to each proxy, checked out only once
     private void sendMsg(xMsgConnectionPool pool, xMsgProxyAddress address, xMsgMessage msg)
             throws ClaraException {
-        try (xMsgConnection con = pool.getConnection(address)) {
+        xMsgConnection con = connectionPools.threadConnection(pool, address);
+        if (con != null) {
+            sysReport.incrementConnectionHits();
+        } else {
+            sysReport.incrementConnectionMisses();
+            try {
+                con = connectionPools.checkoutConnection(pool, address);
+            } catch (xMsgException e) {
+                throw new ClaraException("Could not send message", e);
+            }
+        }
+        try {
             base.send(con, msg);
         } catch (xMsgException e) {
+            connectionPools.invalidateConnection(pool, address, con);
             throw new ClaraException("Could not send message", e);
         }
     }
@@ -0,0 +1,166 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups the execute requests received by a service into batches.
+ * <p>
+ * A batch is handed to the service as soon as it reaches the maximum size,
+ * or when the maximum time since its first request expires,
+ * whichever happens first.
+ */
+class ServiceBatcher {
+
+    /**
+     * Processes a completed batch.
+     */
+    @FunctionalInterface
+    interface BatchHandler {
+        void handle(List<xMsgMessage> batch) throws Exception;
+    }
+
+    private final int batchSize;
+    private final long batchTime;
+    private final BatchHandler handler;
+    private final ServiceDispatcher.ErrorHandler errorHandler;
+    private final ServiceReport sysReport;
+
+    private final ScheduledExecutorService timer;
+
+    private List<xMsgMessage> batch;
+    private long batchStart;
+    private ScheduledFuture<?> flushTask;
+    private boolean isRunning = true;
+
+
+    ServiceBatcher(String name,
+                   int batchSize,
+                   long batchTime,
+                   BatchHandler handler,
+                   ServiceDispatcher.ErrorHandler errorHandler,
+                   ServiceReport report) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        this.batchTime = batchTime;
+        this.handler = handler;
+        this.errorHandler = errorHandler;
+        this.sysReport = report;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds the request to the current batch,
+     * and processes the batch if it is full.
+     *
+     * @param msg the received request
+     * @throws Exception if the full batch could not be processed
+     */
+    void add(xMsgMessage msg) throws Exception {
+        List<xMsgMessage> full = null;
+        synchronized (this) {
+            if (!isRunning) {
+                throw new IllegalStateException("batcher is stopped");
+            }
+            if (batch == null) {
+                batch = new ArrayList<>(batchSize);
+                batchStart = System.nanoTime();
+                if (batchSize > 1) {
+                    List<xMsgMessage> pending = batch;
+                    flushTask = timer.schedule(() -> flush(pending),
+                                               batchTime, TimeUnit.MICROSECONDS);
+                }
+            }
+            batch.add(msg);
+            if (batch.size() >= batchSize) {
+                if (flushTask != null) {
+                    flushTask.cancel(false);
+                }
+                full = take();
+            }
+        }
+        if (full != null) {
+            handler.handle(full);
+        }
+    }
+
+    /**
+     * Stops the timer and returns the requests that were still waiting
+     * for their batch to be completed.
+     *
+     * @return the dropped requests
+     */
+    List<xMsgMessage> stop() {
+        List<xMsgMessage> dropped;
+        synchronized (this) {
+            isRunning = false;
+            dropped = batch != null ? batch : Collections.emptyList();
+            batch = null;
+            flushTask = null;
+        }
+        timer.shutdownNow();
+        return dropped;
+    }
+
+    private void flush(List<xMsgMessage> expired) {
+        List<xMsgMessage> pending;
+        synchronized (this) {
+            if (batch != expired) {
+                return;
+            }
+            pending = take();
+        }
+        try {
+            handler.handle(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            errorHandler.handle(e);
+        }
+    }
+
+    private List<xMsgMessage> take() {
+        List<xMsgMessage> full = batch;
+        long fillTime = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - batchStart);
+        sysReport.addBatch(full.size(), fillTime);
+        batch = null;
+        flushTask = null;
+        return full;
+    }
+}
@@ -0,0 +1,710 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * Dispatches the requests received by a service to its pool of engines.
+ * <p>
+ * A new request is handed to the most recently used idle engine, if there
+ * is one. Otherwise it is stored in a bounded queue, and the engine that
+ * completes its current request will take it next. Engines that find the
+ * queue empty return to the stack of idle engines, and their threads go back
+ * to the execution pool. No thread is ever spinning while waiting for
+ * an engine.
+ * <p>
+ * The subscription threads only {@link #offer} requests, and never wait.
+ * When the queue is full, the service hands the request to its overflow
+ * thread, which {@link #dispatch dispatches} it, waiting until a slot is
+ * available or the timeout expires, in which case the request is rejected.
+ * <p>
+ * A task can also be broadcast to all engines. Idle engines run it at once,
+ * and busy engines run it before taking any other queued request.
+ * An engine added to the pool later runs the replay task of the last
+ * broadcast before any other request, unless the broadcast is already
+ * pending in the queue it inherits.
+ * <p>
+ * Control requests use a separate lane. They are never rejected nor wait for
+ * a slot in the request queue, and the next engine that becomes available
+ * runs them before any queued data request.
+ * <p>
+ * If an {@link EngineFactory} is set, the pool is elastic. A new engine is
+ * created when the oldest queued request has been waiting longer than the
+ * grow delay, up to the maximum pool size. A periodic sweep destroys the
+ * engines that have been idle longer than the idle timeout, least recently
+ * used first, down to the minimum pool size. Engines are created and
+ * destroyed in a background thread, never by the threads that dispatch or
+ * run requests.
+ * <p>
+ * An engine stuck with a request can be released from the pool. A new engine
+ * takes its place, and the released engine is destroyed when it completes
+ * the request.
+ */
+class ServiceDispatcher {
+
+    /**
+     * The action to be run with an engine of the pool.
+     */
+    @FunctionalInterface
+    interface EngineTask {
+        void run(ServiceEngine engine, xMsgMessage msg) throws Exception;
+    }
+
+    /**
+     * Reports an unhandled exception thrown by a task.
+     */
+    @FunctionalInterface
+    interface ErrorHandler {
+        void handle(Exception e);
+    }
+
+    /**
+     * Creates and destroys engines when the pool is resized.
+     */
+    interface EngineFactory {
+        ServiceEngine create() throws Exception;
+
+        void destroy(ServiceEngine engine);
+    }
+
+    private final ExecutorService executionPool;
+    private final ServiceReport sysReport;
+    private final ErrorHandler errorHandler;
+
+    private final Deque<ServiceEngine> idleEngines = new ArrayDeque<>();
+    private final Map<ServiceEngine, Long> idleSince = new IdentityHashMap<>();
+    private final Deque<Request> queue = new ArrayDeque<>();
+    private final Deque<Request> controlQueue = new ArrayDeque<>();
+    private final Map<ServiceEngine, Deque<Request>> engineQueues = new IdentityHashMap<>();
+    private final Set<ServiceEngine> released = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<Deque<Request>> orphanQueues = new ArrayDeque<>();
+    private final int queueSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    // creates and destroys the engines of the elastic pool
+    private final ScheduledExecutorService resizer;
+
+    // the last broadcast, to be replayed by the engines added later
+    private Request lastBroadcast;
+
+    private EngineFactory factory;
+    private long growDelay;
+    private long idleTimeout;
+
+    private int poolSize;
+    private int minPoolSize;
+    private int maxPoolSize;
+    private int growing;
+
+    private boolean isRunning = true;
+
+
+    ServiceDispatcher(String name,
+                      ExecutorService executionPool,
+                      ServiceEngine[] engines,
+                      int queueSize,
+                      ServiceReport report,
+                      ErrorHandler errorHandler) {
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("Invalid queue size: " + queueSize);
+        }
+        this.executionPool = executionPool;
+        this.queueSize = queueSize;
+        this.sysReport = report;
+        this.errorHandler = errorHandler;
+        this.resizer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-resizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.poolSize = engines.length;
+        this.minPoolSize = engines.length;
+        this.maxPoolSize = engines.length;
+        for (ServiceEngine engine : engines) {
+            pushIdle(engine);
+            engineQueues.put(engine, new ArrayDeque<>());
+        }
+        sysReport.setEngineCount(poolSize);
+    }
+
+    /**
+     * Makes the pool elastic, using the given factory to add or remove engines.
+     *
+     * @param factory creates and destroys engines
+     * @param growDelay how long the oldest queued request can wait
+     *                  before a new engine is created
+     * @param idleTimeout how long an engine can be idle before it is destroyed
+     * @param unit the unit of the delays
+     */
+    void setEngineFactory(EngineFactory factory, long growDelay, long idleTimeout,
+                          TimeUnit unit) {
+        lock.lock();
+        try {
+            if (this.factory != null) {
+                throw new IllegalStateException("the engine pool is already elastic");
+            }
+            this.factory = factory;
+            this.growDelay = unit.toNanos(growDelay);
+            this.idleTimeout = unit.toNanos(idleTimeout);
+        } finally {
+            lock.unlock();
+        }
+        // an idle engine is destroyed at most half a timeout late
+        long period = Math.max(unit.toNanos(idleTimeout) / 2, TimeUnit.MILLISECONDS.toNanos(1));
+        resizer.scheduleWithFixedDelay(this::retireIdleEngines, period, period,
+                                       TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets new limits for the size of the elastic pool.
+     * Engines are created or destroyed in the background as needed to fit the
+     * new limits. Busy engines above the new maximum are destroyed when they
+     * complete their current request.
+     *
+     * @param min the minimum number of engines
+     * @param max the maximum number of engines
+     */
+    void resize(int min, int max) {
+        if (min <= 0 || max < min) {
+            throw new IllegalArgumentException("Invalid pool size: " + min + "-" + max);
+        }
+        int created;
+        List<ServiceEngine> retired = new ArrayList<>();
+        lock.lock();
+        try {
+            if (factory == null) {
+                throw new IllegalStateException("the engine pool is not elastic");
+            }
+            minPoolSize = min;
+            maxPoolSize = max;
+            created = Math.max(0, minPoolSize - poolSize - growing);
+            growing += created;
+            while (poolSize > maxPoolSize && !idleEngines.isEmpty()) {
+                retired.add(remove(idleEngines.pollLast()));
+            }
+        } finally {
+            lock.unlock();
+        }
+        retired.forEach(this::retire);
+        for (int i = 0; i < created; i++) {
+            grow();
+        }
+    }
+
+    /**
+     * Removes the given busy engine from the pool, and creates a new engine
+     * in the background to replace it. The broadcast requests pending for the
+     * released engine are run by its replacement. The released engine is
+     * destroyed when it completes its current request.
+     *
+     * @param engine the engine to be released
+     * @return true if the engine was released
+     */
+    boolean release(ServiceEngine engine) {
+        boolean replace;
+        lock.lock();
+        try {
+            if (!isRunning || idleEngines.contains(engine) || !engineQueues.containsKey(engine)) {
+                return false;
+            }
+            orphanQueues.add(engineQueues.get(engine));
+            remove(engine);
+            released.add(engine);
+            replace = factory != null;
+            if (replace) {
+                growing++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (replace) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Runs the task with the next available engine.
+     *
+     * @param msg the received request
+     * @param task the action to run with the engine
+     * @param timeout how long to wait for a queue slot if the queue is full
+     * @param unit the unit of the timeout
+     * @return true if the request was dispatched or queued,
+     *         false if it was rejected
+     * @throws InterruptedException if interrupted while waiting for a slot
+     */
+    boolean dispatch(xMsgMessage msg, EngineTask task, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return submit(new Request(msg, task), unit.toNanos(timeout), true);
+    }
+
+    /**
+     * Runs the task with the next available engine, or queues it,
+     * without waiting for a queue slot. The request is not counted as
+     * rejected if the queue is full, so the caller can deliver it by
+     * other means.
+     *
+     * @param msg the received request
+     * @param task the action to run with the engine
+     * @return true if the request was dispatched or queued,
+     *         false if the queue is full or the dispatcher was stopped
+     */
+    boolean offer(xMsgMessage msg, EngineTask task) {
+        try {
+            return submit(new Request(msg, task), 0, false);
+        } catch (InterruptedException e) {
+            // never waits
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean submit(Request request, long nanos, boolean countRejected)
+            throws InterruptedException {
+        ServiceEngine engine = null;
+        boolean grow = false;
+
+        lock.lock();
+        try {
+            while (true) {
+                if (!isRunning) {
+                    return false;
+                }
+                engine = idleEngines.poll();
+                if (engine != null) {
+                    break;
+                }
+                if (queue.size() < queueSize) {
+                    queue.add(request);
+                    sysReport.setQueueDepth(queue.size());
+                    grow = shouldGrow();
+                    if (grow) {
+                        growing++;
+                    }
+                    break;
+                }
+                if (nanos <= 0) {
+                    if (countRejected) {
+                        sysReport.incrementRejectedCount();
+                    }
+                    return false;
+                }
+                nanos = available.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (grow) {
+            grow();
+        }
+        if (engine != null) {
+            ServiceEngine slot = engine;
+            executionPool.execute(() -> run(slot, request));
+        }
+        return true;
+    }
+
+    /**
+     * Runs the control task with the next available engine,
+     * ahead of any queued data request.
+     *
+     * @param msg the received control request
+     * @param task the action to run with the engine
+     * @return false if the dispatcher was stopped
+     */
+    boolean dispatchControl(xMsgMessage msg, EngineTask task) {
+        Request request = new Request(msg, task);
+        ServiceEngine engine;
+        lock.lock();
+        try {
+            if (!isRunning) {
+                return false;
+            }
+            engine = idleEngines.poll();
+            if (engine == null) {
+                controlQueue.add(request);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (engine != null) {
+            executionPool.execute(() -> run(engine, request));
+        }
+        return true;
+    }
+
+    /**
+     * Runs the task with every engine of the pool.
+     * Broadcast requests are never rejected, nor counted in the queue.
+     *
+     * @param msg the received request
+     * @param taskFactory creates the action to run with each engine,
+     *                    given the current number of engines
+     * @param replay the action to run with the engines added to the pool
+     *               after this broadcast
+     * @return false if the dispatcher was stopped
+     */
+    boolean dispatchAll(xMsgMessage msg, IntFunction<EngineTask> taskFactory,
+                        EngineTask replay) {
+        Map<ServiceEngine, Request> ready = new IdentityHashMap<>();
+        lock.lock();
+        try {
+            if (!isRunning) {
+                return false;
+            }
+            EngineTask task = taskFactory.apply(engineQueues.size());
+            lastBroadcast = new Request(msg, replay);
+            for (Map.Entry<ServiceEngine, Deque<Request>> entry : engineQueues.entrySet()) {
+                ServiceEngine engine = entry.getKey();
+                Request request = new Request(msg, task);
+                if (idleEngines.remove(engine)) {
+                    ready.put(engine, request);
+                } else {
+                    entry.getValue().add(request);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        ready.forEach((engine, request) -> executionPool.execute(() -> run(engine, request)));
+        return true;
+    }
+
+    /**
+     * Stops accepting new requests and drops all queued requests.
+     * Waits until the engine being created or destroyed in the background,
+     * if any, is ready.
+     *
+     * @return the number of dropped requests
+     */
+    int stop() {
+        int dropped;
+        lock.lock();
+        try {
+            isRunning = false;
+            dropped = queue.size() + controlQueue.size();
+            queue.clear();
+            controlQueue.clear();
+            engineQueues.values().forEach(Deque::clear);
+            orphanQueues.clear();
+            sysReport.setQueueDepth(0);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        resizer.shutdown();
+        try {
+            if (!resizer.awaitTermination(10, TimeUnit.SECONDS)) {
+                errorHandler.handle(new IllegalStateException("engine resizer did not terminate"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return dropped;
+    }
+
+    /**
+     * Waits until all engines are idle.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if all engines are idle, false if the timeout expired
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (idleEngines.size() < poolSize) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = available.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int poolSize() {
+        lock.lock();
+        try {
+            return poolSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(ServiceEngine engine, Request request) {
+        Request next = request;
+        while (next != null) {
+            try {
+                next.task.run(engine, next.msg);
+            } catch (Exception e) {
+                errorHandler.handle(e);
+            }
+            next = takeNext(engine);
+        }
+    }
+
+    private Request takeNext(ServiceEngine engine) {
+        Request next = null;
+        ServiceEngine retired = null;
+        boolean queued = false;
+        lock.lock();
+        try {
+            if (released.remove(engine)) {
+                // the engine was released while running its last request
+                retired = engine;
+            } else if (isRunning) {
+                next = engineQueues.get(engine).poll();
+                if (next == null) {
+                    next = controlQueue.poll();
+                }
+                if (next == null) {
+                    if (poolSize > maxPoolSize) {
+                        retired = remove(engine);
+                    } else {
+                        next = queue.poll();
+                        queued = next != null;
+                    }
+                }
+            }
+            if (queued) {
+                sysReport.setQueueDepth(queue.size());
+            } else if (next == null && retired == null) {
+                pushIdle(engine);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (retired != null && factory != null) {
+            retire(retired);
+        }
+        if (queued) {
+            long waitTime = System.nanoTime() - next.queuedAt;
+            sysReport.addQueuedRequest(TimeUnit.NANOSECONDS.toMicros(waitTime));
+        }
+        return next;
+    }
+
+
+    private void grow() {
+        try {
+            resizer.execute(this::addEngine);
+        } catch (RejectedExecutionException e) {
+            // the dispatcher was stopped
+            lock.lock();
+            try {
+                growing--;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void retire(ServiceEngine engine) {
+        try {
+            resizer.execute(() -> factory.destroy(engine));
+        } catch (RejectedExecutionException e) {
+            factory.destroy(engine);
+        }
+    }
+
+    private void retireIdleEngines() {
+        List<ServiceEngine> retired = new ArrayList<>();
+        lock.lock();
+        try {
+            while (isRunning) {
+                ServiceEngine engine = retireIdle();
+                if (engine == null) {
+                    break;
+                }
+                retired.add(engine);
+            }
+        } finally {
+            lock.unlock();
+        }
+        retired.forEach(factory::destroy);
+    }
+
+    private void addEngine() {
+        lock.lock();
+        try {
+            if (!isRunning) {
+                growing--;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        ServiceEngine engine;
+        try {
+            engine = factory.create();
+        } catch (Exception e) {
+            lock.lock();
+            try {
+                growing--;
+            } finally {
+                lock.unlock();
+            }
+            errorHandler.handle(e);
+            return;
+        }
+
+        Request next = null;
+        boolean added = false;
+        boolean queued = false;
+        lock.lock();
+        try {
+            growing--;
+            if (isRunning) {
+                added = true;
+                poolSize++;
+                Deque<Request> engineQueue = orphanQueues.poll();
+                if (engineQueue == null) {
+                    engineQueue = new ArrayDeque<>();
+                }
+                // registered under the same lock as the broadcasts,
+                // so the new engine runs each broadcast exactly once
+                Request pending = engineQueue.peekLast();
+                if (lastBroadcast != null
+                        && (pending == null || pending.msg != lastBroadcast.msg)) {
+                    engineQueue.add(new Request(lastBroadcast.msg, lastBroadcast.task));
+                }
+                engineQueues.put(engine, engineQueue);
+                sysReport.setEngineCount(poolSize);
+                next = engineQueue.poll();
+                if (next == null) {
+                    next = controlQueue.poll();
+                }
+                if (next == null) {
+                    next = queue.poll();
+                    if (next == null) {
+                        pushIdle(engine);
+                    } else {
+                        sysReport.setQueueDepth(queue.size());
+                        queued = true;
+                    }
+                }
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (!added) {
+            factory.destroy(engine);
+        } else if (next != null) {
+            if (queued) {
+                long waitTime = System.nanoTime() - next.queuedAt;
+                sysReport.addQueuedRequest(TimeUnit.NANOSECONDS.toMicros(waitTime));
+            }
+            Request request = next;
+            executionPool.execute(() -> run(engine, request));
+        }
+    }
+
+    // all the following methods must be called with the lock held
+
+    private boolean shouldGrow() {
+        if (factory == null || poolSize + growing >= maxPoolSize) {
+            return false;
+        }
+        Request oldest = queue.peek();
+        return oldest != null && System.nanoTime() - oldest.queuedAt >= growDelay;
+    }
+
+    private ServiceEngine retireIdle() {
+        if (factory == null || poolSize <= minPoolSize) {
+            return null;
+        }
+        ServiceEngine coldest = idleEngines.peekLast();
+        if (coldest == null || System.nanoTime() - idleSince.get(coldest) < idleTimeout) {
+            return null;
+        }
+        return remove(idleEngines.pollLast());
+    }
+
+    private ServiceEngine remove(ServiceEngine engine) {
+        idleSince.remove(engine);
+        engineQueues.remove(engine);
+        poolSize--;
+        sysReport.setEngineCount(poolSize);
+        return engine;
+    }
+
+    private void pushIdle(ServiceEngine engine) {
+        idleEngines.push(engine);
+        idleSince.put(engine, System.nanoTime());
+    }
+
+
+    private static final class Request {
+
+        private final xMsgMessage msg;
+        private final EngineTask task;
+        private final long queuedAt = System.nanoTime();
+
+        private Request(xMsgMessage msg, EngineTask task) {
+            this.msg = msg;
+            this.task = task;
+        }
+    }
+}
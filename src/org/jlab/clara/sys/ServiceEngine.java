@@ -25,23 +25,26 @@ package org.jlab.clara.sys;
 import org.jlab.clara.base.DpeName;
 import org.jlab.clara.base.core.ClaraConstants;
 import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.base.core.DataTypeTable;
 import org.jlab.clara.base.core.DataUtil;
 import org.jlab.clara.base.error.ClaraException;
 import org.jlab.clara.engine.Engine;
 import org.jlab.clara.engine.EngineData;
 import org.jlab.clara.engine.EngineDataType;
 import org.jlab.clara.engine.EngineStatus;
-import org.jlab.clara.sys.ccc.CompositionCompiler;
-import org.jlab.clara.sys.ccc.ServiceState;
 import org.jlab.clara.util.report.ServiceReport;
 import org.jlab.coda.xmsg.core.xMsgConstants;
 import org.jlab.coda.xmsg.core.xMsgMessage;
 import org.jlab.coda.xmsg.core.xMsgTopic;
 import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * A Service engine.
@@ -58,14 +61,21 @@ class ServiceEngine {
     private final ServiceSysConfig sysConfig;
     private final ServiceReport sysReport;
 
-    private final Semaphore semaphore = new Semaphore(1);
-
-    private final CompositionCompiler compiler;
+    private final RoutingCache routingCache;
+    private final JoinBarrier joinBarrier;
+    private final ExecutionWatchdog watchdog;
+    private final ServiceSender sender;
+    private final DataTypeTable inputTypes;
+    private final DataTypeTable outputTypes;
+    private final IpcTransport ipcTransport;
 
     private final ClaraComponent monitorFe;
 
-    // Already recorded (previous) composition
-    private String prevComposition = ClaraConstants.UNDEFINED;
+    // The interned name of the service, as a sender of shared data
+    private final int senderId;
+
+    // The routing plan of the current composition
+    private RoutingPlan plan;
 
     // The last execution time
     private long executionTime;
@@ -74,15 +84,27 @@ class ServiceEngine {
     ServiceEngine(Engine userEngine,
                   ServiceActor base,
                   ServiceSysConfig config,
-                  ServiceReport report) {
+                  ServiceReport report,
+                  ServiceStages stages) {
         this.base = base;
         this.engine = userEngine;
         this.sysConfig = config;
         this.sysReport = report;
-        this.compiler = new CompositionCompiler(base.getName());
+        this.routingCache = stages.routingCache;
+        this.joinBarrier = stages.joinBarrier;
+        this.watchdog = stages.watchdog;
+        this.sender = stages.sender;
+        this.inputTypes = stages.inputTypes;
+        this.outputTypes = stages.outputTypes;
+        this.ipcTransport = stages.ipcTransport;
 
         DpeName monFeDpe = FrontEnd.getMonitorFrontEnd();
         this.monitorFe = monFeDpe != null ? ClaraComponent.dpe(monFeDpe.canonicalName()) : null;
+        this.senderId = SharedMemory.senderId(base.getName());
+    }
+
+    Engine getUserEngine() {
+        return engine;
     }
 
     void start() throws ClaraException {
@@ -94,7 +116,12 @@ class ServiceEngine {
     }
 
     public void configure(xMsgMessage message) throws ClaraException {
+        EngineData outData = applyConfiguration(message);
+        sendConfigureResult(message, outData);
+    }
 
+
+    EngineData applyConfiguration(xMsgMessage message) {
         EngineData inputData;
         EngineData outData = null;
         try {
@@ -112,7 +139,11 @@ class ServiceEngine {
             updateMetadata(message.getMetaData(), DataUtil.getMetadata(outData));
             resetClock();
         }
+        return outData;
+    }
+
 
+    void sendConfigureResult(xMsgMessage message, EngineData outData) throws ClaraException {
         String replyTo = getReplyTo(message);
         if (replyTo != null) {
             sendResponse(outData, replyTo);
@@ -141,16 +172,37 @@ class ServiceEngine {
 
 
     public void execute(xMsgMessage message) throws ClaraException {
-        sysConfig.addRequest();
+        execute(message, null);
+    }
+
+
+    void execute(xMsgMessage message, EventTracer.Hop hop) throws ClaraException {
+        int reports = sysConfig.addRequest();
         sysReport.incrementRequestCount();
 
         EngineData inData = null;
         EngineData outData = null;
+        boolean released = false;
 
+        watchdog.start(this, message);
         try {
             inData = getEngineData(message);
             parseComposition(inData);
-            outData = executeEngine(inData);
+            if (isJoinInput(inData)) {
+                Set<EngineData> joined = joinBarrier.offer(inData, plan.joinInputs());
+                if (joined == null) {
+                    return; // wait for the data of the remaining joined services
+                }
+                if (hop != null) {
+                    hop.engineStarted();
+                }
+                outData = executeEngine(joined);
+            } else {
+                if (hop != null) {
+                    hop.engineStarted();
+                }
+                outData = executeEngine(inData);
+            }
 
             if (outData.getStatusSeverity() == 13) {
                 Logging.error("SevereError in the engine = %s: %s",
@@ -159,6 +211,7 @@ class ServiceEngine {
             }
 
             sysReport.addExecutionTime(executionTime);
+            sysReport.addEventTime(inData.getCommunicationId(), executionTime);
         } catch (Exception e) {
             Logging.error("UNHANDLED EXCEPTION ON SERVICE EXECUTION: %s", base.getName());
             e.printStackTrace();
@@ -168,10 +221,241 @@ class ServiceEngine {
             e.printStackTrace();
             outData = DataUtil.buildErrorData("unhandled critical error", 4, e);
         } finally {
-            updateMetadata(message.getMetaData(), DataUtil.getMetadata(outData));
+            if (hop != null) {
+                hop.engineCompleted();
+            }
+            released = !watchdog.finish(this);
+            if (outData != null && !released) {
+                updateMetadata(message.getMetaData(), DataUtil.getMetadata(outData));
+            }
+            resetClock();
+        }
+
+        if (released) {
+            // an error was already sent when the deadline expired
+            Logging.error("service = %s: dropped result of request id = %d after its deadline",
+                          base.getName(), message.getMetaData().getCommunicationId());
+            return;
+        }
+        publishResult(message, inData, outData, hop, reports);
+    }
+
+
+    void sendDeadlineError(xMsgMessage message, long elapsed) throws ClaraException {
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(elapsed);
+        String error = String.format("execution deadline exceeded after %d ms",
+                                     TimeUnit.MICROSECONDS.toMillis(elapsedMicros));
+        EngineData outData = new EngineData();
+        outData.setData(EngineDataType.STRING.mimeType(), error);
+        outData.setDescription(error);
+        outData.setStatus(EngineStatus.ERROR, 4);
+
+        xMsgMeta.Builder inMeta = message.getMetaData();
+        xMsgMeta.Builder outMeta = DataUtil.getMetadata(outData);
+        outMeta.setAuthor(base.getName());
+        outMeta.setVersion(engine.getVersion());
+        outMeta.setCommunicationId(inMeta.getCommunicationId());
+        outMeta.setComposition(inMeta.getComposition());
+        outMeta.setExecutionTime(elapsedMicros);
+        outMeta.setAction(inMeta.getAction());
+
+        sendExecuteResult(message, null, outData, null, 0);
+    }
+
+
+    public void executeBatch(List<xMsgMessage> messages) throws ClaraException {
+        executeBatch(messages, null);
+    }
+
+
+    void executeBatch(List<xMsgMessage> messages, List<EventTracer.Hop> hops)
+            throws ClaraException {
+        int size = messages.size();
+        EngineData[] inData = new EngineData[size];
+        EngineData[] outData = new EngineData[size];
+        boolean[] waiting = new boolean[size];
+        boolean[] batched = new boolean[size];
+        int[] reports = new int[size];
+        List<EngineData> inputs = new ArrayList<>(size);
+        boolean released = false;
+
+        watchdog.start(this, messages);
+        try {
+            for (int i = 0; i < size; i++) {
+                reports[i] = sysConfig.addRequest();
+                sysReport.incrementRequestCount();
+                EventTracer.Hop hop = hops != null ? hops.get(i) : null;
+                try {
+                    inData[i] = getEngineData(messages.get(i));
+                    parseComposition(inData[i]);
+                    if (isJoinInput(inData[i])) {
+                        // joins are completed by events of different batches,
+                        // so they are executed on their own
+                        Set<EngineData> joined = joinBarrier.offer(inData[i], plan.joinInputs());
+                        if (joined == null) {
+                            waiting[i] = true;
+                        } else {
+                            if (hop != null) {
+                                hop.engineStarted();
+                            }
+                            try {
+                                outData[i] = executeEngine(joined);
+                            } finally {
+                                if (hop != null) {
+                                    hop.engineCompleted();
+                                }
+                            }
+                            sysReport.addExecutionTime(executionTime);
+                            sysReport.addEventTime(inData[i].getCommunicationId(),
+                                                   executionTime);
+                        }
+                    } else {
+                        batched[i] = true;
+                        inputs.add(inData[i]);
+                    }
+                } catch (Exception e) {
+                    Logging.error("UNHANDLED EXCEPTION ON SERVICE EXECUTION: %s", base.getName());
+                    e.printStackTrace();
+                    outData[i] = DataUtil.buildErrorData("unhandled exception", 4, e);
+                }
+            }
+
+            if (!inputs.isEmpty()) {
+                executeInputs(inputs, inData, outData, batched, hops);
+            }
+
+            for (int i = 0; i < size; i++) {
+                if (!waiting[i] && inData[i] != null
+                        && outData[i].getStatusSeverity() == 13) {
+                    Logging.error("SevereError in the engine = %s: %s",
+                        inData[i].getEngineName(), inData[i].getDescription());
+                    System.exit(13);
+                }
+            }
+        } finally {
+            released = !watchdog.finish(this);
+            if (!released) {
+                for (int i = 0; i < size; i++) {
+                    if (!waiting[i] && outData[i] != null) {
+                        updateMetadata(messages.get(i).getMetaData(),
+                                       DataUtil.getMetadata(outData[i]));
+                    }
+                }
+            }
             resetClock();
         }
 
+        if (released) {
+            // an error was already sent for every request when the deadline expired
+            Logging.error("service = %s: dropped results of a batch of %d requests "
+                          + "after its deadline", base.getName(), size);
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!waiting[i]) {
+                EventTracer.Hop hop = hops != null ? hops.get(i) : null;
+                publishResult(messages.get(i), inData[i], outData[i], hop, reports[i]);
+            }
+        }
+    }
+
+
+    private void executeInputs(List<EngineData> inputs,
+                               EngineData[] inData,
+                               EngineData[] outData,
+                               boolean[] batched,
+                               List<EventTracer.Hop> hops) {
+        int size = outData.length;
+        stampBatch(hops, batched, EventTracer.Hop::engineStarted);
+        try {
+            Iterator<EngineData> results = executeEngineBatch(inputs).iterator();
+            for (int i = 0; i < size; i++) {
+                if (batched[i]) {
+                    outData[i] = results.next();
+                }
+            }
+            // the batch execution time is split evenly among the events
+            executionTime /= inputs.size();
+            for (int i = 0; i < size; i++) {
+                if (batched[i]) {
+                    sysReport.addExecutionTime(executionTime);
+                    sysReport.addEventTime(inData[i].getCommunicationId(), executionTime);
+                }
+            }
+        } catch (Exception e) {
+            Logging.error("UNHANDLED EXCEPTION ON SERVICE EXECUTION: %s", base.getName());
+            e.printStackTrace();
+            for (int i = 0; i < size; i++) {
+                if (batched[i]) {
+                    outData[i] = DataUtil.buildErrorData("unhandled exception", 4, e);
+                }
+            }
+        } catch (Throwable e) {
+            Logging.error("UNHANDLED CRITICAL ERROR ON SERVICE EXECUTION: %s", base.getName());
+            e.printStackTrace();
+            for (int i = 0; i < size; i++) {
+                if (batched[i]) {
+                    outData[i] = DataUtil.buildErrorData("unhandled critical error", 4, e);
+                }
+            }
+        } finally {
+            stampBatch(hops, batched, EventTracer.Hop::engineCompleted);
+        }
+    }
+
+
+    private static void stampBatch(List<EventTracer.Hop> hops,
+                                   boolean[] batched,
+                                   Consumer<EventTracer.Hop> stamp) {
+        if (hops == null) {
+            return;
+        }
+        for (int i = 0; i < batched.length; i++) {
+            if (batched[i]) {
+                stamp.accept(hops.get(i));
+            }
+        }
+    }
+
+
+    private void publishResult(xMsgMessage message,
+                               EngineData inData,
+                               EngineData outData,
+                               EventTracer.Hop hop,
+                               int reports) throws ClaraException {
+        if (sender == null) {
+            if (hop != null) {
+                hop.sendStarted();
+            }
+            sendExecuteResult(message, inData, outData, plan, reports);
+            if (hop != null) {
+                hop.sent();
+            }
+            return;
+        }
+        // the engine may change the plan with the next request
+        RoutingPlan routing = plan;
+        try {
+            sender.submit(() -> {
+                if (hop != null) {
+                    hop.sendStarted();
+                }
+                sendExecuteResult(message, inData, outData, routing, reports);
+                if (hop != null) {
+                    hop.sent();
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClaraException("interrupted while queuing the result", e);
+        }
+    }
+
+    private void sendExecuteResult(xMsgMessage message,
+                                   EngineData inData,
+                                   EngineData outData,
+                                   RoutingPlan routing,
+                                   int reports) throws ClaraException {
         String replyTo = getReplyTo(message);
         if (replyTo != null) {
             sendResponse(outData, replyTo);
@@ -184,18 +468,18 @@ class ServiceEngine {
             return;
         }
 
-        reportResult(outData);
+        reportResult(outData, reports);
 
         if (sysConfig.isRingRequest()) {
             String executionState = outData.getExecutionState();
             if (!executionState.isEmpty()) {
-                sendResult(inData, getLinks(inData, outData));
+                sendResult(inData, getLinks(routing, inData, outData));
                 sendMonitorData(executionState, outData);
             } else {
-                sendResult(outData, getLinks(inData, outData));
+                sendResult(outData, getLinks(routing, inData, outData));
             }
         } else {
-            sendResult(outData, getLinks(inData, outData));
+            sendResult(outData, getLinks(routing, inData, outData));
         }
     }
 
@@ -205,19 +489,27 @@ class ServiceEngine {
             return;
         }
 
-        if (!currentComposition.equals(prevComposition)) {
-            compiler.compile(currentComposition);
-            prevComposition = currentComposition;
+        if (plan == null || !currentComposition.equals(plan.composition())) {
+            plan = routingCache.get(currentComposition);
         }
     }
 
-    private Set<String> getLinks(EngineData inData, EngineData outData) {
-        ServiceState ownerSS = new ServiceState(outData.getEngineName(),
-            outData.getExecutionState());
-        ServiceState inputSS = new ServiceState(inData.getEngineName(),
-            inData.getExecutionState());
+    private boolean isJoinInput(EngineData inData) {
+        if (plan == null) {
+            return false;
+        }
+        Set<String> joinInputs = plan.joinInputs();
+        return !joinInputs.isEmpty() && joinInputs.contains(inData.getEngineName());
+    }
 
-        return compiler.getLinks(ownerSS, inputSS);
+    private List<RoutingPlan.Route> getLinks(RoutingPlan routing,
+                                             EngineData inData,
+                                             EngineData outData) {
+        if (routing == null) {
+            return Collections.emptyList();
+        }
+        return routing.routes(outData.getEngineName(), outData.getExecutionState(),
+                           inData.getEngineName(), inData.getExecutionState());
     }
 
     private EngineData executeEngine(EngineData inData)
@@ -228,6 +520,21 @@ class ServiceEngine {
 
         stopClock(startTime);
 
+        return checkResult(outData);
+    }
+
+    private EngineData executeEngine(Set<EngineData> joined)
+            throws ClaraException {
+        long startTime = startClock();
+
+        EngineData outData = engine.executeGroup(joined);
+
+        stopClock(startTime);
+
+        return checkResult(outData);
+    }
+
+    private EngineData checkResult(EngineData outData) throws ClaraException {
         if (outData == null) {
             throw new ClaraException("null engine result");
         }
@@ -243,6 +550,28 @@ class ServiceEngine {
         return outData;
     }
 
+    private List<EngineData> executeEngineBatch(List<EngineData> inputs)
+            throws ClaraException {
+        long startTime = startClock();
+
+        List<EngineData> results = engine.executeBatch(inputs);
+
+        stopClock(startTime);
+
+        if (results == null) {
+            throw new ClaraException("null engine result");
+        }
+        if (results.size() != inputs.size()) {
+            throw new ClaraException(String.format("batch result size %d does not match %d inputs",
+                                                   results.size(), inputs.size()));
+        }
+        List<EngineData> outputs = new ArrayList<>(results.size());
+        for (EngineData result : results) {
+            outputs.add(checkResult(result));
+        }
+        return outputs;
+    }
+
     private void updateMetadata(xMsgMeta.Builder inMeta, xMsgMeta.Builder outMeta) {
         outMeta.setAuthor(base.getName());
         outMeta.setVersion(engine.getVersion());
@@ -259,37 +588,96 @@ class ServiceEngine {
         }
     }
 
-    private void reportResult(EngineData outData) throws ClaraException {
-        if (sysConfig.isDataRequest()) {
+    // the reports go with the request that reached the threshold,
+    // and they are skipped if that request has no result to publish
+    private void reportResult(EngineData outData, int reports) throws ClaraException {
+        if (sysConfig.isDataRequest(reports)) {
             reportData(outData);
-            sysConfig.resetDataRequestCount();
         }
-        if (sysConfig.isDoneRequest()) {
+        if (sysConfig.isDoneRequest(reports)) {
             reportDone(outData);
-            sysConfig.resetDoneRequestCount();
         }
     }
 
     private void sendResponse(EngineData outData, String replyTo) throws ClaraException {
-        base.send(putEngineData(outData, replyTo));
+        long startTime = System.nanoTime();
+        base.send(putEngineData(outData, replyTo, xMsgTopic.wrap(replyTo)));
+        addSendTime(startTime);
     }
 
-    private void sendResult(EngineData outData, Set<String> outLinks) throws ClaraException {
-        for (String ss : outLinks) {
-            ClaraComponent comp = ClaraComponent.dpe(ss);
-            xMsgMessage msg = putEngineData(outData, ss);
-            base.send(comp.getProxyAddress(), msg);
+    private void sendResult(EngineData outData, List<RoutingPlan.Route> routes)
+            throws ClaraException {
+        if (routes.isEmpty()) {
+            return;
         }
+        long startTime = System.nanoTime();
+        // the output is serialized once, for the first remote link,
+        // and the same payload is published to the other remote links
+        xMsgMessage payload = null;
+        int localLinks = 0;
+        for (RoutingPlan.Route route : routes) {
+            if (SharedMemory.containsReceiver(route.name)) {
+                localLinks++;
+                continue;
+            }
+            xMsgMessage msg;
+            if (payload == null) {
+                msg = serialize(route.topic, outData);
+                payload = msg;
+            } else {
+                // each message gets its own metadata, that may be changed
+                // while it is sent
+                msg = new xMsgMessage(route.topic, payload.getMetaData().clone(),
+                                      payload.getData());
+            }
+            sysReport.addBytesSent(msg.getDataSize());
+            sendRemote(route, msg);
+        }
+        // the local links get a shared view of the output
+        // after the remote links are done with it,
+        // the receivers must not modify the shared user-data
+        if (localLinks > 0) {
+            for (RoutingPlan.Route route : routes) {
+                if (SharedMemory.containsReceiver(route.name)) {
+                    EngineData data = localLinks > 1 ? DataUtil.shareData(outData) : outData;
+                    sendShared(route, putSharedData(data, route.name, route.topic));
+                }
+            }
+        }
+        addSendTime(startTime);
     }
 
-    private void reportDone(EngineData data) throws ClaraException {
-        String mt = data.getMimeType();
-        Object ob = data.getData();
-        data.setData(EngineDataType.STRING.mimeType(), ClaraConstants.DONE);
+    private void sendShared(RoutingPlan.Route route, xMsgMessage msg) throws ClaraException {
+        // the receiver queues the request directly, if it is running and
+        // its queue has space, otherwise the message is published through
+        // the local proxy, and the receiver waits for a slot
+        if (SharedMemory.deliver(route.name, msg)) {
+            sysReport.incrementDirectSends();
+        } else {
+            base.send(route.address, msg);
+        }
+    }
+
+    private void sendRemote(RoutingPlan.Route route, xMsgMessage msg) throws ClaraException {
+        // the message is written into the ring of the receiver DPE if it runs
+        // on the same host, otherwise it is published through its proxy
+        if (ipcTransport != null && ipcTransport.send(route, msg)) {
+            sysReport.incrementIpcSends();
+        } else {
+            base.send(route.address, msg);
+        }
+    }
 
-        sendReport(ClaraConstants.DONE, data);
+    private void addSendTime(long startTime) {
+        sysReport.addSendTime(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+    }
 
-        data.setData(mt, ob);
+    private void reportDone(EngineData data) throws ClaraException {
+        // the report uses a view, to not decode nor replace the output data
+        EngineData done = DataUtil.shareData(data);
+        done.setData(EngineDataType.STRING.mimeType(), ClaraConstants.DONE);
+
+        sendReport(ClaraConstants.DONE, done);
     }
 
     private void reportData(EngineData data) throws ClaraException {
@@ -308,7 +696,7 @@ class ServiceEngine {
 
     private void sendReport(String topicPrefix, EngineData data) throws ClaraException {
         xMsgTopic topic = xMsgTopic.wrap(topicPrefix + xMsgConstants.TOPIC_SEP + base.getName());
-        xMsgMessage transit = DataUtil.serialize(topic, data, engine.getOutputDataTypes());
+        xMsgMessage transit = DataUtil.serialize(topic, data, outputTypes);
         base.send(base.getFrontEnd(), transit);
     }
 
@@ -318,7 +706,7 @@ class ServiceEngine {
                 + xMsgConstants.TOPIC_SEP + state
                 + xMsgConstants.TOPIC_SEP + sysReport.getSession()
                 + xMsgConstants.TOPIC_SEP + base.getEngine());
-            xMsgMessage transit = DataUtil.serialize(topic, data, engine.getOutputDataTypes());
+            xMsgMessage transit = DataUtil.serialize(topic, data, outputTypes);
             base.sendUncheck(monitorFe.getProxyAddress(), transit);
         }
     }
@@ -331,36 +719,54 @@ class ServiceEngine {
             sysReport.incrementShrmReads();
             String sender = metadata.getSender();
             int id = metadata.getCommunicationId();
-            return SharedMemory.getEngineData(base.getName(), sender, id);
+            EngineData data = SharedMemory.getEngineData(base.getName(), sender, id);
+            if (data == null) {
+                throw new ClaraException("missing shared data of request id = " + id
+                                         + " from " + sender + " (evicted?)");
+            }
+            return data;
         } else {
             sysReport.addBytesReceived(message.getDataSize());
-            return DataUtil.deserialize(message, engine.getInputDataTypes());
+            return DataUtil.deserializeLazy(message, inputTypes);
         }
     }
 
-    private xMsgMessage putEngineData(EngineData data, String receiver)
+    private xMsgMessage putEngineData(EngineData data, String receiver, xMsgTopic topic)
             throws ClaraException {
-        xMsgTopic topic = xMsgTopic.wrap(receiver);
         if (SharedMemory.containsReceiver(receiver)) {
-            int id = data.getCommunicationId();
-            SharedMemory.putEngineData(receiver, base.getName(), id, data);
-            sysReport.incrementShrmWrites();
-
-            xMsgMeta.Builder metadata = xMsgMeta.newBuilder();
-            metadata.setAuthor(base.getName());
-            metadata.setComposition(data.getComposition());
-            metadata.setCommunicationId(id);
-            metadata.setAction(xMsgMeta.ControlAction.EXECUTE);
-            metadata.setDataType(ClaraConstants.SHARED_MEMORY_KEY);
-
-            return new xMsgMessage(topic, metadata, ClaraConstants.SHARED_MEMORY_KEY.getBytes());
+            return putSharedData(data, receiver, topic);
         } else {
-            xMsgMessage output = DataUtil.serialize(topic, data, engine.getOutputDataTypes());
+            xMsgMessage output = serialize(topic, data);
             sysReport.addBytesSent(output.getDataSize());
             return output;
         }
     }
 
+    private xMsgMessage serialize(xMsgTopic topic, EngineData data) throws ClaraException {
+        if (DataUtil.hasWireData(data)) {
+            sysReport.incrementPassThroughCount();
+        }
+        return DataUtil.serialize(topic, data, outputTypes);
+    }
+
+    private xMsgMessage putSharedData(EngineData data, String receiver, xMsgTopic topic) {
+        int id = data.getCommunicationId();
+        SharedMemory.putEngineData(receiver, senderId, id, data);
+        sysReport.incrementShrmWrites();
+
+        xMsgMeta.Builder metadata = xMsgMeta.newBuilder();
+        metadata.setAuthor(base.getName());
+        // the receiver gets the data by sender, and the message may not
+        // be published by the actor, which would set it
+        metadata.setSender(base.getName());
+        metadata.setComposition(data.getComposition());
+        metadata.setCommunicationId(id);
+        metadata.setAction(xMsgMeta.ControlAction.EXECUTE);
+        metadata.setDataType(ClaraConstants.SHARED_MEMORY_KEY);
+
+        return new xMsgMessage(topic, metadata, ClaraConstants.SHARED_MEMORY_KEY.getBytes());
+    }
+
 
     private String getReplyTo(xMsgMessage message) {
         xMsgMeta.Builder meta = message.getMetaData();
@@ -382,13 +788,4 @@ class ServiceEngine {
     private void stopClock(long watch) {
         executionTime = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - watch);
     }
-
-
-    public boolean tryAcquire() {
-        return semaphore.tryAcquire();
-    }
-
-    public void release() {
-        semaphore.release();
-    }
 }
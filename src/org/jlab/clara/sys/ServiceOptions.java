@@ -0,0 +1,105 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+/**
+ * The deployment options of a service.
+ */
+class ServiceOptions {
+
+    static final ServiceOptions DEFAULT = new ServiceOptions(false, 1, 0, 0, 0, false, 0, 0, 0);
+
+    private final boolean enginePerThread;
+    private final int batchSize;
+    private final long batchTime; // microseconds
+    private final int maxPoolSize; // zero for a fixed pool
+    private final long deadline; // microseconds, zero for no deadline
+    private final boolean releaseOverruns;
+    private final int sendThreads; // zero to send from the engine threads
+    private final long growDelay; // microseconds, zero for the default
+    private final long idleTimeout; // microseconds, zero for the default
+
+    ServiceOptions(boolean enginePerThread,
+                   int batchSize,
+                   long batchTime,
+                   int maxPoolSize,
+                   long deadline,
+                   boolean releaseOverruns,
+                   int sendThreads,
+                   long growDelay,
+                   long idleTimeout) {
+        this.enginePerThread = enginePerThread;
+        this.batchSize = batchSize;
+        this.batchTime = batchTime;
+        this.maxPoolSize = maxPoolSize;
+        this.deadline = deadline;
+        this.releaseOverruns = releaseOverruns;
+        this.sendThreads = sendThreads;
+        this.growDelay = growDelay;
+        this.idleTimeout = idleTimeout;
+    }
+
+    boolean enginePerThread() {
+        return enginePerThread;
+    }
+
+    boolean isBatching() {
+        return batchSize > 1;
+    }
+
+    int batchSize() {
+        return batchSize;
+    }
+
+    long batchTime() {
+        return batchTime;
+    }
+
+    int maxPoolSize() {
+        return maxPoolSize;
+    }
+
+    long deadline() {
+        return deadline;
+    }
+
+    boolean releaseOverruns() {
+        return releaseOverruns;
+    }
+
+    boolean isAsyncSend() {
+        return sendThreads > 0;
+    }
+
+    int sendThreads() {
+        return sendThreads;
+    }
+
+    long growDelay() {
+        return growDelay;
+    }
+
+    long idleTimeout() {
+        return idleTimeout;
+    }
+}
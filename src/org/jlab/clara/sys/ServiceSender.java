@@ -0,0 +1,158 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgUtil;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the results of a service from its own I/O threads.
+ * <p>
+ * The engines hand over their finished requests and return to the pool as
+ * soon as the execution completes, while the results are serialized and sent
+ * in the background. The queue is bounded: when it is full, the engine waits
+ * until there is space, so a slow link slows down the service instead of
+ * filling the memory.
+ */
+class ServiceSender {
+
+    /**
+     * Sends the result of a request.
+     */
+    @FunctionalInterface
+    interface SendTask {
+        void send() throws Exception;
+    }
+
+    private static final long POLL_TIMEOUT = 100; // milliseconds
+
+    private final BlockingQueue<Request> queue;
+    private final ExecutorService ioPool;
+    private final ServiceDispatcher.ErrorHandler errorHandler;
+    private final ServiceReport sysReport;
+
+    private volatile boolean isRunning = true;
+
+
+    ServiceSender(String name,
+                  int threads,
+                  int queueSize,
+                  ServiceDispatcher.ErrorHandler errorHandler,
+                  ServiceReport report) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid number of send threads: " + threads);
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("Invalid queue size: " + queueSize);
+        }
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.errorHandler = errorHandler;
+        this.sysReport = report;
+        this.ioPool = xMsgUtil.newThreadPool(threads, name + "-send");
+        for (int i = 0; i < threads; i++) {
+            ioPool.execute(this::run);
+        }
+    }
+
+    /**
+     * Queues the result of a request to be sent by the I/O threads.
+     * Blocks if the queue is full.
+     *
+     * @param task the send of the result
+     * @throws InterruptedException if interrupted while waiting for space
+     */
+    void submit(SendTask task) throws InterruptedException {
+        if (!isRunning) {
+            throw new IllegalStateException("sender is stopped");
+        }
+        Request request = new Request(task);
+        if (!queue.offer(request)) {
+            sysReport.incrementSendBlockedCount();
+            queue.put(request);
+        }
+        sysReport.setSendQueueDepth(queue.size());
+    }
+
+    /**
+     * Sends the queued results and stops the I/O threads.
+     *
+     * @param timeout the maximum time to wait for the queued results
+     * @param unit the unit of the timeout
+     * @return the number of results that could not be sent
+     */
+    int stop(long timeout, TimeUnit unit) {
+        isRunning = false;
+        ioPool.shutdown();
+        try {
+            if (!ioPool.awaitTermination(timeout, unit)) {
+                ioPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ioPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        int dropped = queue.size();
+        queue.clear();
+        sysReport.setSendQueueDepth(0);
+        return dropped;
+    }
+
+    private void run() {
+        try {
+            while (isRunning || !queue.isEmpty()) {
+                Request request = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (request == null) {
+                    continue;
+                }
+                long waitTime = System.nanoTime() - request.queuedAt;
+                sysReport.addSendQueuedRequest(TimeUnit.NANOSECONDS.toMicros(waitTime));
+                sysReport.setSendQueueDepth(queue.size());
+                try {
+                    request.task.send();
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    errorHandler.handle(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static final class Request {
+
+        private final SendTask task;
+        private final long queuedAt = System.nanoTime();
+
+        Request(SendTask task) {
+            this.task = task;
+        }
+    }
+}
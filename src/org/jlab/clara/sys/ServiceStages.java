@@ -0,0 +1,61 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.DataTypeTable;
+
+/**
+ * The stages of a service shared by all its engines.
+ */
+class ServiceStages {
+
+    final RoutingCache routingCache;
+    final JoinBarrier joinBarrier;
+    final ExecutionWatchdog watchdog;
+
+    // null if the engines send their own results
+    final ServiceSender sender;
+
+    // the data types of the engine, resolved when the service is deployed
+    final DataTypeTable inputTypes;
+    final DataTypeTable outputTypes;
+
+    // null if the DPE has no IPC ring
+    final IpcTransport ipcTransport;
+
+    ServiceStages(RoutingCache routingCache,
+                  JoinBarrier joinBarrier,
+                  ExecutionWatchdog watchdog,
+                  ServiceSender sender,
+                  DataTypeTable inputTypes,
+                  DataTypeTable outputTypes,
+                  IpcTransport ipcTransport) {
+        this.routingCache = routingCache;
+        this.joinBarrier = joinBarrier;
+        this.watchdog = watchdog;
+        this.sender = sender;
+        this.inputTypes = inputTypes;
+        this.outputTypes = outputTypes;
+        this.ipcTransport = ipcTransport;
+    }
+}
@@ -24,54 +24,89 @@ package org.jlab.clara.sys;
 
 import org.jlab.clara.sys.ccc.ServiceState;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  *  Service system configuration.
+ *  <p>
+ *  The report thresholds are set by the control thread, and the requests are
+ *  counted by all the engines of the service. The counters are only updated
+ *  when the report is enabled. The request whose increment reaches a multiple
+ *  of the threshold owns the report, and its result is published as the
+ *  report. Thus there is exactly one report every N requests, even when many
+ *  engines run concurrently. The report is skipped if the owning request has
+ *  no result to publish, e.g. when it fails or waits for a join.
  */
 class ServiceSysConfig {
 
     private final ServiceState state;
 
-    private boolean isDataRequest;
-    private boolean isDoneRequest;
-    private boolean isRingRequest;
+    private final ReportCounter doneReport = new ReportCounter();
+    private final ReportCounter dataReport = new ReportCounter();
+
+    /** The result of the request must be published as a data report. */
+    static final int DATA_REPORT = 1;
 
-    private int doneReportThreshold;
-    private int dataReportThreshold;
+    /** The result of the request must be published as a done report. */
+    static final int DONE_REPORT = 2;
 
-    private int dataRequestCount;
-    private int doneRequestCount;
+    private volatile boolean isRingRequest;
 
     ServiceSysConfig(String name, String initialState) {
         state = new ServiceState(name, initialState);
     }
 
-    public void addRequest() {
-        dataRequestCount++;
-        doneRequestCount++;
+    /**
+     * Counts a new request.
+     *
+     * @return the reports owned by the request, as a combination of
+     *         {@link #DATA_REPORT} and {@link #DONE_REPORT}
+     */
+    public int addRequest() {
+        int reports = 0;
+        if (dataReport.addRequest()) {
+            reports |= DATA_REPORT;
+        }
+        if (doneReport.addRequest()) {
+            reports |= DONE_REPORT;
+        }
+        return reports;
     }
 
     public void resetDoneRequestCount() {
-        doneRequestCount = 0;
+        doneReport.reset();
     }
 
     public void resetDataRequestCount() {
-        dataRequestCount = 0;
+        dataReport.reset();
     }
 
-    public boolean isDataRequest() {
-        return isDataRequest && dataRequestCount >= dataReportThreshold;
+    /**
+     * Checks if the request owns the data report.
+     *
+     * @param reports the reports owned by the request
+     * @return true if the data report must be published
+     */
+    public boolean isDataRequest(int reports) {
+        return (reports & DATA_REPORT) != 0 && dataReport.enabled;
     }
 
     public void setDataRequest(boolean isDataRequest) {
-        this.isDataRequest = isDataRequest;
+        dataReport.enabled = isDataRequest;
     }
 
-    public boolean isDoneRequest() {
-        return isDoneRequest && doneRequestCount >= doneReportThreshold;
+    /**
+     * Checks if the request owns the done report.
+     *
+     * @param reports the reports owned by the request
+     * @return true if the done report must be published
+     */
+    public boolean isDoneRequest(int reports) {
+        return (reports & DONE_REPORT) != 0 && doneReport.enabled;
     }
 
     public void setDoneRequest(boolean isDoneRequest) {
-        this.isDoneRequest = isDoneRequest;
+        doneReport.enabled = isDoneRequest;
     }
 
     public boolean isRingRequest() {
@@ -83,30 +118,52 @@ class ServiceSysConfig {
     }
 
     public int getDoneReportThreshold() {
-        return doneReportThreshold;
+        return doneReport.threshold;
     }
 
     public void setDoneReportThreshold(int doneReportThreshold) {
-        this.doneReportThreshold = doneReportThreshold;
+        doneReport.threshold = doneReportThreshold;
     }
 
     public int getDataReportThreshold() {
-        return dataReportThreshold;
+        return dataReport.threshold;
     }
 
     public void setDataReportThreshold(int dataReportThreshold) {
-        this.dataReportThreshold = dataReportThreshold;
+        dataReport.threshold = dataReportThreshold;
     }
 
-    public int getDataRequestCount() {
-        return dataRequestCount;
+    public long getDataRequestCount() {
+        return dataReport.count.get();
     }
 
-    public int getDoneRequestCount() {
-        return doneRequestCount;
+    public long getDoneRequestCount() {
+        return doneReport.count.get();
     }
 
     public void updateState(String newState) {
         state.setState(newState);
     }
+
+
+    private static final class ReportCounter {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private volatile boolean enabled;
+        private volatile int threshold;
+
+        // true only for the increment that reaches a multiple of the threshold
+        boolean addRequest() {
+            if (!enabled) {
+                return false;
+            }
+            int limit = threshold;
+            return limit > 0 && count.incrementAndGet() % limit == 0;
+        }
+
+        void reset() {
+            count.set(0);
+        }
+    }
 }
@@ -23,48 +23,121 @@
 package org.jlab.clara.sys;
 
 import org.jlab.clara.engine.EngineData;
+import org.jlab.coda.xmsg.core.xMsgMessage;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Passes data between services of the same DPE.
+ * <p>
+ * Every receiver has a store of data indexed by the ID of the sender service
+ * and the communication ID of the data. Sender names are interned to integer
+ * IDs, so storing and getting the data of an event does not build strings.
+ * <p>
+ * The data of a lost notification message, or of a request that failed
+ * before getting its input, would stay in the store forever.
+ * Data older than the maximum age is evicted, and counted as leaked.
+ * <p>
+ * Running receivers also register an {@link Inbox}, to queue requests
+ * without publishing them through the proxy. The inbox never blocks the
+ * thread of the sender, which may be needed by the receiver to run its
+ * queued requests (i.e. a worker of the shared scheduler).
+ */
 final class SharedMemory {
 
+    /**
+     * Receives the requests delivered in-process to a service.
+     */
+    @FunctionalInterface
+    interface Inbox {
+
+        /**
+         * Queues the request, without blocking.
+         *
+         * @param msg the request
+         * @return false if the request cannot be queued now,
+         *         and it must be published through the proxy
+         */
+        boolean offer(xMsgMessage msg);
+    }
+
+    static final long DEFAULT_MAX_AGE = TimeUnit.MINUTES.toNanos(10);
+
+    /*
+      key = <sender-service>
+      value = the interned ID of the sender
+    */
+    private static final Map<String, Integer>
+            senderIds = new ConcurrentHashMap<>(); // nocheck: ConstantName
+    private static final AtomicInteger
+            nextSenderId = new AtomicInteger(); // nocheck: ConstantName
+
     /*
       key = <receiver-service>
-      value = map where:
-          key = <sender-service>:<communication-id>,
-          value = EngineData object
+      value = store of the data sent to the receiver
     */
-    private static final Map<String, Map<String, EngineData>>
+    private static final Map<String, DataStore>
             sharedData = new ConcurrentHashMap<>(); // nocheck: ConstantName
 
+    /*
+      key = <receiver-service>
+      value = the inbox of the receiver, to deliver messages in-process
+    */
+    private static final Map<String, Inbox>
+            inboxes = new ConcurrentHashMap<>(); // nocheck: ConstantName
+
+    private static final LongAdder evicted = new LongAdder(); // nocheck: ConstantName
+
+    private static volatile long maxAge = DEFAULT_MAX_AGE;
+
     private SharedMemory() {
     }
 
+    /**
+     * Gets the interned ID of the given sender, creating it if needed.
+     */
+    static int senderId(String sender) {
+        Integer id = senderIds.get(sender);
+        if (id == null) {
+            id = senderIds.computeIfAbsent(sender, s -> nextSenderId.getAndIncrement());
+        }
+        return id;
+    }
+
     static void putEngineData(String receiver, String sender, int id, EngineData data) {
-        Map<String, EngineData> inputs = sharedData.get(receiver);
-        if (inputs != null) {
-            String key = sender + ":" + id;
-            inputs.put(key, data);
-        } else {
+        putEngineData(receiver, senderId(sender), id, data);
+    }
+
+    static void putEngineData(String receiver, int senderId, int id, EngineData data) {
+        DataStore inputs = sharedData.get(receiver);
+        if (inputs == null) {
             throw new IllegalStateException("Receiver not registered: " + receiver);
         }
+        int expired = inputs.put(key(senderId, id), data, System.nanoTime(), maxAge);
+        if (expired > 0) {
+            logEvicted(receiver, expired);
+        }
     }
 
-
     static EngineData getEngineData(String receiver, String sender, int id) {
-        Map<String, EngineData> inputs = sharedData.get(receiver);
-        EngineData data = null;
-        if (inputs != null) {
-            String key = sender + ":" + id;
-            data = inputs.get(key);
-            inputs.remove(key);
+        DataStore inputs = sharedData.get(receiver);
+        Integer senderId = senderIds.get(sender);
+        if (inputs == null || senderId == null) {
+            return null;
         }
-        return data;
+        return inputs.remove(key(senderId, id));
+    }
+
+    private static long key(int senderId, int id) {
+        return ((long) senderId << Integer.SIZE) | (id & 0xFFFFFFFFL);
     }
 
     static void addReceiver(String receiver) {
-        sharedData.put(receiver, new ConcurrentHashMap<>());
+        sharedData.put(receiver, new DataStore());
     }
 
     static void removeReceiver(String receiver) {
@@ -74,4 +147,207 @@ final class SharedMemory {
     static boolean containsReceiver(String receiver) {
         return sharedData.containsKey(receiver);
     }
+
+    static void addInbox(String receiver, Inbox inbox) {
+        inboxes.put(receiver, inbox);
+    }
+
+    static void removeInbox(String receiver) {
+        inboxes.remove(receiver);
+    }
+
+    /**
+     * Delivers the message to the inbox of the receiver, without publishing
+     * it through the proxy. Never blocks.
+     *
+     * @return false if the receiver is not running or its queue is full
+     */
+    static boolean deliver(String receiver, xMsgMessage msg) {
+        Inbox inbox = inboxes.get(receiver);
+        return inbox != null && inbox.offer(msg);
+    }
+
+    /**
+     * Evicts the data older than the maximum age from all the receivers.
+     * The stores of the receivers are also checked when new data is stored.
+     *
+     * @return the number of evicted data
+     */
+    static int evictExpired() {
+        long now = System.nanoTime();
+        int total = 0;
+        for (Map.Entry<String, DataStore> e : sharedData.entrySet()) {
+            int expired = e.getValue().evict(now, maxAge);
+            if (expired > 0) {
+                logEvicted(e.getKey(), expired);
+                total += expired;
+            }
+        }
+        return total;
+    }
+
+    private static void logEvicted(String receiver, int expired) {
+        evicted.add(expired);
+        Logging.error("shared memory: evicted %d unclaimed events sent to %s",
+                      expired, receiver);
+    }
+
+    /**
+     * Gets the number of data currently stored for all the receivers.
+     */
+    static int occupancy() {
+        int size = 0;
+        for (DataStore store : sharedData.values()) {
+            size += store.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the total number of evicted data.
+     */
+    static long evictedCount() {
+        return evicted.sum();
+    }
+
+    static void setMaxAge(long age, TimeUnit unit) {
+        if (age <= 0) {
+            throw new IllegalArgumentException("Invalid max age: " + age);
+        }
+        maxAge = unit.toNanos(age);
+    }
+
+
+    /**
+     * An open-addressing hash table of the data sent to a receiver,
+     * with primitive keys and the time when every data was stored.
+     */
+    static final class DataStore {
+
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] keys;
+        private long[] times;
+        private EngineData[] values;
+        private int size;
+        private long lastEviction = System.nanoTime();
+
+        DataStore() {
+            allocate(MIN_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            times = new long[capacity];
+            values = new EngineData[capacity];
+            size = 0;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+        }
+
+        /**
+         * Stores the data, evicting expired data if the last eviction is old.
+         *
+         * @return the number of evicted data
+         */
+        synchronized int put(long key, EngineData data, long now, long maxAge) {
+            int expired = 0;
+            if (now - lastEviction > maxAge / 4) {
+                expired = evictLocked(now, maxAge);
+            }
+            if (2 * (size + 1) > keys.length) {
+                rehash(keys.length * 2, now, Long.MAX_VALUE);
+            }
+            insert(key, data, now);
+            return expired;
+        }
+
+        private void insert(long key, EngineData data, long time) {
+            int i = slot(key);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = data;
+                    times[i] = time;
+                    return;
+                }
+                i = (i + 1) & (keys.length - 1);
+            }
+            keys[i] = key;
+            times[i] = time;
+            values[i] = data;
+            size++;
+        }
+
+        synchronized EngineData remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    EngineData data = values[i];
+                    deleteSlot(i);
+                    return data;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        // backward-shift deletion, to keep the probe sequences without holes
+        private void deleteSlot(int hole) {
+            int mask = keys.length - 1;
+            int i = hole;
+            while (true) {
+                i = (i + 1) & mask;
+                if (values[i] == null) {
+                    break;
+                }
+                int home = slot(keys[i]);
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    times[hole] = times[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            values[hole] = null;
+            size--;
+        }
+
+        synchronized int evict(long now, long maxAge) {
+            return evictLocked(now, maxAge);
+        }
+
+        private int evictLocked(long now, long maxAge) {
+            lastEviction = now;
+            int expired = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null && now - times[i] > maxAge) {
+                    expired++;
+                }
+            }
+            if (expired > 0) {
+                rehash(keys.length, now, maxAge);
+            }
+            return expired;
+        }
+
+        private void rehash(int capacity, long now, long maxAge) {
+            long[] oldKeys = keys;
+            long[] oldTimes = times;
+            EngineData[] oldValues = values;
+            allocate(capacity);
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null && now - oldTimes[i] <= maxAge) {
+                    insert(oldKeys[i], oldValues[i], oldTimes[i]);
+                }
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
 }
@@ -369,6 +369,41 @@ public class CompositionCompiler {
         return outputs;
     }
 
+    /**
+     * Checks if the routing of this service depends on conditional statements.
+     * If not, the output links are always the {@link #getUnconditionalLinks
+     * unconditional links}.
+     *
+     * @return true if any instruction is an if, elseif or else statement
+     */
+    public boolean isConditional() {
+        for (Instruction inst : instructions) {
+            if (inst.getUnCondStatements() == null || inst.getUnCondStatements().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the names of the services whose outputs must be joined before
+     * executing this service, as programmed by {@code S1,S2+&S3;}.
+     * Only unconditional routing statements can define a join.
+     *
+     * @return the input services of the join, or an empty set
+     */
+    public Set<String> getJoinInputs() {
+        Set<String> inputs = new LinkedHashSet<>();
+        for (Instruction inst : instructions) {
+            if (inst.getUnCondStatements() != null) {
+                for (Statement stmt : inst.getUnCondStatements()) {
+                    inputs.addAll(stmt.getLogAndInputs().keySet());
+                }
+            }
+        }
+        return inputs;
+    }
+
     public Set<String> getLinks(ServiceState ownerSS, ServiceState inputSS) {
 
         Set<String> outputs = new HashSet<>();
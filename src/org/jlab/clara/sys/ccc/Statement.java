@@ -26,7 +26,7 @@ import org.jlab.clara.base.error.ClaraException;
 import org.jlab.clara.engine.EngineData;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -60,7 +60,7 @@ class Statement {
     // The map that has keys of input service names, data from which are required
     // logically to be ANDed. I.e. data from all services in the AND must be present
     // in order for the receiving service to execute its service engine.
-    private final Map<String, EngineData> logAndInputs = new HashMap<>();
+    private final Map<String, EngineData> logAndInputs = new LinkedHashMap<>();
 
     // Names of all services that are linked to the service of interest, i.e. names
     // of all services that send data to this service
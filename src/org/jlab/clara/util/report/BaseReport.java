@@ -25,7 +25,7 @@ package org.jlab.clara.util.report;
 import org.jlab.clara.base.ClaraLang;
 import org.jlab.clara.base.ClaraUtil;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author gurjyan
@@ -39,7 +39,7 @@ public class BaseReport {
     protected final String description;
     protected final String startTime;
 
-    private final AtomicInteger requestCount = new AtomicInteger();
+    private final LongAdder requestCount = new LongAdder();
 
     public BaseReport(String name, String author, String description) {
         this.name = name;
@@ -69,11 +69,25 @@ public class BaseReport {
         return startTime;
     }
 
+    /**
+     * Gets the number of requests, capped to the largest int value.
+     *
+     * @return the number of requests
+     * @see #getRequestCountLong
+     */
     public int getRequestCount() {
-        return requestCount.get();
+        return saturatedInt(getRequestCountLong());
+    }
+
+    public long getRequestCountLong() {
+        return requestCount.sum();
     }
 
     public void incrementRequestCount() {
-        requestCount.getAndIncrement();
+        requestCount.increment();
+    }
+
+    static int saturatedInt(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
     }
 }
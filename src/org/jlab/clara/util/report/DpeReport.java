@@ -46,6 +46,10 @@ public class DpeReport extends BaseReport {
 
     private final String aliveData;
 
+    private volatile int shmOccupancy;
+    private volatile long shmEvictions;
+    private volatile long createdConnections;
+
     private final Map<String, ContainerReport> containers = new ConcurrentHashMap<>();
 
     public DpeReport(ClaraBase base, String session) {
@@ -101,6 +105,27 @@ public class DpeReport extends BaseReport {
         return SystemStats.getSystemLoad();
     }
 
+    public int getShrmOccupancy() {
+        return shmOccupancy;
+    }
+
+    public long getShrmEvictions() {
+        return shmEvictions;
+    }
+
+    public void setSharedMemory(int occupancy, long evictions) {
+        this.shmOccupancy = occupancy;
+        this.shmEvictions = evictions;
+    }
+
+    public long getCreatedConnections() {
+        return createdConnections;
+    }
+
+    public void setCreatedConnections(long createdConnections) {
+        this.createdConnections = createdConnections;
+    }
+
     public Collection<ContainerReport> getContainers() {
         return containers.values();
     }
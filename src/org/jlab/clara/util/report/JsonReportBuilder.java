@@ -27,14 +27,22 @@ import org.jlab.clara.base.core.ClaraConstants;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 /**
  * @author gurjyan
  * @version 4.x
  */
 public class JsonReportBuilder implements ExternalReport {
 
+    // the histograms of the previous report, to report the latencies of the
+    // interval since then without resetting the cumulative histograms,
+    // so every builder gets its own intervals
+    private final Map<LatencyHistogram, LatencyHistogram> lastReported = new WeakHashMap<>();
+
     @Override
-    public String generateReport(DpeReport dpeData) {
+    public synchronized String generateReport(DpeReport dpeData) {
         String snapshotTime = ClaraUtil.getCurrentTime();
 
         JSONObject dpeRuntime = new JSONObject();
@@ -43,6 +51,9 @@ public class JsonReportBuilder implements ExternalReport {
         dpeRuntime.put("cpu_usage", dpeData.getCpuUsage());
         dpeRuntime.put("memory_usage", dpeData.getMemoryUsage());
         dpeRuntime.put("load", dpeData.getLoad());
+        dpeRuntime.put("shm_occupancy", dpeData.getShrmOccupancy());
+        dpeRuntime.put("shm_evicted", dpeData.getShrmEvictions());
+        dpeRuntime.put("conn_created", dpeData.getCreatedConnections());
 
         JSONArray containersRuntimeArray = new JSONArray();
         for (ContainerReport cr : dpeData.getContainers()) {
@@ -56,18 +67,70 @@ public class JsonReportBuilder implements ExternalReport {
             for (ServiceReport sr : cr.getServices()) {
                 JSONObject serviceRuntime = new JSONObject();
 
-                long serviceRequests = sr.getRequestCount();
+                long serviceRequests = sr.getRequestCountLong();
                 containerRequests += serviceRequests;
 
                 serviceRuntime.put("name", sr.getName());
                 serviceRuntime.put("snapshot_time", snapshotTime);
                 serviceRuntime.put("n_requests", serviceRequests);
-                serviceRuntime.put("n_failures", sr.getFailureCount());
-                serviceRuntime.put("shm_reads", sr.getShrmReads());
-                serviceRuntime.put("shm_writes", sr.getShrmWrites());
+                serviceRuntime.put("n_failures", sr.getFailureCountLong());
+                serviceRuntime.put("shm_reads", sr.getShrmReadsLong());
+                serviceRuntime.put("shm_writes", sr.getShrmWritesLong());
+                serviceRuntime.put("n_direct_sent", sr.getDirectSends());
+                serviceRuntime.put("n_ipc_sent", sr.getIpcSends());
+                serviceRuntime.put("conn_hits", sr.getConnectionHits());
+                serviceRuntime.put("conn_misses", sr.getConnectionMisses());
                 serviceRuntime.put("bytes_recv", sr.getBytesReceived());
                 serviceRuntime.put("bytes_sent", sr.getBytesSent());
+                serviceRuntime.put("n_passthrough", sr.getPassThroughCount());
                 serviceRuntime.put("exec_time", sr.getExecutionTime());
+                serviceRuntime.put("n_engines", sr.getEngineCount());
+                serviceRuntime.put("queue_depth", sr.getQueueDepth());
+                serviceRuntime.put("n_queued", sr.getQueuedCount());
+                serviceRuntime.put("queue_time", sr.getQueueTime());
+                serviceRuntime.put("n_rejected", sr.getRejectedCount());
+                serviceRuntime.put("send_queue_depth", sr.getSendQueueDepth());
+                serviceRuntime.put("n_send_queued", sr.getSendQueuedCount());
+                serviceRuntime.put("send_queue_time", sr.getSendQueueTime());
+                serviceRuntime.put("n_send_blocked", sr.getSendBlockedCount());
+                serviceRuntime.put("n_batches", sr.getBatchCount());
+                serviceRuntime.put("n_batched", sr.getBatchedCount());
+                serviceRuntime.put("batch_time", sr.getBatchTime());
+                serviceRuntime.put("n_join_evicted", sr.getJoinEvictions());
+                serviceRuntime.put("n_control", sr.getControlCount());
+                serviceRuntime.put("control_time", sr.getControlTime());
+                serviceRuntime.put("control_max_time", sr.getControlMaxTime());
+                serviceRuntime.put("n_overruns", sr.getOverrunCount());
+                serviceRuntime.put("exec_hist", histogram(sr.getExecutionHistogram()));
+                serviceRuntime.put("queue_hist", histogram(sr.getQueueHistogram()));
+                serviceRuntime.put("send_hist", histogram(sr.getSendHistogram()));
+                serviceRuntime.put("exec_hist_interval", interval(sr.getExecutionHistogram()));
+                serviceRuntime.put("queue_hist_interval", interval(sr.getQueueHistogram()));
+                serviceRuntime.put("send_hist_interval", interval(sr.getSendHistogram()));
+
+                JSONArray slowestEventsArray = new JSONArray();
+                for (SlowestEvents.Event event : sr.getSlowestEvents()) {
+                    JSONObject slowestEvent = new JSONObject();
+                    slowestEvent.put("id", event.id());
+                    slowestEvent.put("exec_time", event.time());
+                    slowestEventsArray.put(slowestEvent);
+                }
+                serviceRuntime.put("slowest_events", slowestEventsArray);
+
+                JSONArray linksArray = new JSONArray();
+                for (LinkLatency link : sr.getLinkLatencies()) {
+                    JSONObject linkLatency = new JSONObject();
+                    linkLatency.put("source", link.getSource());
+                    linkLatency.put("n_events", link.getTotalTime().count());
+                    linkLatency.put("queue_time", histogram(link.getQueueTime()));
+                    linkLatency.put("engine_time", histogram(link.getEngineTime()));
+                    linkLatency.put("send_time", histogram(link.getSendTime()));
+                    linkLatency.put("total_time", histogram(link.getTotalTime()));
+                    linksArray.put(linkLatency);
+                }
+                if (linksArray.length() > 0) {
+                    serviceRuntime.put("links", linksArray);
+                }
 
                 servicesRuntimeArray.put(serviceRuntime);
             }
@@ -125,4 +188,35 @@ public class JsonReportBuilder implements ExternalReport {
 
         return dpeJsonData.toString();
     }
+
+    /**
+     * Reports the latencies recorded since the previous report of this builder.
+     */
+    private JSONObject interval(LatencyHistogram histogram) {
+        LatencyHistogram current = new LatencyHistogram(histogram.precision(),
+                                                        histogram.counts());
+        LatencyHistogram previous = lastReported.put(histogram, current);
+        return histogram(previous != null ? current.minus(previous) : current);
+    }
+
+    /**
+     * Only the non-empty buckets are reported, as pairs of the bucket index
+     * and its count.
+     */
+    private static JSONObject histogram(LatencyHistogram histogram) {
+        JSONArray buckets = new JSONArray();
+        JSONArray counts = new JSONArray();
+        long[] values = histogram.counts();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] > 0) {
+                buckets.put(i);
+                counts.put(values[i]);
+            }
+        }
+        JSONObject data = new JSONObject();
+        data.put("precision", histogram.precision());
+        data.put("buckets", buckets);
+        data.put("counts", counts);
+        return data;
+    }
 }
@@ -0,0 +1,225 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.util.report;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, with buckets of increasing powers of two.
+ * <p>
+ * Every power of two can be split into {@code 2^precision} linear sub-buckets,
+ * like an HDR histogram, so the relative error of a bucket is at most
+ * {@code 2^-precision}. With a precision of zero, as created by the
+ * default constructor, the first bucket counts the latencies of zero microseconds, and bucket
+ * {@code i} counts the latencies between {@code 2^(i-1)} and {@code 2^i - 1}
+ * microseconds.
+ * <p>
+ * The memory is fixed by the precision. Recording a value is lock-free,
+ * and histograms with the same precision can be merged or subtracted.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The precision of the service latency histograms,
+     * with a relative error of at most 12.5%.
+     */
+    public static final int DEFAULT_PRECISION = 3;
+
+    private static final int MAX_PRECISION = 6;
+
+    private final int precision;
+    private final AtomicLongArray counts;
+
+    /**
+     * Creates an empty histogram with power of two buckets.
+     */
+    public LatencyHistogram() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty histogram with the given precision.
+     *
+     * @param precision the number of bits of the linear sub-buckets,
+     *                  between 0 and 6
+     */
+    public LatencyHistogram(int precision) {
+        if (precision < 0 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Invalid histogram precision: " + precision);
+        }
+        this.precision = precision;
+        this.counts = new AtomicLongArray(size(precision));
+    }
+
+    /**
+     * Creates a histogram with the given bucket counts,
+     * as returned by {@link #counts()}.
+     *
+     * @param precision the number of bits of the linear sub-buckets
+     * @param counts the counts of the buckets
+     */
+    public LatencyHistogram(int precision, long[] counts) {
+        this(precision);
+        if (counts.length > size(precision)) {
+            throw new IllegalArgumentException("Invalid number of buckets: " + counts.length);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            this.counts.set(i, counts[i]);
+        }
+    }
+
+    /**
+     * Gets the number of bits of the linear sub-buckets.
+     *
+     * @return the precision of the histogram
+     */
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param micros the latency, in microseconds
+     */
+    public void record(long micros) {
+        counts.getAndIncrement(bucket(micros, precision));
+    }
+
+    /**
+     * Adds the counts of the given histogram to this histogram.
+     *
+     * @param other a histogram with the same precision
+     */
+    public void merge(LatencyHistogram other) {
+        checkPrecision(other);
+        for (int i = 0; i < counts.length(); i++) {
+            long value = other.counts.get(i);
+            if (value != 0) {
+                counts.getAndAdd(i, value);
+            }
+        }
+    }
+
+    /**
+     * Gets the latencies recorded since the given previous snapshot of this
+     * histogram. When the histograms are reported cumulatively, this gives
+     * the histogram of the interval between two reports.
+     *
+     * @param previous an older snapshot with the same precision
+     * @return a new histogram with the difference of the counts
+     */
+    public LatencyHistogram minus(LatencyHistogram previous) {
+        checkPrecision(previous);
+        LatencyHistogram delta = new LatencyHistogram(precision);
+        for (int i = 0; i < counts.length(); i++) {
+            delta.counts.set(i, Math.max(0, counts.get(i) - previous.counts.get(i)));
+        }
+        return delta;
+    }
+
+    private void checkPrecision(LatencyHistogram other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Different histogram precision: "
+                    + other.precision + " != " + precision);
+        }
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return the sum of all buckets
+     */
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the counts of all buckets, up to the last non-empty bucket.
+     *
+     * @return a copy of the bucket counts
+     */
+    public long[] counts() {
+        long[] values = new long[counts.length()];
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = counts.get(i);
+            if (values[i] > 0) {
+                size = i + 1;
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Gets the upper bound of the bucket that contains the given percentile.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimated latency for the percentile, in microseconds
+     */
+    public long percentile(double percentile) {
+        long[] values = counts();
+        long total = Arrays.stream(values).sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * total);
+        long accumulated = 0;
+        for (int i = 0; i < values.length; i++) {
+            accumulated += values[i];
+            if (accumulated >= rank) {
+                return upperBound(i, precision);
+            }
+        }
+        return upperBound(values.length - 1, precision);
+    }
+
+    static int size(int precision) {
+        return (Long.SIZE - precision) << precision;
+    }
+
+    static int bucket(long micros, int precision) {
+        long subBuckets = 1L << precision;
+        if (micros < subBuckets) {
+            return micros <= 0 ? 0 : (int) micros;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - precision;
+        return ((shift + 1) << precision) + (int) ((micros >>> shift) & (subBuckets - 1));
+    }
+
+    static long upperBound(int bucket, int precision) {
+        int subBuckets = 1 << precision;
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int shift = (bucket >> precision) - 1;
+        long lower = (long) (subBuckets + (bucket & (subBuckets - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
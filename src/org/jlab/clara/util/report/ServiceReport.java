@@ -25,8 +25,13 @@ package org.jlab.clara.util.report;
 import org.jlab.clara.base.core.ClaraComponent;
 import org.jlab.clara.engine.Engine;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author gurjyan
@@ -34,18 +39,59 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class ServiceReport extends BaseReport {
 
+    private static final int SLOWEST_EVENTS = 10;
+
     private final String engineName;
     private final String className;
     private final String version;
     private final String session;
     private final int poolSize;
 
-    private final AtomicInteger failureCount = new AtomicInteger();
-    private final AtomicInteger shrmReads = new AtomicInteger();
-    private final AtomicInteger shrmWrites = new AtomicInteger();
-    private final AtomicLong bytesReceived = new AtomicLong();
-    private final AtomicLong bytesSent = new AtomicLong();
-    private final AtomicLong executionTime = new AtomicLong();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder shrmReads = new LongAdder();
+    private final LongAdder shrmWrites = new LongAdder();
+    private final LongAdder directSends = new LongAdder();
+    private final LongAdder ipcSends = new LongAdder();
+    private final LongAdder connectionHits = new LongAdder();
+    private final LongAdder connectionMisses = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder passThroughCount = new LongAdder();
+    private final LongAdder executionTime = new LongAdder();
+
+    private final LatencyHistogram executionHistogram = newHistogram();
+    private final LatencyHistogram queueHistogram = newHistogram();
+    private final LatencyHistogram sendHistogram = newHistogram();
+
+    private final AtomicInteger engineCount = new AtomicInteger();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder queueTime = new LongAdder();
+
+    private final AtomicInteger sendQueueDepth = new AtomicInteger();
+    private final LongAdder sendQueuedCount = new LongAdder();
+    private final LongAdder sendQueueTime = new LongAdder();
+    private final LongAdder sendBlockedCount = new LongAdder();
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder batchedCount = new LongAdder();
+    private final LongAdder batchTime = new LongAdder();
+
+    private final LongAdder joinEvictions = new LongAdder();
+
+    private final LongAdder overrunCount = new LongAdder();
+    private final SlowestEvents slowestEvents = new SlowestEvents(SLOWEST_EVENTS);
+
+    private final ConcurrentMap<String, LinkLatency> linkLatencies = new ConcurrentHashMap<>();
+
+    private final LongAdder controlCount = new LongAdder();
+    private final LongAdder controlTime = new LongAdder();
+    private final AtomicLong controlMaxTime = new AtomicLong();
+
+    private static LatencyHistogram newHistogram() {
+        return new LatencyHistogram(LatencyHistogram.DEFAULT_PRECISION);
+    }
 
     public ServiceReport(ClaraComponent comp, Engine engine, String session) {
         super(comp.getCanonicalName(), engine.getAuthor(), engine.getDescription());
@@ -65,51 +111,255 @@ public class ServiceReport extends BaseReport {
     }
 
     public int getFailureCount() {
-        return failureCount.get();
+        return saturatedInt(getFailureCountLong());
+    }
+
+    public long getFailureCountLong() {
+        return failureCount.sum();
     }
 
     public void incrementFailureCount() {
-        failureCount.getAndIncrement();
+        failureCount.increment();
     }
 
     public int getShrmReads() {
-        return shrmReads.get();
+        return saturatedInt(getShrmReadsLong());
+    }
+
+    public long getShrmReadsLong() {
+        return shrmReads.sum();
     }
 
     public void incrementShrmReads() {
-        shrmReads.getAndIncrement();
+        shrmReads.increment();
     }
 
     public int getShrmWrites() {
-        return shrmWrites.get();
+        return saturatedInt(getShrmWritesLong());
+    }
+
+    public long getShrmWritesLong() {
+        return shrmWrites.sum();
     }
 
     public void incrementShrmWrites() {
-        shrmWrites.getAndIncrement();
+        shrmWrites.increment();
+    }
+
+    public long getDirectSends() {
+        return directSends.sum();
+    }
+
+    public void incrementDirectSends() {
+        directSends.increment();
+    }
+
+    public long getIpcSends() {
+        return ipcSends.sum();
+    }
+
+    public void incrementIpcSends() {
+        ipcSends.increment();
+    }
+
+    public long getConnectionHits() {
+        return connectionHits.sum();
+    }
+
+    public void incrementConnectionHits() {
+        connectionHits.increment();
+    }
+
+    public long getConnectionMisses() {
+        return connectionMisses.sum();
+    }
+
+    public void incrementConnectionMisses() {
+        connectionMisses.increment();
     }
 
     public long getBytesReceived() {
-        return bytesReceived.get();
+        return bytesReceived.sum();
     }
 
     public void addBytesReceived(long bytes) {
-        bytesReceived.getAndAdd(bytes);
+        bytesReceived.add(bytes);
     }
 
     public long getBytesSent() {
-        return bytesSent.get();
+        return bytesSent.sum();
     }
 
     public void addBytesSent(long bytes) {
-        bytesSent.getAndAdd(bytes);
+        bytesSent.add(bytes);
+    }
+
+    public long getPassThroughCount() {
+        return passThroughCount.sum();
+    }
+
+    public void incrementPassThroughCount() {
+        passThroughCount.increment();
     }
 
     public long getExecutionTime() {
-        return executionTime.get();
+        return executionTime.sum();
     }
 
     public void addExecutionTime(long deltaTime) {
-        executionTime.getAndAdd(deltaTime);
+        executionTime.add(deltaTime);
+        executionHistogram.record(deltaTime);
+    }
+
+    public LatencyHistogram getExecutionHistogram() {
+        return executionHistogram;
+    }
+
+    public int getEngineCount() {
+        return engineCount.get();
+    }
+
+    public void setEngineCount(int count) {
+        engineCount.set(count);
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public void setQueueDepth(int depth) {
+        queueDepth.set(depth);
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.sum();
+    }
+
+    public long getQueueTime() {
+        return queueTime.sum();
+    }
+
+    public void addQueuedRequest(long waitTime) {
+        queuedCount.increment();
+        queueTime.add(waitTime);
+        queueHistogram.record(waitTime);
+    }
+
+    public LatencyHistogram getQueueHistogram() {
+        return queueHistogram;
+    }
+
+    public LatencyHistogram getSendHistogram() {
+        return sendHistogram;
+    }
+
+    public void addSendTime(long sendTime) {
+        sendHistogram.record(sendTime);
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public void incrementRejectedCount() {
+        rejectedCount.increment();
+    }
+
+    public int getSendQueueDepth() {
+        return sendQueueDepth.get();
+    }
+
+    public void setSendQueueDepth(int depth) {
+        sendQueueDepth.set(depth);
+    }
+
+    public long getSendQueuedCount() {
+        return sendQueuedCount.sum();
+    }
+
+    public long getSendQueueTime() {
+        return sendQueueTime.sum();
+    }
+
+    public void addSendQueuedRequest(long waitTime) {
+        sendQueuedCount.increment();
+        sendQueueTime.add(waitTime);
+    }
+
+    public long getSendBlockedCount() {
+        return sendBlockedCount.sum();
+    }
+
+    public void incrementSendBlockedCount() {
+        sendBlockedCount.increment();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getBatchedCount() {
+        return batchedCount.sum();
+    }
+
+    public long getBatchTime() {
+        return batchTime.sum();
+    }
+
+    public void addBatch(int size, long fillTime) {
+        batchCount.increment();
+        batchedCount.add(size);
+        batchTime.add(fillTime);
+    }
+
+    public long getJoinEvictions() {
+        return joinEvictions.sum();
+    }
+
+    public void incrementJoinEvictions() {
+        joinEvictions.increment();
+    }
+
+    public long getOverrunCount() {
+        return overrunCount.sum();
+    }
+
+    public void incrementOverrunCount() {
+        overrunCount.increment();
+    }
+
+    public List<SlowestEvents.Event> getSlowestEvents() {
+        return slowestEvents.get();
+    }
+
+    public void addEventTime(int id, long time) {
+        slowestEvents.add(id, time);
+    }
+
+    public Collection<LinkLatency> getLinkLatencies() {
+        return linkLatencies.values();
+    }
+
+    public LinkLatency getLinkLatency(String source) {
+        return linkLatencies.computeIfAbsent(source, LinkLatency::new);
+    }
+
+    public long getControlCount() {
+        return controlCount.sum();
+    }
+
+    public long getControlTime() {
+        return controlTime.sum();
+    }
+
+    public long getControlMaxTime() {
+        return controlMaxTime.get();
+    }
+
+    public void addControlRequest(long latency) {
+        controlCount.increment();
+        controlTime.add(latency);
+        controlMaxTime.accumulateAndGet(latency, Math::max);
     }
 
     public String getVersion() {
@@ -0,0 +1,128 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.util.report;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the slowest events executed by a service.
+ * <p>
+ * Events faster than the fastest event already kept are rejected
+ * without locking, once the log is full.
+ */
+public class SlowestEvents {
+
+    private final int capacity;
+    private final List<Event> events;
+    private volatile long threshold = -1;
+
+    /**
+     * Creates an empty log.
+     *
+     * @param capacity the number of events to keep
+     */
+    public SlowestEvents(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.events = new ArrayList<>(capacity + 1);
+    }
+
+    /**
+     * Records the execution time of an event.
+     *
+     * @param id the communication id of the event
+     * @param time the execution time of the event, in microseconds
+     */
+    public void add(int id, long time) {
+        if (time <= threshold) {
+            return;
+        }
+        synchronized (events) {
+            int index = events.size();
+            while (index > 0 && events.get(index - 1).time < time) {
+                index--;
+            }
+            events.add(index, new Event(id, time));
+            if (events.size() > capacity) {
+                events.remove(capacity);
+            }
+            if (events.size() == capacity) {
+                threshold = events.get(capacity - 1).time;
+            }
+        }
+    }
+
+    /**
+     * Gets the slowest events, sorted by decreasing execution time.
+     *
+     * @return a copy of the kept events
+     */
+    public List<Event> get() {
+        synchronized (events) {
+            return Collections.unmodifiableList(new ArrayList<>(events));
+        }
+    }
+
+
+    /**
+     * The execution time of an event.
+     */
+    public static final class Event {
+
+        private final int id;
+        private final long time;
+
+        /**
+         * Creates the record of an event.
+         *
+         * @param id the communication id of the event
+         * @param time the execution time of the event, in microseconds
+         */
+        public Event(int id, long time) {
+            this.id = id;
+            this.time = time;
+        }
+
+        /**
+         * Gets the communication id of the event.
+         *
+         * @return the id of the event
+         */
+        public int id() {
+            return id;
+        }
+
+        /**
+         * Gets the execution time of the event.
+         *
+         * @return the execution time, in microseconds
+         */
+        public long time() {
+            return time;
+        }
+    }
+}
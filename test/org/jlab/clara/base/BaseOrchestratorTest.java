@@ -37,6 +37,8 @@ import org.junit.jupiter.api.Test;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
+import java.util.concurrent.TimeUnit;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.mock;
@@ -100,7 +102,97 @@ public class BaseOrchestratorTest {
         request = orchestrator.deploy(service, "org.example.service.E1").withPoolsize(10);
 
         assertRequest("10.2.9.96", "dpe:10.2.9.96_java",
-                "startService?master?E1?org.example.service.E1?10?undefined?undefined");
+                "startService?master?E1?org.example.service.E1?10?undefined?undefined"
+                        + "?false?1?0?0?0?false?0?0?0");
+    }
+
+
+    @Test
+    public void deployServiceWithEnginePerThread() throws Exception {
+        ServiceName service = new ServiceName("10.2.9.96_java:master:E1");
+        request = orchestrator.deploy(service, "org.example.service.E1")
+                              .withPoolsize(10)
+                              .withEnginePerThread();
+
+        assertRequest("10.2.9.96", "dpe:10.2.9.96_java",
+                "startService?master?E1?org.example.service.E1?10?undefined?undefined"
+                        + "?true?1?0?0?0?false?0?0?0");
+    }
+
+
+    @Test
+    public void deployServiceWithBatching() throws Exception {
+        ServiceName service = new ServiceName("10.2.9.96_java:master:E1");
+        request = orchestrator.deploy(service, "org.example.service.E1")
+                              .withPoolsize(10)
+                              .withBatching(16, 5, TimeUnit.MILLISECONDS);
+
+        assertRequest("10.2.9.96", "dpe:10.2.9.96_java",
+                "startService?master?E1?org.example.service.E1?10?undefined?undefined"
+                        + "?false?16?5000?0?0?false?0?0?0");
+    }
+
+
+    @Test
+    public void deployServiceWithMaxPoolsize() throws Exception {
+        ServiceName service = new ServiceName("10.2.9.96_java:master:E1");
+        request = orchestrator.deploy(service, "org.example.service.E1")
+                              .withPoolsize(2)
+                              .withMaxPoolsize(8);
+
+        assertRequest("10.2.9.96", "dpe:10.2.9.96_java",
+                "startService?master?E1?org.example.service.E1?2?undefined?undefined"
+                        + "?false?1?0?8?0?false?0?0?0");
+    }
+
+
+    @Test
+    public void deployServiceWithPoolTimeouts() throws Exception {
+        ServiceName service = new ServiceName("10.2.9.96_java:master:E1");
+        request = orchestrator.deploy(service, "org.example.service.E1")
+                              .withPoolsize(2)
+                              .withMaxPoolsize(8)
+                              .withPoolTimeouts(5, 30_000, TimeUnit.MILLISECONDS);
+
+        assertRequest("10.2.9.96", "dpe:10.2.9.96_java",
+                "startService?master?E1?org.example.service.E1?2?undefined?undefined"
+                        + "?false?1?0?8?0?false?0?5000?30000000");
+    }
+
+
+    @Test
+    public void deployServiceWithDeadline() throws Exception {
+        ServiceName service = new ServiceName("10.2.9.96_java:master:E1");
+        request = orchestrator.deploy(service, "org.example.service.E1")
+                              .withPoolsize(2)
+                              .withDeadline(2, TimeUnit.SECONDS)
+                              .withOverrunRelease();
+
+        assertRequest("10.2.9.96", "dpe:10.2.9.96_java",
+                "startService?master?E1?org.example.service.E1?2?undefined?undefined"
+                        + "?false?1?0?0?2000000?true?0?0?0");
+    }
+
+
+    @Test
+    public void deployServiceWithAsyncSend() throws Exception {
+        ServiceName service = new ServiceName("10.2.9.96_java:master:E1");
+        request = orchestrator.deploy(service, "org.example.service.E1")
+                              .withPoolsize(4)
+                              .withAsyncSend(2);
+
+        assertRequest("10.2.9.96", "dpe:10.2.9.96_java",
+                "startService?master?E1?org.example.service.E1?4?undefined?undefined"
+                        + "?false?1?0?0?0?false?2?0?0");
+    }
+
+
+    @Test
+    public void resizeService() throws Exception {
+        ServiceName service = new ServiceName("10.2.9.96_java:master:E1");
+        request = orchestrator.resize(service, 2, 8);
+
+        assertRequest("10.2.9.96", "dpe:10.2.9.96_java", "resizeService?master?E1?2?8");
     }
 
 
@@ -0,0 +1,142 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.base.core;
+
+import org.jlab.clara.base.error.ClaraException;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DataTypeTableTest {
+
+    private static final xMsgTopic TOPIC = xMsgTopic.wrap("10.1.1.1_java:C:S1");
+
+    private final DataTypeTable table = new DataTypeTable(new HashSet<>(Arrays.asList(
+            EngineDataType.JSON, EngineDataType.SINT32, EngineDataType.PACKED_FLOAT)));
+
+    @Test
+    public void sameMimeTypeHasSameId() throws Exception {
+        EngineDataType custom = new EngineDataType("binary/table-test",
+                                                   EngineDataType.BYTES.serializer());
+        EngineDataType other = new EngineDataType("binary/table-test",
+                                                  EngineDataType.BYTES.serializer());
+
+        assertThat(other.id(), is(custom.id()));
+        assertThat(custom.id(), is(not(EngineDataType.BYTES.id())));
+        assertThat(MimeTypeRegistry.lookup("binary/table-test"), is(custom.id()));
+    }
+
+    @Test
+    public void mimeTypesAreCaseInsensitive() throws Exception {
+        EngineDataType custom = new EngineDataType("binary/Case-Test",
+                                                   EngineDataType.BYTES.serializer());
+
+        assertThat(MimeTypeRegistry.lookup("binary/Case-Test"), is(custom.id()));
+        assertThat(MimeTypeRegistry.lookup("BINARY/CASE-TEST"), is(custom.id()));
+        assertThat(MimeTypeRegistry.lookup("binary/case-test"), is(custom.id()));
+    }
+
+    @Test
+    public void mimeTypeIdIsResolvedThroughRegistry() throws Exception {
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.JSON, "{}");
+
+        data.setData("Application/JSON", "{}");
+
+        assertThat(data.getMimeTypeId(), is(EngineDataType.JSON.id()));
+
+        data.setData(new String("binary/sint32"), 1);
+
+        assertThat(data.getMimeTypeId(), is(EngineDataType.SINT32.id()));
+    }
+
+    @Test
+    public void unregisteredMimeTypeIsUnknown() throws Exception {
+        assertThat(MimeTypeRegistry.lookup("binary/not-registered"),
+                   is(MimeTypeRegistry.UNKNOWN));
+    }
+
+    @Test
+    public void getSupportedDataTypes() throws Exception {
+        assertThat(table.get(EngineDataType.JSON.id()), is(sameInstance(EngineDataType.JSON)));
+        assertThat(table.get("binary/sint32"), is(sameInstance(EngineDataType.SINT32)));
+    }
+
+    @Test
+    public void getUnsupportedDataTypes() throws Exception {
+        assertThat(table.get(EngineDataType.STRING.id()), is(nullValue()));
+        assertThat(table.get(MimeTypeRegistry.UNKNOWN), is(nullValue()));
+        assertThat(table.get("binary/not-registered"), is(nullValue()));
+    }
+
+    @Test
+    public void getDataTypeOfData() throws Exception {
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.PACKED_FLOAT, new float[] {1.0f});
+
+        assertThat(table.get(data), is(sameInstance(EngineDataType.PACKED_FLOAT)));
+
+        data.setData(EngineDataType.JSON.mimeType(), "{}");
+
+        assertThat(data.getMimeTypeId(), is(EngineDataType.JSON.id()));
+        assertThat(table.get(data), is(sameInstance(EngineDataType.JSON)));
+    }
+
+    @Test
+    public void serializeWithTable() throws Exception {
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.SINT32, 42);
+
+        xMsgMessage msg = DataUtil.serialize(TOPIC, data, table);
+
+        assertThat(DataUtil.deserialize(msg, table).getData(), is(42));
+        assertThat(DataUtil.deserializeLazy(msg, table).getData(), is(42));
+    }
+
+    @Test
+    public void deserializeUnsupportedTypeWithTable() throws Exception {
+        xMsgMeta.Builder meta = xMsgMeta.newBuilder();
+        meta.setDataType("binary/not-registered");
+        xMsgMessage msg = new xMsgMessage(TOPIC, meta, "data".getBytes(StandardCharsets.UTF_8));
+
+        ClaraException e = assertThrows(ClaraException.class, () ->
+            DataUtil.deserialize(msg, table));
+
+        assertThat(e.getMessage(), containsString("binary/not-registered"));
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.base.core;
+
+import org.jlab.clara.base.error.ClaraException;
+import org.jlab.clara.engine.ClaraBufferSerializer;
+import org.jlab.clara.engine.ClaraSerializer;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class DataUtilTest {
+
+    private static final xMsgTopic TOPIC = xMsgTopic.wrap("10.1.1.1_java:C:S1");
+
+    @Test
+    public void sharedDataUsesSameUserData() throws Exception {
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.JSON.mimeType(), "{\"event\": 1}");
+        data.setCommunicationId(1000);
+
+        EngineData view = DataUtil.shareData(data);
+
+        assertThat(view.getData(), is(sameInstance(data.getData())));
+        assertThat(view.getMimeType(), is(data.getMimeType()));
+        assertThat(view.getCommunicationId(), is(1000));
+    }
+
+    @Test
+    public void sharedDataHasItsOwnMetadata() throws Exception {
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.STRING.mimeType(), "original");
+        data.setDescription("original");
+
+        EngineData view = DataUtil.shareData(data);
+        view.setData(EngineDataType.STRING.mimeType(), "modified");
+        view.setDescription("modified");
+
+        assertThat(DataUtil.getMetadata(view), is(not(sameInstance(DataUtil.getMetadata(data)))));
+        assertThat(data.getData(), is("original"));
+        assertThat(data.getDescription(), is("original"));
+    }
+
+    @Test
+    public void serializeBufferSerializer() throws Exception {
+        Set<EngineDataType> types = Collections.singleton(EngineDataType.PACKED_INT32);
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.PACKED_INT32.mimeType(), new int[] {1, 2, 3, 4});
+
+        xMsgMessage msg = DataUtil.serialize(TOPIC, data, types);
+        EngineData result = DataUtil.deserialize(msg, types);
+
+        assertThat(msg.getDataSize(), is(4 * Integer.BYTES));
+        assertThat(result.getData(), is(new int[] {1, 2, 3, 4}));
+    }
+
+    @Test
+    public void serializeBufferSerializerIntoMessageArray() throws Exception {
+        List<byte[]> written = new ArrayList<>();
+        ClaraBufferSerializer serializer = new ClaraBufferSerializer() {
+            @Override
+            public int sizeHint(Object data) {
+                return ((byte[]) data).length;
+            }
+
+            @Override
+            public void write(Object data, ByteBuffer buffer) {
+                written.add(buffer.array());
+                buffer.put((byte[]) data);
+            }
+
+            @Override
+            public Object read(ByteBuffer buffer, int offset, int length) {
+                return Arrays.copyOfRange(buffer.array(), offset, offset + length);
+            }
+        };
+        EngineDataType type = new EngineDataType("binary/test", serializer);
+        EngineData data = new EngineData();
+        data.setData(type.mimeType(), new byte[] {1, 2, 3});
+
+        xMsgMessage msg = DataUtil.serialize(TOPIC, data, Collections.singleton(type));
+
+        assertThat(written, hasSize(1));
+        assertThat(msg.getData(), is(sameInstance(written.get(0))));
+        assertThat(msg.getData(), is(new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    public void serializeBufferSerializerLargerThanHint() throws Exception {
+        ClaraBufferSerializer serializer = new ClaraBufferSerializer() {
+            @Override
+            public int sizeHint(Object data) {
+                return 1;
+            }
+
+            @Override
+            public void write(Object data, ByteBuffer buffer) {
+                buffer.put((byte[]) data);
+            }
+
+            @Override
+            public Object read(ByteBuffer buffer, int offset, int length) {
+                return Arrays.copyOfRange(buffer.array(), offset, offset + length);
+            }
+        };
+        EngineDataType type = new EngineDataType("binary/test", serializer);
+        byte[] bytes = new byte[200 * 1024];
+        new Random().nextBytes(bytes);
+        EngineData data = new EngineData();
+        data.setData(type.mimeType(), bytes);
+
+        xMsgMessage msg = DataUtil.serialize(TOPIC, data, Collections.singleton(type));
+
+        assertThat(msg.getData(), is(bytes));
+    }
+
+    @Test
+    public void writeBufferIsReused() throws Exception {
+        ClaraBufferSerializer serializer =
+                (ClaraBufferSerializer) EngineDataType.PACKED_DOUBLE.serializer();
+
+        ByteBuffer first = DataUtil.writeBuffer(serializer, new double[] {1.0, 2.0});
+        ByteBuffer second = DataUtil.writeBuffer(serializer, new double[] {3.0});
+
+        assertThat(second.array(), is(sameInstance(first.array())));
+        assertThat(second.remaining(), is(Double.BYTES));
+    }
+
+    @Test
+    public void serializeUsesRemainingBytesOfBuffer() throws Exception {
+        Set<EngineDataType> types = Collections.singleton(EngineDataType.BYTES);
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {0, 1, 2, 3, 4, 5});
+        buffer.position(2);
+        buffer.limit(5);
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.BYTES.mimeType(), buffer.slice());
+
+        xMsgMessage msg = DataUtil.serialize(TOPIC, data, types);
+
+        assertThat(msg.getData(), is(new byte[] {2, 3, 4}));
+    }
+
+    @Test
+    public void lazyDataIsDecodedOnFirstRead() throws Exception {
+        CountingSerializer serializer = new CountingSerializer();
+        Set<EngineDataType> types = countingTypes(serializer);
+        xMsgMessage msg = DataUtil.serialize(TOPIC, countingData("event"), types);
+
+        EngineData data = DataUtil.deserializeLazy(msg, types);
+
+        assertThat(serializer.reads, is(0));
+        assertThat(DataUtil.hasWireData(data), is(true));
+        assertThat(data.getData(), is("event"));
+        assertThat(data.getData(), is("event"));
+        assertThat(serializer.reads, is(1));
+        assertThat(DataUtil.hasWireData(data), is(false));
+    }
+
+    @Test
+    public void untouchedLazyDataIsForwardedWithoutEncoding() throws Exception {
+        CountingSerializer serializer = new CountingSerializer();
+        Set<EngineDataType> types = countingTypes(serializer);
+        xMsgMessage msg = DataUtil.serialize(TOPIC, countingData("event"), types);
+
+        EngineData data = DataUtil.deserializeLazy(msg, types);
+        data.setDescription("forwarded");
+        xMsgMessage output = DataUtil.serialize(TOPIC, data, types);
+
+        assertThat(serializer.writes, is(1));
+        assertThat(serializer.reads, is(0));
+        assertThat(output.getData(), is(sameInstance(msg.getData())));
+        assertThat(output.getMetaData().getDescription(), is("forwarded"));
+    }
+
+    @Test
+    public void replacedLazyDataIsEncoded() throws Exception {
+        CountingSerializer serializer = new CountingSerializer();
+        Set<EngineDataType> types = countingTypes(serializer);
+        xMsgMessage msg = DataUtil.serialize(TOPIC, countingData("event"), types);
+
+        EngineData data = DataUtil.deserializeLazy(msg, types);
+        data.setData(CountingSerializer.MIME_TYPE, "modified");
+        xMsgMessage output = DataUtil.serialize(TOPIC, data, types);
+
+        assertThat(serializer.writes, is(2));
+        assertThat(DataUtil.deserialize(output, types).getData(), is("modified"));
+    }
+
+    @Test
+    public void sharedLazyDataKeepsReceivedBytes() throws Exception {
+        CountingSerializer serializer = new CountingSerializer();
+        Set<EngineDataType> types = countingTypes(serializer);
+        xMsgMessage msg = DataUtil.serialize(TOPIC, countingData("event"), types);
+
+        EngineData data = DataUtil.deserializeLazy(msg, types);
+        EngineData view = DataUtil.shareData(data);
+
+        assertThat(DataUtil.hasWireData(view), is(true));
+        assertThat(view.getData(), is("event"));
+        assertThat(DataUtil.hasWireData(data), is(true));
+        assertThat(serializer.reads, is(1));
+    }
+
+    private static EngineData countingData(String value) {
+        EngineData data = new EngineData();
+        data.setData(CountingSerializer.MIME_TYPE, value);
+        return data;
+    }
+
+    private static Set<EngineDataType> countingTypes(ClaraSerializer serializer) {
+        return Collections.singleton(new EngineDataType(CountingSerializer.MIME_TYPE, serializer));
+    }
+
+
+    private static final class CountingSerializer implements ClaraSerializer {
+
+        static final String MIME_TYPE = "text/counted";
+
+        private final ClaraSerializer delegate = EngineDataType.STRING.serializer();
+
+        private int writes;
+        private int reads;
+
+        @Override
+        public ByteBuffer write(Object data) throws ClaraException {
+            writes++;
+            return delegate.write(data);
+        }
+
+        @Override
+        public Object read(ByteBuffer buffer) throws ClaraException {
+            reads++;
+            return delegate.read(buffer);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.engine;
+
+import org.jlab.clara.base.core.DataUtil;
+import org.jlab.clara.base.error.ClaraException;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ColumnarDataTest {
+
+    private static final int ROWS = 5;
+
+    @Test
+    public void addColumns() throws Exception {
+        ColumnarData data = createData();
+
+        assertThat(data.name(), is("DC::tdc"));
+        assertThat(data.rows(), is(ROWS));
+        assertThat(data.columnNames(), is(Arrays.asList("sector", "order", "tdc", "time")));
+        assertThat(data.columnType("time"), is(ColumnarData.ColumnType.DOUBLE));
+        assertThat(data.getIntColumn("tdc").get(3), is(3000));
+    }
+
+    @Test
+    public void wrongColumnsAreRejected() throws Exception {
+        ColumnarData data = createData();
+
+        assertThrows(IllegalArgumentException.class, () -> data.addIntColumn("tdc"));
+        assertThrows(IllegalArgumentException.class, () -> data.getIntColumn("time"));
+        assertThrows(IllegalArgumentException.class, () -> data.getIntColumn("adc"));
+    }
+
+    @Test
+    public void serializeInNativeOrder() throws Exception {
+        ClaraBufferSerializer s = serializer();
+        ColumnarData data = createData();
+
+        ByteBuffer buffer = ByteBuffer.allocate(s.sizeHint(data)).order(ByteOrder.nativeOrder());
+        s.write(data, buffer);
+        buffer.flip();
+
+        assertThat(buffer.remaining(), is(s.sizeHint(data)));
+        assertColumns((ColumnarData) s.read(buffer));
+    }
+
+    @Test
+    public void serializeInSwappedOrder() throws Exception {
+        ClaraBufferSerializer s = serializer();
+        ByteOrder swapped = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN
+                ? ByteOrder.LITTLE_ENDIAN
+                : ByteOrder.BIG_ENDIAN;
+        ColumnarData data = createData();
+
+        ByteBuffer buffer = ByteBuffer.allocate(s.sizeHint(data)).order(swapped);
+        s.write(data, buffer);
+        buffer.flip();
+
+        assertColumns((ColumnarData) s.read(buffer));
+    }
+
+    @Test
+    public void readColumnsAreViewsOfTheBuffer() throws Exception {
+        ClaraBufferSerializer s = serializer();
+        ByteBuffer buffer = s.write(createData());
+
+        ColumnarData result = (ColumnarData) s.read(buffer);
+        int last = buffer.limit() - Double.BYTES;
+        buffer.putDouble(last, 42.0);
+
+        assertThat(result.isReadOnly(), is(true));
+        assertThat(result.getDoubleColumn("time").get(ROWS - 1), is(42.0));
+        assertThat(result.getIntColumn("tdc").isReadOnly(), is(true));
+        assertThrows(IllegalStateException.class, () -> result.addIntColumn("adc"));
+    }
+
+    @Test
+    public void serializeThroughMessages() throws Exception {
+        Set<EngineDataType> types = Collections.singleton(EngineDataType.COLUMNAR);
+        xMsgTopic topic = xMsgTopic.wrap("10.1.1.1_java:C:S1");
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.COLUMNAR, createData());
+
+        xMsgMessage msg = DataUtil.serialize(topic, data, types);
+        ColumnarData result = (ColumnarData) DataUtil.deserialize(msg, types).getData();
+
+        assertColumns(result);
+    }
+
+    @Test
+    public void truncatedDataIsRejected() throws Exception {
+        ClaraBufferSerializer s = serializer();
+        ByteBuffer buffer = s.write(createData());
+
+        assertThrows(ClaraException.class, () -> s.read(buffer, 0, buffer.limit() - 8));
+    }
+
+    private static ClaraBufferSerializer serializer() {
+        return (ClaraBufferSerializer) EngineDataType.COLUMNAR.serializer();
+    }
+
+    private static ColumnarData createData() {
+        ColumnarData data = new ColumnarData("DC::tdc", ROWS);
+        ByteBuffer sector = data.addByteColumn("sector");
+        data.addShortColumn("order");
+        IntBuffer tdc = data.addIntColumn("tdc");
+        DoubleBuffer time = data.addDoubleColumn("time");
+        for (int i = 0; i < ROWS; i++) {
+            sector.put((byte) (i + 1));
+            tdc.put(i * 1000);
+            time.put(i * 0.5);
+        }
+        return data;
+    }
+
+    private static void assertColumns(ColumnarData data) {
+        assertThat(data.name(), is("DC::tdc"));
+        assertThat(data.rows(), is(ROWS));
+        assertThat(data.columnNames(), is(Arrays.asList("sector", "order", "tdc", "time")));
+        for (int i = 0; i < ROWS; i++) {
+            assertThat(data.getByteColumn("sector").get(i), is((byte) (i + 1)));
+            assertThat(data.getShortColumn("order").get(i), is((short) 0));
+            assertThat(data.getIntColumn("tdc").get(i), is(i * 1000));
+            assertThat(data.getDoubleColumn("time").get(i), is(i * 0.5));
+        }
+    }
+}
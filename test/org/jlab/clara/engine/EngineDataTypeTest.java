@@ -28,6 +28,8 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -182,4 +184,69 @@ public class EngineDataTypeTest {
         assertThat(d, is(sameInstance(bb)));
         assertThat(d.order(), is(ByteOrder.LITTLE_ENDIAN));
     }
+
+
+    @Test
+    public void testPackedIntegerArraySerializer() throws Exception {
+        int[] data = RANDOM.ints(1000).toArray();
+
+        ClaraSerializer s = EngineDataType.PACKED_INT32.serializer();
+
+        ByteBuffer b = s.write(data);
+        int[] d = (int[]) s.read(received(b));
+
+        assertThat(b.remaining(), is(data.length * Integer.BYTES));
+        assertThat(d, is(data));
+    }
+
+    @Test
+    public void testPackedLongArraySerializer() throws Exception {
+        long[] data = RANDOM.longs(1000).toArray();
+
+        ClaraSerializer s = EngineDataType.PACKED_INT64.serializer();
+
+        ByteBuffer b = s.write(data);
+        long[] d = (long[]) s.read(received(b));
+
+        assertThat(d, is(data));
+    }
+
+    @Test
+    public void testPackedFloatArraySerializer() throws Exception {
+        float[] data = new float[] {1.5f, -2.25f, Float.MAX_VALUE, Float.NaN};
+
+        ClaraSerializer s = EngineDataType.PACKED_FLOAT.serializer();
+
+        ByteBuffer b = s.write(data);
+        float[] d = (float[]) s.read(received(b));
+
+        assertThat(d, is(data));
+    }
+
+    @Test
+    public void testPackedDoubleArraySerializer() throws Exception {
+        double[] data = RANDOM.doubles(1000).toArray();
+
+        ClaraSerializer s = EngineDataType.PACKED_DOUBLE.serializer();
+
+        ByteBuffer b = s.write(DoubleBuffer.wrap(data, 10, 100));
+        double[] d = (double[]) s.read(received(b));
+
+        assertThat(d, is(Arrays.copyOfRange(data, 10, 110)));
+    }
+
+    @Test
+    public void testPackedArrayReadsByteOrderOfSender() throws Exception {
+        ByteBuffer b = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.BIG_ENDIAN);
+        b.putInt(1).putInt(-2).putInt(300000).flip();
+
+        int[] d = (int[]) EngineDataType.PACKED_INT32.serializer().read(b);
+
+        assertThat(d, is(new int[] {1, -2, 300000}));
+    }
+
+    // the receiver wraps the raw bytes with the byte order of the metadata
+    private static ByteBuffer received(ByteBuffer b) {
+        return ByteBuffer.wrap(b.array()).order(b.order());
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.engine;
+
+import org.jlab.clara.base.error.ClaraException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ObjectSerializerTest {
+
+    enum Detector { DC, EC, FTOF }
+
+    // checkstyle.off: MethodName
+    record Hit(Detector detector, int channel, double energy) { }
+
+    record Event(long id, boolean valid, String source, Integer run,
+                 float[] weights, List<Hit> hits, Hit trigger) { }
+
+    record HeaderV1(int run, String tag) { }
+
+    record HeaderV2(int run, String tag, long timestamp) { }
+    // checkstyle.on: MethodName
+
+    static class Track {
+        int charge;
+        double[] momentum;
+        transient int cached;
+    }
+
+    static class LabeledTrack extends Track {
+        String label;
+        Track parent;
+    }
+
+    static class Immutable {
+        final int value = 1;
+    }
+
+    static class Particle {
+        int charge;
+        double mass;
+        String name;
+    }
+
+    static class ReorderedParticle {
+        String name;
+        double mass;
+        int charge;
+    }
+
+    static class AliasedParticle {
+        String alias;
+        int charge;
+        double mass;
+        String name;
+    }
+
+    @Test
+    public void recordRoundTrip() throws Exception {
+        Event event = new Event(100_000_000_000L, true, "file.hipo", null,
+                                new float[] {0.5f, 1.5f},
+                                Arrays.asList(new Hit(Detector.DC, 12, 0.25),
+                                              new Hit(Detector.FTOF, -3, 4.0)),
+                                new Hit(Detector.EC, 7, 1.0));
+
+        Event result = (Event) roundTrip(Event.class, event);
+
+        assertThat(result.id(), is(event.id()));
+        assertThat(result.valid(), is(true));
+        assertThat(result.source(), is("file.hipo"));
+        assertThat(result.run(), is(nullValue()));
+        assertThat(result.weights(), is(event.weights()));
+        assertThat(result.hits(), is(event.hits()));
+        assertThat(result.trigger(), is(event.trigger()));
+    }
+
+    @Test
+    public void objectRoundTrip() throws Exception {
+        Track parent = new Track();
+        parent.charge = 1;
+        LabeledTrack track = new LabeledTrack();
+        track.charge = -1;
+        track.momentum = new double[] {0.1, 0.2, 3.5};
+        track.cached = 10;
+        track.label = "electron";
+        track.parent = parent;
+
+        LabeledTrack result = (LabeledTrack) roundTrip(LabeledTrack.class, track);
+
+        assertThat(result.charge, is(-1));
+        assertThat(result.momentum, is(track.momentum));
+        assertThat(result.cached, is(0));
+        assertThat(result.label, is("electron"));
+        assertThat(result.parent.charge, is(1));
+        assertThat(result.parent.momentum, is(nullValue()));
+    }
+
+    @Test
+    public void objectFieldsAreTaggedByName() throws Exception {
+        Particle particle = new Particle();
+        particle.charge = -1;
+        particle.mass = 0.511;
+        particle.name = "electron";
+        ByteBuffer data = ObjectSerializer.forClass(Particle.class).write(particle);
+
+        ReorderedParticle result = (ReorderedParticle) ObjectSerializer
+                .forClass(ReorderedParticle.class).read(data);
+
+        assertThat(result.charge, is(-1));
+        assertThat(result.mass, is(0.511));
+        assertThat(result.name, is("electron"));
+    }
+
+    @Test
+    public void addedFieldDoesNotRenumberOtherFields() throws Exception {
+        Particle particle = new Particle();
+        particle.charge = 1;
+        particle.mass = 0.938;
+        particle.name = "proton";
+        ByteBuffer data = ObjectSerializer.forClass(Particle.class).write(particle);
+
+        AliasedParticle result = (AliasedParticle) ObjectSerializer
+                .forClass(AliasedParticle.class).read(data);
+
+        assertThat(result.alias, is(nullValue()));
+        assertThat(result.charge, is(1));
+        assertThat(result.mass, is(0.938));
+        assertThat(result.name, is("proton"));
+    }
+
+    @Test
+    public void unknownFieldsAreRejected() throws Exception {
+        AliasedParticle particle = new AliasedParticle();
+        particle.alias = "p";
+        ByteBuffer data = ObjectSerializer.forClass(AliasedParticle.class).write(particle);
+
+        assertThrows(ClaraException.class, () ->
+            ObjectSerializer.forClass(Particle.class).read(data));
+    }
+
+    @Test
+    public void malformedDataIsRejected() throws Exception {
+        // an unknown fixed64 property of a record, truncated
+        byte[] data = {(byte) ObjectSerializer.FORMAT_VERSION, (5 << 3) | 2, 1};
+
+        assertThrows(ClaraException.class, () ->
+            ObjectSerializer.forClass(HeaderV1.class).read(ByteBuffer.wrap(data)));
+    }
+
+    @Test
+    public void subclassesAreRejected() throws Exception {
+        ClaraSerializer s = EngineDataType.forClass(Track.class).serializer();
+        LabeledTrack track = new LabeledTrack();
+        track.parent = new LabeledTrack();
+
+        assertThrows(ClaraException.class, () -> s.write(new LabeledTrack()));
+        assertThrows(ClaraException.class, () ->
+            EngineDataType.forClass(LabeledTrack.class).serializer().write(track));
+    }
+
+    @Test
+    public void newVersionReadsOldData() throws Exception {
+        ByteBuffer data = ObjectSerializer.forClass(HeaderV1.class)
+                                          .write(new HeaderV1(42, "calib"));
+
+        HeaderV2 result = (HeaderV2) ObjectSerializer.forClass(HeaderV2.class).read(data);
+
+        assertThat(result, is(new HeaderV2(42, "calib", 0L)));
+    }
+
+    @Test
+    public void oldVersionSkipsNewProperties() throws Exception {
+        ByteBuffer data = ObjectSerializer.forClass(HeaderV2.class)
+                                          .write(new HeaderV2(42, "calib", 123456789L));
+
+        HeaderV1 result = (HeaderV1) ObjectSerializer.forClass(HeaderV1.class).read(data);
+
+        assertThat(result, is(new HeaderV1(42, "calib")));
+    }
+
+    @Test
+    public void writeUsesBufferByteOrder() throws Exception {
+        ObjectSerializer s = ObjectSerializer.forClass(Hit.class);
+        Hit hit = new Hit(Detector.EC, 5, Math.PI);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        s.write(hit, buffer);
+        buffer.flip();
+
+        assertThat(s.read(buffer), is(hit));
+    }
+
+    @Test
+    public void writeGrowsSmallBuffers() throws Exception {
+        HeaderV1 header = new HeaderV1(1, String.join("", Collections.nCopies(4096, "x")));
+
+        assertThat(roundTrip(HeaderV1.class, header), is(header));
+    }
+
+    @Test
+    public void serializerIsCreatedOncePerClass() throws Exception {
+        assertThat(EngineDataType.forClass(Hit.class).serializer(),
+                   is(sameInstance(EngineDataType.forClass(Hit.class).serializer())));
+        assertThat(EngineDataType.forClass(Hit.class).mimeType(),
+                   is("binary/object;class=" + Hit.class.getName()));
+    }
+
+    @Test
+    public void unsupportedClassesAreRejected() throws Exception {
+        assertThrows(IllegalArgumentException.class, () ->
+            EngineDataType.forClass(Immutable.class));
+        assertThrows(IllegalArgumentException.class, () ->
+            EngineDataType.forClass(Runnable.class));
+    }
+
+    @Test
+    public void unsupportedFormatVersionIsRejected() throws Exception {
+        ObjectSerializer s = ObjectSerializer.forClass(Hit.class);
+        ByteBuffer data = s.write(new Hit(Detector.DC, 1, 1.0));
+        data.put(0, (byte) (ObjectSerializer.FORMAT_VERSION + 1));
+
+        assertThrows(ClaraException.class, () -> s.read(data));
+    }
+
+    private static Object roundTrip(Class<?> type, Object data) throws ClaraException {
+        ClaraSerializer s = EngineDataType.forClass(type).serializer();
+        return s.read(s.write(data));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.coda.xmsg.core.xMsgConnection;
+import org.jlab.coda.xmsg.core.xMsgConnectionPool;
+import org.jlab.coda.xmsg.net.xMsgProxyAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectionPoolsTest {
+
+    private static final xMsgProxyAddress PROXY = new xMsgProxyAddress("10.1.1.1", 7771);
+
+    private ConnectionPools pools;
+    private xMsgConnectionPool pool;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        pools = new ConnectionPools(PROXY);
+        pool = mock(xMsgConnectionPool.class);
+        when(pool.getConnection(PROXY)).thenAnswer(i -> mock(xMsgConnection.class));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        pools.close();
+    }
+
+    @Test
+    public void keepConnectionForCurrentThread() throws Exception {
+        assertThat(pools.threadConnection(pool, PROXY), is(nullValue()));
+
+        xMsgConnection con = pools.checkoutConnection(pool, PROXY);
+
+        assertThat(pools.threadConnection(pool, PROXY), is(sameInstance(con)));
+    }
+
+    @Test
+    public void keepConnectionPerPool() throws Exception {
+        pools.checkoutConnection(pool, PROXY);
+
+        assertThat(pools.threadConnection(mock(xMsgConnectionPool.class), PROXY),
+                   is(nullValue()));
+    }
+
+    @Test
+    public void doNotShareConnectionWithOtherThreads() throws Exception {
+        xMsgConnection con = pools.checkoutConnection(pool, PROXY);
+        AtomicReference<xMsgConnection> other = new AtomicReference<>();
+
+        Thread thread = new Thread(() -> other.set(pools.threadConnection(pool, PROXY)));
+        thread.start();
+        thread.join();
+
+        assertThat(other.get(), is(nullValue()));
+        assertThat(pools.threadConnection(pool, PROXY), is(sameInstance(con)));
+    }
+
+    @Test
+    public void destroyInvalidatedConnection() throws Exception {
+        xMsgConnection con = pools.checkoutConnection(pool, PROXY);
+
+        pools.invalidateConnection(pool, PROXY, con);
+
+        verify(con).destroy();
+        assertThat(pools.threadConnection(pool, PROXY), is(nullValue()));
+        assertThat(pools.checkoutConnection(pool, PROXY), is(not(sameInstance(con))));
+    }
+
+    @Test
+    public void releaseConnectionsOfDeadThreads() throws Exception {
+        AtomicReference<xMsgConnection> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                other.set(pools.checkoutConnection(pool, PROXY));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        pools.checkoutConnection(pool, PROXY);
+
+        verify(other.get()).close();
+        assertThat(pools.threadCount(), is(1));
+    }
+
+    @Test
+    public void releaseConnectionsOnClose() throws Exception {
+        xMsgConnection con = pools.checkoutConnection(pool, PROXY);
+
+        pools.close();
+
+        verify(con).close();
+    }
+}
@@ -182,6 +182,50 @@ public class DpeBuilderTest {
         assertThat(builder.reportPeriod, is(20_000L));
     }
 
+    @Test
+    public void dpeUsesDefaultQueueSize() throws Exception {
+        Builder builder = new Builder();
+
+        assertThat(builder.queueSize, is(Dpe.DEFAULT_QUEUE_SIZE));
+    }
+
+    @Test
+    public void dpeReceivesOptionalQueueSize() throws Exception {
+        Builder builder = new Builder().withQueueSize(200);
+
+        assertThat(builder.queueSize, is(200));
+    }
+
+    @Test
+    public void dpeUsesPrivateSchedulersByDefault() throws Exception {
+        Builder builder = new Builder();
+
+        assertThat(builder.sharedScheduler, is(false));
+    }
+
+    @Test
+    public void dpeReceivesOptionalSharedScheduler() throws Exception {
+        Builder builder = new Builder().withSharedScheduler(true);
+
+        assertThat(builder.sharedScheduler, is(true));
+    }
+
+
+    @Test
+    public void dpeDoesNotTraceByDefault() throws Exception {
+        Builder builder = new Builder();
+
+        assertThat(builder.traceSampling, is(0));
+    }
+
+    @Test
+    public void dpeReceivesOptionalTracing() throws Exception {
+        Builder builder = new Builder().withTracing(100, "/tmp/trace.json");
+
+        assertThat(builder.traceSampling, is(100));
+        assertThat(builder.traceFile, is("/tmp/trace.json"));
+    }
+
 
     private xMsgProxyAddress proxy(String host) throws Exception {
         return new xMsgProxyAddress(host, Dpe.DEFAULT_PROXY_PORT);
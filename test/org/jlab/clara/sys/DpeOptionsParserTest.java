@@ -46,6 +46,10 @@ public class DpeOptionsParserTest {
     private static final String POOL_OPT = "--poolsize";
     private static final String CORES_OPT = "--max-cores";
     private static final String REPORT_OPT = "--report";
+    private static final String QUEUE_OPT = "--queue-size";
+    private static final String SCHEDULER_OPT = "--shared-scheduler";
+    private static final String TRACE_OPT = "--trace";
+    private static final String TRACE_FILE_OPT = "--trace-file";
 
     private static final String SOCKETS_OPT = "--max-sockets";
     private static final String IO_THREADS_OPT = "--io-threads";
@@ -212,6 +216,50 @@ public class DpeOptionsParserTest {
         assertThat(parser.config().reportPeriod(), is(20_000L));
     }
 
+    @Test
+    public void dpeUsesDefaultQueueSize() throws Exception {
+        parse();
+
+        assertThat(parser.config().queueSize(), is(Dpe.DEFAULT_QUEUE_SIZE));
+    }
+
+    @Test
+    public void dpeReceivesOptionalQueueSize() throws Exception {
+        parse(QUEUE_OPT, "200");
+
+        assertThat(parser.config().queueSize(), is(200));
+    }
+
+    @Test
+    public void dpeUsesPrivateSchedulersByDefault() throws Exception {
+        parse();
+
+        assertThat(parser.config().sharedScheduler(), is(false));
+    }
+
+    @Test
+    public void dpeReceivesOptionalSharedScheduler() throws Exception {
+        parse(SCHEDULER_OPT);
+
+        assertThat(parser.config().sharedScheduler(), is(true));
+    }
+
+    @Test
+    public void dpeDoesNotTraceByDefault() throws Exception {
+        parse();
+
+        assertThat(parser.config().traceSampling(), is(0));
+        assertThat(parser.config().traceFile(), is(Dpe.DEFAULT_TRACE_FILE));
+    }
+
+    @Test
+    public void dpeReceivesOptionalTracing() throws Exception {
+        parse(TRACE_OPT, "100", TRACE_FILE_OPT, "/tmp/trace.json");
+
+        assertThat(parser.config().traceSampling(), is(100));
+        assertThat(parser.config().traceFile(), is("/tmp/trace.json"));
+    }
+
     @Test
     public void dpeUsesDefaultMaxSockets() throws Exception {
         parse();
@@ -0,0 +1,193 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.engine.Engine;
+import org.jlab.clara.util.report.LinkLatency;
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+public class EventTracerTest {
+
+    private ServiceReport report;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        report = new ServiceReport(ClaraComponent.service("cont", "engine"),
+                                   mock(Engine.class), "");
+    }
+
+
+    @Test
+    public void completedHopsAreAggregatedByLink() throws Exception {
+        EventTracer tracer = new EventTracer(10, 100);
+
+        trace(tracer, message("S1", 1));
+        trace(tracer, message("S1", 2));
+        trace(tracer, message("S2", 3));
+
+        assertThat(report.getLinkLatency("S1").getTotalTime().count(), is(2L));
+        assertThat(report.getLinkLatency("S2").getTotalTime().count(), is(1L));
+        assertThat(report.getLinkLatencies(), hasSize(2));
+    }
+
+    @Test
+    public void hopsWithoutExecutionAreIgnored() throws Exception {
+        EventTracer tracer = new EventTracer(1, 100);
+
+        EventTracer.Hop hop = tracer.receive(message("S1", 1), report);
+        hop.dequeued();
+        hop.sent();
+
+        assertThat(report.getLinkLatencies(), hasSize(0));
+    }
+
+    @Test
+    public void sampledHopsAreExported() throws Exception {
+        EventTracer tracer = new EventTracer(10, 100);
+
+        trace(tracer, message("S1", 10));
+        trace(tracer, message("S1", 11));
+        trace(tracer, message("S1", 20));
+
+        JSONArray events = export(tracer);
+        assertThat(events.length(), is(15));
+
+        JSONObject process = events.getJSONObject(0);
+        assertThat(process.getString("ph"), is("M"));
+        assertThat(process.getJSONObject("args").getString("name"), is(report.getName()));
+
+        JSONObject received = events.getJSONObject(1);
+        assertThat(received.getString("ph"), is("f"));
+        assertThat(received.getString("id"), is("S1#10"));
+
+        JSONObject engine = events.getJSONObject(4);
+        assertThat(engine.getString("name"), is("engine"));
+        assertThat(engine.getString("ph"), is("X"));
+        assertThat(engine.getJSONObject("args").getInt("id"), is(10));
+
+        JSONObject sent = events.getJSONObject(7);
+        assertThat(sent.getString("ph"), is("s"));
+        assertThat(sent.getString("id"), is(report.getName() + "#10"));
+    }
+
+    @Test
+    public void sampledHopsAreDroppedWhenBufferIsFull() throws Exception {
+        EventTracer tracer = new EventTracer(1, 2);
+
+        for (int i = 0; i < 5; i++) {
+            trace(tracer, message("S1", i));
+        }
+
+        assertThat(tracer.droppedCount(), is(3));
+        assertThat(export(tracer).length(), is(15));
+    }
+
+    @Test
+    public void flushedHopsAreRemovedFromBuffer() throws Exception {
+        EventTracer tracer = new EventTracer(1, 2);
+        StringWriter writer = new StringWriter();
+
+        trace(tracer, message("S1", 1));
+        trace(tracer, message("S1", 2));
+        tracer.flush(writer);
+
+        // the open trace can be read
+        assertThat(new JSONArray(writer.toString() + "]").length(), is(15));
+
+        trace(tracer, message("S1", 3));
+        tracer.close(writer);
+
+        assertThat(tracer.droppedCount(), is(0));
+        assertThat(new JSONArray(writer.toString()).length(), is(22));
+    }
+
+    @Test
+    public void flushIsRequestedWhenBufferIsHalfFull() throws Exception {
+        EventTracer tracer = new EventTracer(1, 4);
+        AtomicInteger requests = new AtomicInteger();
+        tracer.setFlushHandler(requests::incrementAndGet);
+
+        trace(tracer, message("S1", 1));
+
+        assertThat(requests.get(), is(0));
+
+        trace(tracer, message("S1", 2));
+        trace(tracer, message("S1", 3));
+
+        assertThat(requests.get(), is(1));
+    }
+
+    @Test
+    public void linkLatencyIsSplitByStage() throws Exception {
+        EventTracer tracer = new EventTracer(1, 100);
+
+        trace(tracer, message("S1", 1));
+
+        LinkLatency link = report.getLinkLatency("S1");
+        assertThat(link.getQueueTime().count(), is(1L));
+        assertThat(link.getEngineTime().count(), is(1L));
+        assertThat(link.getSendTime().count(), is(1L));
+        assertThat(link.getSource(), is("S1"));
+        assertThat(report.getLinkLatencies(), contains(link));
+    }
+
+
+    private void trace(EventTracer tracer, xMsgMessage msg) {
+        EventTracer.Hop hop = tracer.receive(msg, report);
+        hop.dequeued();
+        hop.engineStarted();
+        hop.engineCompleted();
+        hop.sendStarted();
+        hop.sent();
+    }
+
+    private static JSONArray export(EventTracer tracer) throws Exception {
+        StringWriter writer = new StringWriter();
+        tracer.close(writer);
+        return new JSONArray(writer.toString());
+    }
+
+    private static xMsgMessage message(String author, int id) {
+        xMsgMessage msg = new xMsgMessage(xMsgTopic.wrap("test"), "text/string",
+                                          "data".getBytes());
+        msg.getMetaData().setAuthor(author);
+        msg.getMetaData().setCommunicationId(id);
+        return msg;
+    }
+}
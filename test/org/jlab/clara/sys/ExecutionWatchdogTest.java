@@ -0,0 +1,150 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.engine.Engine;
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ExecutionWatchdogTest {
+
+    private ServiceReport report;
+    private ServiceEngine engine;
+    private ExecutionWatchdog watchdog;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        report = new ServiceReport(ClaraComponent.service("cont", "engine"),
+                                   mock(Engine.class), "");
+        engine = mock(ServiceEngine.class);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+    }
+
+
+    @Test
+    public void requestWithinDeadlineIsNotFlagged() throws Exception {
+        watchdog = watchdog(1000, false, (e, m, t) -> { });
+
+        watchdog.start(engine, message());
+
+        assertTrue(watchdog.finish(engine));
+        assertThat(report.getOverrunCount(), is(0L));
+    }
+
+    @Test
+    public void overrunningRequestIsCountedOnce() throws Exception {
+        watchdog = watchdog(5, false, (e, m, t) -> { });
+
+        watchdog.start(engine, message());
+        Thread.sleep(50);
+
+        assertTrue(watchdog.finish(engine));
+        assertThat(report.getOverrunCount(), is(1L));
+    }
+
+    @Test
+    public void overrunningRequestIsReleased() throws Exception {
+        CountDownLatch released = new CountDownLatch(1);
+        watchdog = watchdog(5, true, (e, m, t) -> {
+            assertThat(e, is(engine));
+            released.countDown();
+        });
+
+        watchdog.start(engine, message());
+
+        assertTrue(released.await(1, TimeUnit.SECONDS));
+        assertFalse(watchdog.finish(engine));
+        assertThat(report.getOverrunCount(), is(1L));
+    }
+
+    @Test
+    public void overrunningBatchReleasesAllRequests() throws Exception {
+        List<xMsgMessage> batch = Arrays.asList(message(), message(), message());
+        CountDownLatch released = new CountDownLatch(3);
+        watchdog = watchdog(5, true, (e, m, t) -> released.countDown());
+
+        watchdog.start(engine, batch);
+
+        assertTrue(released.await(1, TimeUnit.SECONDS));
+        assertFalse(watchdog.finish(engine));
+        assertThat(report.getOverrunCount(), is(3L));
+    }
+
+    @Test
+    public void batchIsGivenTheDeadlineOfAllItsRequests() throws Exception {
+        List<xMsgMessage> batch = Collections.nCopies(100, message());
+        watchdog = watchdog(5, false, (e, m, t) -> { });
+
+        watchdog.start(engine, batch);
+        Thread.sleep(50);
+
+        assertTrue(watchdog.finish(engine));
+        assertThat(report.getOverrunCount(), is(0L));
+    }
+
+    @Test
+    public void disabledWatchdogDoesNotTrackRequests() throws Exception {
+        watchdog = watchdog(0, true, (e, m, t) -> { });
+
+        watchdog.start(engine, message());
+        Thread.sleep(10);
+
+        assertTrue(watchdog.finish(engine));
+        assertThat(report.getOverrunCount(), is(0L));
+    }
+
+
+    private ExecutionWatchdog watchdog(long deadline,
+                                       boolean release,
+                                       ExecutionWatchdog.OverrunHandler handler) {
+        return new ExecutionWatchdog("test", deadline, TimeUnit.MILLISECONDS, release,
+                                     handler, Throwable::printStackTrace, report);
+    }
+
+    private static xMsgMessage message() {
+        return new xMsgMessage(xMsgTopic.wrap("test"), "text/string", "data".getBytes());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IpcTransportTest {
+
+    private static final String HOST = "10.1.1.1";
+    private static final String SENDER_DPE = "10.1.1.1_java";
+    private static final String RECEIVER_DPE = "10.1.1.1%7781_java";
+    private static final String RECEIVER = RECEIVER_DPE + ":C:S1";
+
+    private Path dir;
+    private IpcTransport sender;
+    private IpcTransport receiver;
+    private List<xMsgMessage> forwarded;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("ipc");
+        forwarded = new CopyOnWriteArrayList<>();
+        sender = new IpcTransport(dir, SENDER_DPE, HOST, MappedRing.MIN_CAPACITY,
+                                  forwarded::add);
+        receiver = new IpcTransport(dir, RECEIVER_DPE, HOST, MappedRing.MIN_CAPACITY,
+                                    forwarded::add);
+        sender.start();
+        receiver.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        SharedMemory.removeInbox(RECEIVER);
+        SharedMemory.removeReceiver(RECEIVER);
+        sender.stop();
+        receiver.stop();
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void deliverMessageToServiceOfOtherDpe() throws Exception {
+        SharedMemory.Inbox inbox = mock(SharedMemory.Inbox.class);
+        when(inbox.offer(any())).thenReturn(true);
+        SharedMemory.addInbox(RECEIVER, inbox);
+
+        assertThat(sender.send(new RoutingPlan.Route(RECEIVER), message(RECEIVER)), is(true));
+
+        ArgumentCaptor<xMsgMessage> captor = ArgumentCaptor.forClass(xMsgMessage.class);
+        verify(inbox, timeout(2000)).offer(captor.capture());
+
+        xMsgMessage received = captor.getValue();
+        assertThat(received.getTopic().toString(), is(RECEIVER));
+        assertThat(received.getMetaData().getCommunicationId(), is(42));
+        assertThat(received.getMetaData().getDataType(), is("text/string"));
+        assertThat(new String(received.getData(), StandardCharsets.UTF_8), is("data"));
+        assertThat(receiver.receivedCount(), is(1L));
+    }
+
+    @Test
+    public void countMessagesToStoppedServices() throws Exception {
+        assertThat(sender.send(new RoutingPlan.Route(RECEIVER), message(RECEIVER)), is(true));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (receiver.droppedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(receiver.droppedCount(), is(1L));
+    }
+
+    @Test
+    public void forwardMessagesWhenServiceQueueIsFull() throws Exception {
+        SharedMemory.Inbox inbox = mock(SharedMemory.Inbox.class);
+        when(inbox.offer(any())).thenReturn(false);
+        SharedMemory.addReceiver(RECEIVER);
+        SharedMemory.addInbox(RECEIVER, inbox);
+
+        assertThat(sender.send(new RoutingPlan.Route(RECEIVER), message(RECEIVER)), is(true));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (forwarded.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(forwarded.size(), is(1));
+        assertThat(forwarded.get(0).getMetaData().getCommunicationId(), is(42));
+        assertThat(receiver.forwardedCount(), is(1L));
+        assertThat(receiver.droppedCount(), is(0L));
+    }
+
+    @Test
+    public void reopenRingOfRestartedDpe() throws Exception {
+        SharedMemory.Inbox inbox = mock(SharedMemory.Inbox.class);
+        when(inbox.offer(any())).thenReturn(true);
+        SharedMemory.addInbox(RECEIVER, inbox);
+
+        assertThat(sender.send(new RoutingPlan.Route(RECEIVER), message(RECEIVER)), is(true));
+        verify(inbox, timeout(2000)).offer(any());
+
+        // the receiver crashed without closing its ring, and it was restarted
+        IpcTransport restarted = new IpcTransport(dir, RECEIVER_DPE, HOST,
+                                                  MappedRing.MIN_CAPACITY, forwarded::add);
+        restarted.start();
+        try {
+            assertThat(sender.send(new RoutingPlan.Route(RECEIVER), message(RECEIVER)),
+                       is(true));
+            verify(inbox, timeout(2000).times(2)).offer(any());
+
+            assertThat(restarted.receivedCount(), is(1L));
+            assertThat(receiver.receivedCount(), is(1L));
+        } finally {
+            receiver.stop();
+            restarted.stop();
+        }
+    }
+
+    @Test
+    public void doNotSendToDpeWithoutRing() throws Exception {
+        String service = "10.1.1.1%9000_java:C:S1";
+
+        assertThat(sender.send(new RoutingPlan.Route(service), message(service)), is(false));
+    }
+
+    @Test
+    public void doNotSendToOtherHost() throws Exception {
+        String service = "10.1.1.2_java:C:S1";
+
+        assertThat(sender.send(new RoutingPlan.Route(service), message(service)), is(false));
+    }
+
+    @Test
+    public void doNotSendToSameDpe() throws Exception {
+        String service = SENDER_DPE + ":C:S1";
+
+        assertThat(sender.send(new RoutingPlan.Route(service), message(service)), is(false));
+    }
+
+    private static xMsgMessage message(String topic) {
+        xMsgMeta.Builder meta = xMsgMeta.newBuilder();
+        meta.setCommunicationId(42);
+        meta.setDataType("text/string");
+        return new xMsgMessage(xMsgTopic.wrap(topic), meta,
+                               "data".getBytes(StandardCharsets.UTF_8));
+    }
+}
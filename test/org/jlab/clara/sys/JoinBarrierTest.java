@@ -0,0 +1,141 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.base.core.DataUtil;
+import org.jlab.clara.engine.Engine;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.util.report.ServiceReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+
+public class JoinBarrierTest {
+
+    private static final String S1 = "10.1.1.1_java:C:S1";
+    private static final String S2 = "10.1.1.1_java:C:S2";
+    private static final String S3 = "10.1.1.1_java:C:S3";
+
+    private final Set<String> inputs = new LinkedHashSet<>(Arrays.asList(S1, S2, S3));
+
+    private ServiceReport report;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        report = new ServiceReport(ClaraComponent.service("cont", "engine"),
+                                   mock(Engine.class), "");
+    }
+
+
+    @Test
+    public void joinCompletesWhenAllInputsArrive() throws Exception {
+        JoinBarrier barrier = barrier(10, 10);
+        EngineData d1 = data(S1, 1);
+        EngineData d2 = data(S2, 1);
+        EngineData d3 = data(S3, 1);
+
+        assertThat(barrier.offer(d3, inputs), is(nullValue()));
+        assertThat(barrier.offer(d1, inputs), is(nullValue()));
+        assertThat(barrier.offer(d2, inputs), contains(d1, d2, d3));
+        assertThat(barrier.size(), is(0));
+    }
+
+    @Test
+    public void joinsAreKeyedByCommunicationId() throws Exception {
+        JoinBarrier barrier = barrier(10, 10);
+
+        barrier.offer(data(S1, 1), inputs);
+        barrier.offer(data(S2, 2), inputs);
+        barrier.offer(data(S3, 1), inputs);
+
+        assertThat(barrier.size(), is(2));
+    }
+
+    @Test
+    public void joinsAreKeyedByComposition() throws Exception {
+        JoinBarrier barrier = barrier(10, 10);
+        EngineData d1 = data(S1, 1, "S1+S4;S2+S4;S3+S4;");
+        EngineData d2 = data(S2, 1, "S1+S4;S2+S4;S3+S4;");
+        EngineData d3 = data(S3, 1, "S1+S4;S2+S4;S3+S4;");
+
+        barrier.offer(d1, inputs);
+        barrier.offer(data(S2, 1, "S1+S2+S4;S3+S4;"), inputs);
+        barrier.offer(d3, inputs);
+
+        assertThat(barrier.size(), is(2));
+        assertThat(barrier.offer(d2, inputs), contains(d1, d2, d3));
+    }
+
+    @Test
+    public void oldestJoinIsEvictedWhenFull() throws Exception {
+        JoinBarrier barrier = barrier(2, 10);
+
+        barrier.offer(data(S1, 1), inputs);
+        barrier.offer(data(S1, 2), inputs);
+        barrier.offer(data(S1, 3), inputs);
+        barrier.offer(data(S2, 1), inputs);
+
+        assertThat(barrier.offer(data(S3, 1), inputs), is(nullValue()));
+        assertThat(report.getJoinEvictions(), is(2L));
+    }
+
+    @Test
+    public void expiredJoinsAreEvicted() throws Exception {
+        JoinBarrier barrier = barrier(10, 0);
+
+        barrier.offer(data(S1, 1), inputs);
+        barrier.offer(data(S1, 2), inputs);
+
+        assertThat(barrier.size(), is(1));
+        assertThat(report.getJoinEvictions(), is(1L));
+    }
+
+
+    private JoinBarrier barrier(int capacity, long timeout) {
+        return new JoinBarrier("S4", capacity, timeout, TimeUnit.SECONDS, report);
+    }
+
+    private static EngineData data(String sender, int id) {
+        return data(sender, id, "S1+S4;S2+S4;S3+S4;");
+    }
+
+    private static EngineData data(String sender, int id, String composition) {
+        EngineData data = new EngineData();
+        data.setData("text/string", sender);
+        data.setCommunicationId(id);
+        DataUtil.getMetadata(data).setAuthor(sender);
+        DataUtil.getMetadata(data).setComposition(composition);
+        return data;
+    }
+}
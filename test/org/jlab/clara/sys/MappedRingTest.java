@@ -0,0 +1,291 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MappedRingTest {
+
+    private static final int CAPACITY = MappedRing.MIN_CAPACITY;
+
+    private Path dir;
+    private Path path;
+    private MappedRing consumer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("ring");
+        path = dir.resolve("test.ring");
+        consumer = MappedRing.create(path, CAPACITY);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        consumer.close();
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void rejectInvalidCapacity() throws Exception {
+        assertThrows(IllegalArgumentException.class, () ->
+            MappedRing.create(dir.resolve("other.ring"), CAPACITY + 8));
+    }
+
+    @Test
+    public void createRingReadableByOwnerOnly() throws Exception {
+        assertThat(Files.getPosixFilePermissions(path),
+                   is(PosixFilePermissions.fromString("rw-------")));
+    }
+
+    @Test
+    public void pollEmptyRing() throws Exception {
+        assertThat(consumer.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void passMessagesBetweenProducerAndConsumer() throws Exception {
+        MappedRing producer = MappedRing.open(path);
+
+        assertThat(producer.offer(bytes("topic"), bytes("meta"), bytes("data")), is(true));
+        assertThat(producer.offer(bytes("second"), new byte[0]), is(true));
+
+        assertThat(strings(consumer.poll()), contains("topic", "meta", "data"));
+        assertThat(strings(consumer.poll()), contains("second", ""));
+        assertThat(consumer.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void wrapAroundTheEndOfTheRing() throws Exception {
+        MappedRing producer = MappedRing.open(path);
+        byte[] data = new byte[CAPACITY / 3];
+
+        for (int i = 0; i < 20; i++) {
+            data[0] = (byte) i;
+            assertThat(producer.offer(data), is(true));
+            byte[][] fields = consumer.poll();
+            assertThat(fields[0].length, is(data.length));
+            assertThat(fields[0][0], is((byte) i));
+        }
+    }
+
+    @Test
+    public void rejectMessagesWhenFull() throws Exception {
+        MappedRing producer = MappedRing.open(path);
+        byte[] data = new byte[CAPACITY / 4];
+
+        assertThat(producer.offer(data), is(true));
+        assertThat(producer.offer(data), is(true));
+        assertThat(producer.offer(data), is(true));
+        assertThat(producer.offer(data), is(false));
+
+        consumer.poll();
+
+        assertThat(producer.offer(data), is(true));
+    }
+
+    @Test
+    public void rejectMessagesLargerThanHalfTheRing() throws Exception {
+        MappedRing producer = MappedRing.open(path);
+
+        assertThat(producer.offer(new byte[producer.maxMessageSize() + 1]), is(false));
+    }
+
+    @Test
+    public void rejectMessagesWhenClosed() throws Exception {
+        MappedRing producer = MappedRing.open(path);
+
+        consumer.close();
+
+        assertThat(producer.isClosed(), is(true));
+        assertThat(producer.offer(bytes("data")), is(false));
+        assertThat(Files.exists(path), is(false));
+    }
+
+    @Test
+    public void rejectMessagesWhenConsumerStopsPolling() throws Exception {
+        MappedRing producer = MappedRing.open(path);
+        Thread.sleep(20);
+
+        assertThat(producer.isAlive(10, TimeUnit.MILLISECONDS), is(false));
+
+        consumer.poll();
+
+        assertThat(producer.isAlive(10, TimeUnit.MILLISECONDS), is(true));
+    }
+
+    @Test
+    public void replaceRingOfCrashedConsumer() throws Exception {
+        MappedRing producer = MappedRing.open(path);
+
+        // the consumer crashed without closing the ring, and it was restarted
+        MappedRing restarted = MappedRing.create(path, CAPACITY);
+        try {
+            assertThat(producer.isCurrent(), is(false));
+            assertThat(producer.offer(bytes("data")), is(false));
+
+            MappedRing reopened = MappedRing.open(path);
+
+            assertThat(reopened.offer(bytes("data")), is(true));
+            assertThat(strings(restarted.poll()), contains("data"));
+
+            consumer.close();
+
+            assertThat(Files.exists(path), is(true));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void reclaimRecordOfCrashedProducer() throws Exception {
+        MappedRing crashed = MappedRing.open(path);
+        MappedRing producer = MappedRing.open(path);
+        consumer.setReclaimTimeout(10, TimeUnit.MILLISECONDS);
+
+        // the producer crashed before publishing the record
+        assertThat(crashed.reserve(64), is(greaterThanOrEqualTo(0L)));
+
+        assertThat(consumer.poll(), is(nullValue()));
+        assertThat(producer.offer(bytes("data")), is(true));
+        assertThat(consumer.poll(), is(nullValue()));
+
+        Thread.sleep(20);
+
+        assertThat(strings(consumer.poll()), contains("data"));
+        assertThat(consumer.poll(), is(nullValue()));
+        assertThat(consumer.reclaimedCount(), is(1L));
+    }
+
+    @Test
+    public void doNotPublishRecordOfPausedProducer() throws Exception {
+        MappedRing paused = MappedRing.open(path);
+        MappedRing producer = MappedRing.open(path);
+        consumer.setReclaimTimeout(10, TimeUnit.MILLISECONDS);
+        byte[][] late = {bytes("late")};
+        int length = MappedRing.RECORD_HEADER + 4 + 4;
+
+        // the producer was paused after reserving the record, until it was reclaimed
+        long position = paused.reserve(64);
+        assertThat(consumer.poll(), is(nullValue()));
+        Thread.sleep(20);
+        assertThat(consumer.poll(), is(nullValue()));
+
+        assertThat(paused.write(position, length, late), is(false));
+
+        assertThat(producer.offer(bytes("data")), is(true));
+        assertThat(strings(consumer.poll()), contains("data"));
+        assertThat(consumer.reclaimedCount(), is(1L));
+    }
+
+    @Test
+    public void discardCorruptedRecords() throws Exception {
+        MappedRing producer = MappedRing.open(path);
+
+        assertThat(producer.offer(bytes("first")), is(true));
+        assertThat(producer.offer(bytes("second")), is(true));
+
+        // a late write overwrote the data of the first record
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes("X")),
+                          MappedRing.DATA_OFFSET + MappedRing.RECORD_HEADER + 4);
+        }
+
+        assertThat(consumer.poll(), is(nullValue()));
+        assertThat(consumer.discardedCount(), is(1L));
+
+        assertThat(producer.offer(bytes("third")), is(true));
+        assertThat(strings(consumer.poll()), contains("third"));
+    }
+
+    @Test
+    public void receiveAllMessagesFromConcurrentProducers() throws Exception {
+        int producers = 4;
+        int messages = 5000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            MappedRing producer = MappedRing.open(path);
+            String name = "P" + p;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < messages; i++) {
+                    byte[] data = bytes(name + ":" + i);
+                    while (!producer.offer(data)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * messages) {
+            byte[][] fields = consumer.poll();
+            if (fields == null) {
+                Thread.yield();
+                continue;
+            }
+            String[] msg = strings(fields).get(0).split(":");
+            int p = Integer.parseInt(msg[0].substring(1));
+            assertThat(Integer.parseInt(msg[1]), is(next[p]));
+            next[p]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(consumer.poll(), is(nullValue()));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(byte[][] fields) {
+        List<String> values = new ArrayList<>();
+        for (byte[] field : fields) {
+            values.add(new String(field, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+}
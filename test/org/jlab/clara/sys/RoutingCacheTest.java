@@ -0,0 +1,80 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.error.ClaraException;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RoutingCacheTest {
+
+    private static final String S1 = "10.10.10.1_java:C:S1";
+    private static final String S2 = "10.10.10.1_java:C:S2";
+    private static final String S3 = "10.10.10.1_java:C:S3";
+
+    private static final String C1 = S1 + "+" + S2 + ";";
+    private static final String C2 = S1 + "+" + S3 + ";";
+    private static final String C3 = S1 + "+" + S2 + "," + S3 + ";";
+
+    @Test
+    public void samePlanIsReturnedForSameComposition() throws Exception {
+        RoutingCache cache = new RoutingCache(S1, 4);
+
+        RoutingPlan plan = cache.get(C1);
+
+        assertThat(cache.get(C1), is(sameInstance(plan)));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void leastRecentlyUsedPlanIsEvicted() throws Exception {
+        RoutingCache cache = new RoutingCache(S1, 2);
+
+        RoutingPlan plan1 = cache.get(C1);
+        RoutingPlan plan2 = cache.get(C2);
+        cache.get(C1);
+        cache.get(C3);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(C1), is(sameInstance(plan1)));
+        assertThat(cache.get(C2), is(not(sameInstance(plan2))));
+    }
+
+    @Test
+    public void compilationErrorIsPropagated() throws Exception {
+        RoutingCache cache = new RoutingCache(S3, 2);
+
+        assertThrows(ClaraException.class, () -> cache.get(C1));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void invalidCapacityIsRejected() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> new RoutingCache(S1, 0));
+    }
+}
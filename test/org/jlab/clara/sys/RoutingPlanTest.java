@@ -0,0 +1,113 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.error.ClaraException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RoutingPlanTest {
+
+    private static final String S1 = "10.10.10.1_java:C:S1";
+    private static final String S2 = "10.10.10.1_java:C:S2";
+    private static final String S3 = "10.10.10.1_java:C:S3";
+    private static final String S4 = "10.10.10.1_java:C:S4";
+
+    @Test
+    public void unconditionalRoutesAreResolvedOnce() throws Exception {
+        RoutingPlan plan = new RoutingPlan(S2, S1 + "+" + S2 + "+" + S3 + "," + S4 + ";");
+
+        List<RoutingPlan.Route> first = plan.routes(S2, "", S1, "");
+        List<RoutingPlan.Route> second = plan.routes(S2, "DONE", S1, "");
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(names(first), containsInAnyOrder(S3, S4));
+    }
+
+    @Test
+    public void routesContainTopicAndProxyAddress() throws Exception {
+        RoutingPlan plan = new RoutingPlan(S1, S1 + "+" + S2 + ";");
+
+        RoutingPlan.Route route = plan.routes(S1, "", S1, "").get(0);
+
+        assertThat(route.topic.toString(), is(S2));
+        assertThat(route.address.host(), is("10.10.10.1"));
+    }
+
+    @Test
+    public void conditionalRoutesDependOnTheState() throws Exception {
+        String composition = S1 + ";"
+                + "if (" + S1 + " == \"FOO\") { " + S1 + "+" + S2 + "; } "
+                + "else { " + S1 + "+" + S3 + "; }";
+        RoutingPlan plan = new RoutingPlan(S1, composition);
+
+        assertThat(names(plan.routes(S1, "FOO", S1, "")), contains(S2));
+        assertThat(names(plan.routes(S1, "BAR", S1, "")), contains(S3));
+    }
+
+    @Test
+    public void conditionalRoutesReuseTheResolvedRoutes() throws Exception {
+        String composition = S1 + ";"
+                + "if (" + S1 + " == \"FOO\") { " + S1 + "+" + S2 + "; }";
+        RoutingPlan plan = new RoutingPlan(S1, composition);
+
+        RoutingPlan.Route first = plan.routes(S1, "FOO", S1, "").get(0);
+        RoutingPlan.Route second = plan.routes(S1, "FOO", S1, "").get(0);
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(plan.routes(S1, "BAR", S1, ""), is(empty()));
+    }
+
+    @Test
+    public void joinInputsAreCompiled() throws Exception {
+        String composition = S1 + "+" + S2 + "," + S3 + ";"
+                           + S2 + "," + S3 + "+&" + S4 + ";";
+        RoutingPlan plan = new RoutingPlan(S4, composition);
+
+        assertThat(plan.joinInputs(), containsInAnyOrder(S2, S3));
+    }
+
+    @Test
+    public void invalidCompositionIsRejected() throws Exception {
+        assertThrows(ClaraException.class, () -> new RoutingPlan(S4, S1 + "+" + S2 + ";"));
+    }
+
+    private static Set<String> names(List<RoutingPlan.Route> routes) {
+        Set<String> names = new HashSet<>();
+        for (RoutingPlan.Route route : routes) {
+            names.add(route.name);
+        }
+        return names;
+    }
+}
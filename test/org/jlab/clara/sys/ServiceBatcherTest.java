@@ -0,0 +1,117 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.engine.Engine;
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+
+public class ServiceBatcherTest {
+
+    private ServiceReport report;
+    private BlockingQueue<List<xMsgMessage>> batches;
+    private ServiceBatcher batcher;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        report = new ServiceReport(ClaraComponent.service("cont", "engine"),
+                                   mock(Engine.class), "");
+        batches = new LinkedBlockingQueue<>();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        batcher.stop();
+    }
+
+
+    @Test
+    public void fullBatchIsHandledImmediately() throws Exception {
+        batcher = batcher(3, TimeUnit.SECONDS.toMicros(10));
+        xMsgMessage m1 = message();
+        xMsgMessage m2 = message();
+        xMsgMessage m3 = message();
+
+        batcher.add(m1);
+        batcher.add(m2);
+
+        assertThat(batches.poll(), is(nullValue()));
+
+        batcher.add(m3);
+
+        assertThat(batches.poll(), contains(m1, m2, m3));
+        assertThat(report.getBatchCount(), is(1L));
+        assertThat(report.getBatchedCount(), is(3L));
+    }
+
+    @Test
+    public void partialBatchIsHandledAfterTimeout() throws Exception {
+        batcher = batcher(10, TimeUnit.MILLISECONDS.toMicros(20));
+        xMsgMessage m1 = message();
+        xMsgMessage m2 = message();
+
+        batcher.add(m1);
+        batcher.add(m2);
+
+        assertThat(batches.poll(1, TimeUnit.SECONDS), contains(m1, m2));
+        assertThat(report.getBatchCount(), is(1L));
+        assertThat(report.getBatchedCount(), is(2L));
+    }
+
+    @Test
+    public void stoppedBatcherReturnsPendingRequests() throws Exception {
+        batcher = batcher(10, TimeUnit.SECONDS.toMicros(10));
+        xMsgMessage m1 = message();
+
+        batcher.add(m1);
+
+        assertThat(batcher.stop(), contains(m1));
+        assertThat(report.getBatchCount(), is(0L));
+    }
+
+
+    private ServiceBatcher batcher(int size, long time) {
+        return new ServiceBatcher("test", size, time, batches::add, Throwable::printStackTrace,
+                                  report);
+    }
+
+    private static xMsgMessage message() {
+        return new xMsgMessage(xMsgTopic.wrap("test"), "text/string", "data".getBytes());
+    }
+}
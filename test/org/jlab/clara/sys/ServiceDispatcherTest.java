@@ -0,0 +1,438 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.engine.Engine;
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ServiceDispatcherTest {
+
+    private ExecutorService pool;
+    private ServiceReport report;
+    private ServiceEngine[] engines;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        pool = Executors.newFixedThreadPool(4);
+        report = new ServiceReport(ClaraComponent.service("cont", "engine"),
+                                   mock(Engine.class), "");
+        engines = new ServiceEngine[] {mock(ServiceEngine.class), mock(ServiceEngine.class)};
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+    }
+
+
+    @Test
+    public void requestRunsOnLastIdleEngine() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        List<ServiceEngine> used = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+
+        for (int i = 0; i < 2; i++) {
+            dispatcher.dispatch(message(), (e, m) -> {
+                used.add(e);
+                done.countDown();
+            }, 1, TimeUnit.SECONDS);
+            done.await(100, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertThat(used, contains(engines[1], engines[1]));
+    }
+
+    @Test
+    public void requestIsQueuedWhileEnginesAreBusy() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dispatcher.dispatch(message(), (e, m) -> {
+                release.await();
+                done.countDown();
+            }, 1, TimeUnit.SECONDS));
+        }
+
+        assertThat(dispatcher.queueDepth(), is(1));
+        assertThat(report.getQueueDepth(), is(1));
+
+        release.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertThat(dispatcher.queueDepth(), is(0));
+        assertThat(report.getQueuedCount(), is(1L));
+    }
+
+    @Test
+    public void requestIsRejectedWhenQueueIsFull() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(message(), (e, m) -> release.await(), 1, TimeUnit.SECONDS);
+        }
+        boolean accepted = dispatcher.dispatch(message(), (e, m) -> { },
+                                               10, TimeUnit.MILLISECONDS);
+        release.countDown();
+
+        assertFalse(accepted);
+        assertThat(report.getRejectedCount(), is(1L));
+    }
+
+    @Test
+    public void offerDoesNotWaitWhenQueueIsFull() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(dispatcher.offer(message(), (e, m) -> release.await()));
+        }
+        boolean accepted = dispatcher.offer(message(), (e, m) -> { });
+        release.countDown();
+
+        assertFalse(accepted);
+        assertThat(report.getRejectedCount(), is(0L));
+    }
+
+    @Test
+    public void broadcastRunsOnEveryEngineBeforeQueuedRequests() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+
+        dispatcher.dispatch(message(), (e, m) -> {
+            release.await();
+            calls.add("execute");
+            done.countDown();
+        }, 1, TimeUnit.SECONDS);
+        dispatcher.dispatch(message(), (e, m) -> {
+            release.await();
+            calls.add("execute");
+            done.countDown();
+        }, 1, TimeUnit.SECONDS);
+        dispatcher.dispatch(message(), (e, m) -> {
+            calls.add("queued");
+            done.countDown();
+        }, 1, TimeUnit.SECONDS);
+
+        List<ServiceEngine> configured = Collections.synchronizedList(new ArrayList<>());
+        assertTrue(dispatcher.dispatchAll(message(), n -> (e, m) -> {
+            configured.add(e);
+            calls.add("configure");
+            done.countDown();
+        }, (e, m) -> { }));
+        release.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertThat(configured, containsInAnyOrder(engines[0], engines[1]));
+        assertThat(calls.indexOf("queued"), is(greaterThan(calls.indexOf("configure"))));
+    }
+
+    @Test
+    public void controlRequestRunsBeforeQueuedRequests() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+        dispatcher.dispatch(message(), (e, m) -> blocked.await(), 1, TimeUnit.SECONDS);
+        dispatcher.dispatch(message(), (e, m) -> release.await(), 1, TimeUnit.SECONDS);
+        dispatcher.dispatch(message(), (e, m) -> {
+            calls.add("data");
+            done.countDown();
+        }, 1, TimeUnit.SECONDS);
+        assertTrue(dispatcher.dispatchControl(message(), (e, m) -> {
+            calls.add("control");
+            done.countDown();
+        }));
+
+        assertThat(dispatcher.queueDepth(), is(1));
+
+        release.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertThat(calls, contains("control", "data"));
+
+        blocked.countDown();
+    }
+
+    @Test
+    public void controlRequestIsNotRejectedWhenQueueIsFull() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(message(), (e, m) -> release.await(), 1, TimeUnit.SECONDS);
+        }
+        assertFalse(dispatcher.dispatch(message(), (e, m) -> { }, 0, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatchControl(message(), (e, m) -> done.countDown()));
+
+        release.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitIdleWaitsForRunningRequests() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        CountDownLatch release = new CountDownLatch(1);
+
+        dispatcher.dispatch(message(), (e, m) -> release.await(), 1, TimeUnit.SECONDS);
+
+        assertFalse(dispatcher.awaitIdle(10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+
+        assertTrue(dispatcher.awaitIdle(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void stoppedDispatcherDropsQueuedRequests() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch(message(), (e, m) -> release.await(), 1, TimeUnit.SECONDS);
+        }
+
+        assertThat(dispatcher.stop(), is(3));
+        assertFalse(dispatcher.dispatch(message(), (e, m) -> { }, 1, TimeUnit.SECONDS));
+
+        release.countDown();
+    }
+
+    @Test
+    public void elasticPoolGrowsWhenRequestsWait() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        TestFactory factory = new TestFactory();
+        dispatcher.setEngineFactory(factory, 0, 1, TimeUnit.HOURS);
+        dispatcher.resize(2, 4);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(message(), (e, m) -> {
+                started.countDown();
+                release.await();
+            }, 1, TimeUnit.SECONDS);
+        }
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        assertThat(dispatcher.poolSize(), is(4));
+        assertThat(factory.created, hasSize(2));
+        assertThat(report.getEngineCount(), is(4));
+
+        release.countDown();
+    }
+
+    @Test
+    public void newEngineReplaysLastBroadcast() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        TestFactory factory = new TestFactory();
+        dispatcher.setEngineFactory(factory, 1, 1, TimeUnit.HOURS);
+        List<ServiceEngine> configured = new CopyOnWriteArrayList<>();
+        List<ServiceEngine> replayed = new CopyOnWriteArrayList<>();
+
+        assertTrue(dispatcher.dispatchAll(message(), n -> (e, m) -> configured.add(e),
+                                          (e, m) -> replayed.add(e)));
+        dispatcher.resize(3, 3);
+
+        awaitCondition(() -> replayed.size() == 1);
+        assertThat(configured, containsInAnyOrder(engines[0], engines[1]));
+        assertThat(replayed, contains(factory.created.get(0)));
+    }
+
+    @Test
+    public void elasticPoolShrinksIdleEngines() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        TestFactory factory = new TestFactory();
+        dispatcher.setEngineFactory(factory, 1, 0, TimeUnit.HOURS);
+        dispatcher.resize(1, 2);
+
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch(message(), (e, m) -> done.countDown(), 1, TimeUnit.SECONDS);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(dispatcher.awaitIdle(1, TimeUnit.SECONDS));
+        awaitCondition(() -> factory.destroyed.size() == 1);
+        assertThat(dispatcher.poolSize(), is(1));
+    }
+
+    @Test
+    public void elasticPoolShrinksWithoutNewRequests() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        TestFactory factory = new TestFactory();
+        dispatcher.setEngineFactory(factory, 1, 50, TimeUnit.MILLISECONDS);
+        dispatcher.resize(1, 2);
+
+        assertThat(dispatcher.poolSize(), is(2));
+
+        // no request is dispatched, the idle engine is retired by the sweep
+        awaitCondition(() -> factory.destroyed.size() == 1);
+        assertThat(dispatcher.poolSize(), is(1));
+        assertThat(report.getEngineCount(), is(1));
+    }
+
+    @Test
+    public void createEnginesInBackground() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        CountDownLatch created = new CountDownLatch(1);
+        TestFactory factory = new TestFactory() {
+            @Override
+            public ServiceEngine create() {
+                try {
+                    created.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.create();
+            }
+        };
+        dispatcher.setEngineFactory(factory, 1, 1, TimeUnit.HOURS);
+
+        // the caller does not wait for the slow factory
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> dispatcher.resize(3, 3));
+        assertThat(dispatcher.poolSize(), is(2));
+
+        created.countDown();
+
+        awaitCondition(() -> dispatcher.poolSize() == 3);
+        assertThat(factory.created, hasSize(1));
+    }
+
+    @Test
+    public void releasedEngineIsReplaced() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        TestFactory factory = new TestFactory();
+        dispatcher.setEngineFactory(factory, 1, 1, TimeUnit.HOURS);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        dispatcher.dispatch(message(), (e, m) -> {
+            started.countDown();
+            release.await();
+        }, 1, TimeUnit.SECONDS);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        assertFalse(dispatcher.release(engines[0]));
+        assertTrue(dispatcher.release(engines[1]));
+        awaitCondition(() -> dispatcher.poolSize() == 2);
+        assertThat(factory.created, hasSize(1));
+
+        release.countDown();
+        pool.shutdown();
+
+        assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+        awaitCondition(() -> !factory.destroyed.isEmpty());
+        assertThat(factory.destroyed, contains(engines[1]));
+    }
+
+    @Test
+    public void resizeCreatesAndDestroysEngines() throws Exception {
+        ServiceDispatcher dispatcher = dispatcher(10);
+        TestFactory factory = new TestFactory();
+        dispatcher.setEngineFactory(factory, 1, 1, TimeUnit.HOURS);
+
+        dispatcher.resize(3, 4);
+
+        awaitCondition(() -> dispatcher.poolSize() == 3);
+        assertThat(factory.created, hasSize(1));
+
+        dispatcher.resize(1, 1);
+
+        assertThat(dispatcher.poolSize(), is(1));
+        awaitCondition(() -> factory.destroyed.size() == 2);
+    }
+
+
+    private ServiceDispatcher dispatcher(int queueSize) {
+        return new ServiceDispatcher("test", pool, engines, queueSize, report,
+                                     Throwable::printStackTrace);
+    }
+
+    private static xMsgMessage message() {
+        return new xMsgMessage(xMsgTopic.wrap("test"), "text/string", "data".getBytes());
+    }
+
+    // the elastic pool is resized in the background
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timeout waiting for the pool");
+            Thread.sleep(1);
+        }
+    }
+
+
+    private static class TestFactory implements ServiceDispatcher.EngineFactory {
+
+        private final List<ServiceEngine> created = new CopyOnWriteArrayList<>();
+        private final List<ServiceEngine> destroyed = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ServiceEngine create() {
+            ServiceEngine engine = mock(ServiceEngine.class);
+            created.add(engine);
+            return engine;
+        }
+
+        @Override
+        public void destroy(ServiceEngine engine) {
+            destroyed.add(engine);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.engine.Engine;
+import org.jlab.clara.util.report.ServiceReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ServiceSenderTest {
+
+    private ServiceReport report;
+    private BlockingQueue<Exception> errors;
+    private ServiceSender sender;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        report = new ServiceReport(ClaraComponent.service("cont", "engine"),
+                                   mock(Engine.class), "");
+        errors = new LinkedBlockingQueue<>();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        sender.stop(1, TimeUnit.SECONDS);
+    }
+
+
+    @Test
+    public void resultsAreSentInBackground() throws Exception {
+        sender = sender(1, 4);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch sent = new CountDownLatch(2);
+
+        sender.submit(() -> {
+            blocked.await();
+            sent.countDown();
+        });
+        sender.submit(sent::countDown);
+
+        assertThat(sent.getCount(), is(2L));
+        blocked.countDown();
+        assertTrue(sent.await(1, TimeUnit.SECONDS));
+        assertThat(report.getSendQueuedCount(), is(2L));
+    }
+
+    @Test
+    public void fullQueueBlocksTheEngine() throws Exception {
+        sender = sender(1, 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        sender.submit(() -> {
+            started.countDown();
+            blocked.await();
+        });
+        started.await();
+        sender.submit(() -> { });
+
+        Thread engine = new Thread(() -> {
+            try {
+                sender.submit(() -> { });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        engine.start();
+        engine.join(100);
+
+        assertThat(engine.isAlive(), is(true));
+        assertThat(report.getSendBlockedCount(), is(1L));
+
+        blocked.countDown();
+        engine.join(1000);
+        assertThat(engine.isAlive(), is(false));
+    }
+
+    @Test
+    public void queueDepthIsReportedOnSubmit() throws Exception {
+        sender = sender(1, 4);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        sender.submit(() -> {
+            started.countDown();
+            blocked.await();
+        });
+        started.await();
+        sender.submit(() -> { });
+        sender.submit(() -> { });
+
+        assertThat(report.getSendQueueDepth(), is(2));
+        blocked.countDown();
+    }
+
+    @Test
+    public void stopSendsQueuedResults() throws Exception {
+        sender = sender(1, 8);
+        CountDownLatch sent = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            sender.submit(sent::countDown);
+        }
+
+        int dropped = sender.stop(1, TimeUnit.SECONDS);
+
+        assertThat(dropped, is(0));
+        assertThat(sent.getCount(), is(0L));
+        assertThrows(IllegalStateException.class, () -> sender.submit(() -> { }));
+    }
+
+    @Test
+    public void sendErrorsAreHandled() throws Exception {
+        sender = sender(2, 8);
+        Exception error = new Exception("send failed");
+
+        sender.submit(() -> {
+            throw error;
+        });
+
+        assertThat(errors.poll(1, TimeUnit.SECONDS), is(error));
+    }
+
+    private ServiceSender sender(int threads, int queueSize) {
+        return new ServiceSender("S1", threads, queueSize, errors::add, report);
+    }
+}
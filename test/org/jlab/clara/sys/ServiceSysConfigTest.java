@@ -0,0 +1,121 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ServiceSysConfigTest {
+
+    private ServiceSysConfig config;
+
+    @BeforeEach
+    public void setUp() {
+        config = new ServiceSysConfig("10.10.10.1_java:C:S1", "");
+    }
+
+    @Test
+    public void doneReportGoesWithThresholdRequest() throws Exception {
+        enableDone(3);
+
+        assertThat(config.isDoneRequest(config.addRequest()), is(false));
+        assertThat(config.isDoneRequest(config.addRequest()), is(false));
+        assertThat(config.isDoneRequest(config.addRequest()), is(true));
+        assertThat(config.isDoneRequest(config.addRequest()), is(false));
+    }
+
+    @Test
+    public void dataReportIsNotOwnedByDoneRequest() throws Exception {
+        enableDone(1);
+
+        int reports = config.addRequest();
+
+        assertThat(config.isDoneRequest(reports), is(true));
+        assertThat(config.isDataRequest(reports), is(false));
+    }
+
+    @Test
+    public void disabledReportDoesNotCountRequests() throws Exception {
+        config.addRequest();
+        int reports = config.addRequest();
+
+        assertThat(config.getDoneRequestCount(), is(0L));
+        assertThat(reports, is(0));
+    }
+
+    @Test
+    public void resetRestartsThresholdCount() throws Exception {
+        enableDone(2);
+        config.addRequest();
+
+        config.resetDoneRequestCount();
+
+        assertThat(config.getDoneRequestCount(), is(0L));
+        assertThat(config.isDoneRequest(config.addRequest()), is(false));
+        assertThat(config.isDoneRequest(config.addRequest()), is(true));
+    }
+
+    @Test
+    public void disablingReportDiscardsOwnedReports() throws Exception {
+        enableDone(1);
+        int reports = config.addRequest();
+
+        config.setDoneRequest(false);
+
+        assertThat(config.isDoneRequest(reports), is(false));
+    }
+
+    @Test
+    public void concurrentRequestsPublishExactlyOneReportPerThreshold() throws Exception {
+        enableDone(100);
+        AtomicInteger reports = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100_000; i++) {
+            pool.execute(() -> {
+                if (config.isDoneRequest(config.addRequest())) {
+                    reports.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(30, TimeUnit.SECONDS);
+
+        assertThat(config.getDoneRequestCount(), is(100_000L));
+        assertThat(reports.get(), is(1000));
+    }
+
+    private void enableDone(int threshold) {
+        config.setDoneRequest(true);
+        config.setDoneReportThreshold(threshold);
+        config.resetDoneRequestCount();
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.ClaraUtil;
+import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.base.core.ClaraConstants;
+import org.jlab.clara.base.core.DataUtil;
+import org.jlab.clara.engine.Engine;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SharedMemoryTest {
+
+    private static final String HOST = "10.1.1.1";
+    private static final String DPE = HOST + "_java";
+    private static final String RECEIVER = DPE + ":C:S1";
+    private static final String SENDER = DPE + ":C:S0";
+
+    // the data received by the engines of the services under test
+    private static final BlockingQueue<Object> RECEIVED = new LinkedBlockingQueue<>();
+
+    private static volatile CountDownLatch engineLatch;
+
+    private final List<Service> services = new ArrayList<>();
+    private int nextId;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        RECEIVED.clear();
+        engineLatch = new CountDownLatch(0);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        engineLatch.countDown();
+        services.forEach(Service::stop);
+        SharedMemory.removeInbox(RECEIVER);
+        SharedMemory.removeReceiver(RECEIVER);
+        SharedMemory.setMaxAge(SharedMemory.DEFAULT_MAX_AGE, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void getStoredDataOnlyOnce() throws Exception {
+        EngineData data = new EngineData();
+        SharedMemory.addReceiver(RECEIVER);
+        SharedMemory.putEngineData(RECEIVER, SENDER, 7, data);
+
+        assertThat(SharedMemory.getEngineData(RECEIVER, SENDER, 7), is(sameInstance(data)));
+        assertThat(SharedMemory.getEngineData(RECEIVER, SENDER, 7), is(nullValue()));
+    }
+
+    @Test
+    public void getDataOfUnknownSender() throws Exception {
+        SharedMemory.addReceiver(RECEIVER);
+        SharedMemory.putEngineData(RECEIVER, SENDER, 1, new EngineData());
+
+        assertThat(SharedMemory.getEngineData(RECEIVER, "10.1.1.1_java:C:S9", 1),
+                   is(nullValue()));
+    }
+
+    @Test
+    public void storeManyEventsPerReceiver() throws Exception {
+        int events = 1000;
+        EngineData[] data = new EngineData[events];
+        SharedMemory.addReceiver(RECEIVER);
+        for (int i = 0; i < events; i++) {
+            data[i] = new EngineData();
+            SharedMemory.putEngineData(RECEIVER, SENDER, i, data[i]);
+        }
+        for (int i = 0; i < events; i += 2) {
+            assertThat(SharedMemory.getEngineData(RECEIVER, SENDER, i), is(sameInstance(data[i])));
+        }
+        for (int i = 1; i < events; i += 2) {
+            assertThat(SharedMemory.getEngineData(RECEIVER, SENDER, i), is(sameInstance(data[i])));
+        }
+        assertThat(SharedMemory.occupancy(), is(0));
+    }
+
+    @Test
+    public void evictUnclaimedData() throws Exception {
+        SharedMemory.addReceiver(RECEIVER);
+        SharedMemory.setMaxAge(1, TimeUnit.MILLISECONDS);
+        long evicted = SharedMemory.evictedCount();
+
+        SharedMemory.putEngineData(RECEIVER, SENDER, 1, new EngineData());
+        SharedMemory.putEngineData(RECEIVER, SENDER, 2, new EngineData());
+        Thread.sleep(10);
+
+        assertThat(SharedMemory.evictExpired(), is(2));
+        assertThat(SharedMemory.evictedCount() - evicted, is(2L));
+        assertThat(SharedMemory.getEngineData(RECEIVER, SENDER, 1), is(nullValue()));
+    }
+
+    @Test
+    public void keepRecentData() throws Exception {
+        SharedMemory.addReceiver(RECEIVER);
+        SharedMemory.putEngineData(RECEIVER, SENDER, 1, new EngineData());
+
+        assertThat(SharedMemory.evictExpired(), is(0));
+        assertThat(SharedMemory.occupancy(), is(greaterThan(0)));
+    }
+
+    @Test
+    public void passOutputToServiceOfSameDpe() throws Exception {
+        Service sender = startService("S0", EchoEngine.class, 10);
+        Service receiver = startService("S1", EchoEngine.class, 10);
+
+        String composition = SENDER + "+" + RECEIVER + ";";
+        assertThat(SharedMemory.deliver(SENDER, request(SENDER, composition, "event")), is(true));
+
+        assertThat(RECEIVED.poll(2, TimeUnit.SECONDS), is("event"));
+        assertThat(RECEIVED.poll(2, TimeUnit.SECONDS), is("event"));
+
+        assertThat(sender.getReport().getShrmWrites(), is(1));
+        assertThat(sender.getReport().getDirectSends(), is(1L));
+        assertThat(receiver.getReport().getShrmReads(), is(1));
+        assertThat(receiver.getReport().getFailureCount(), is(0));
+        assertThat(SharedMemory.occupancy(), is(0));
+    }
+
+    @Test
+    public void doNotBlockWhenQueueOfReceiverIsFull() throws Exception {
+        startService("S1", EchoEngine.class, 1);
+        engineLatch = new CountDownLatch(1);
+
+        String composition = RECEIVER + ";";
+        assertThat(SharedMemory.deliver(RECEIVER, request(RECEIVER, composition, "e1")), is(true));
+        assertThat(SharedMemory.deliver(RECEIVER, request(RECEIVER, composition, "e2")), is(true));
+        assertThat(SharedMemory.deliver(RECEIVER, request(RECEIVER, composition, "e3")), is(false));
+
+        engineLatch.countDown();
+
+        assertThat(RECEIVED.poll(2, TimeUnit.SECONDS), is("e1"));
+        assertThat(RECEIVED.poll(2, TimeUnit.SECONDS), is("e2"));
+    }
+
+    @Test
+    public void doNotBlockSubscriptionWhenQueueIsFull() throws Exception {
+        Service receiver = startService("S1", EchoEngine.class, 1);
+        Service.ServiceCallBack callback = receiver.new ServiceCallBack();
+        engineLatch = new CountDownLatch(1);
+
+        String composition = RECEIVER + ";";
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            for (int i = 1; i <= 4; i++) {
+                callback.callback(request(RECEIVER, composition, "e" + i));
+            }
+        });
+        // the requests waiting for a slot keep their order
+        assertThat(SharedMemory.deliver(RECEIVER, request(RECEIVER, composition, "e5")),
+                   is(false));
+
+        engineLatch.countDown();
+
+        for (int i = 1; i <= 4; i++) {
+            assertThat(RECEIVED.poll(2, TimeUnit.SECONDS), is("e" + i));
+        }
+        assertThat(receiver.getReport().getFailureCount(), is(0));
+    }
+
+    @Test
+    public void executeBatchOfEventsOneByOne() throws Exception {
+        ServiceOptions batching = new ServiceOptions(false, 2, 1_000_000, 0, 0, false, 0, 0, 0);
+        Service receiver = startService("S1", EchoEngine.class, 10, batching);
+
+        String composition = RECEIVER + ";";
+        assertThat(SharedMemory.deliver(RECEIVER, request(RECEIVER, composition, "e1")), is(true));
+        assertThat(SharedMemory.deliver(RECEIVER, request(RECEIVER, composition, "e2")), is(true));
+
+        assertThat(RECEIVED.poll(2, TimeUnit.SECONDS), is("e1"));
+        assertThat(RECEIVED.poll(2, TimeUnit.SECONDS), is("e2"));
+        assertThat(receiver.getReport().getBatchCount(), is(1L));
+        assertThat(receiver.getReport().getFailureCount(), is(0));
+    }
+
+    @Test
+    public void doNotDeliverToStoppedService() throws Exception {
+        Service receiver = startService("S1", EchoEngine.class, 10);
+        services.remove(receiver);
+        receiver.stop();
+
+        assertThat(SharedMemory.deliver(RECEIVER, request(RECEIVER, RECEIVER + ";", "e1")),
+                   is(false));
+    }
+
+    private Service startService(String engine, Class<? extends Engine> engineClass,
+                                 int queueSize) throws Exception {
+        return startService(engine, engineClass, queueSize, ServiceOptions.DEFAULT);
+    }
+
+    private Service startService(String engine, Class<? extends Engine> engineClass,
+                                 int queueSize, ServiceOptions options) throws Exception {
+        ClaraComponent comp = ClaraComponent.service(HOST, ClaraConstants.JAVA_PORT,
+                                                     ClaraConstants.JAVA_LANG,
+                                                     "C", engine, engineClass.getName(),
+                                                     1, "test", ClaraConstants.UNDEFINED);
+        DpeResources resources = new DpeResources(null, null, null, null);
+        DpeConfig config = new DpeConfig(2, 1, 0, queueSize, false, 0, null, 0);
+        Service service = new Service(comp, ClaraComponent.dpe(DPE), resources, config,
+                                      options, "");
+        services.add(service);
+        // the same inbox registered when the service is started,
+        // without subscribing to the proxy
+        SharedMemory.addInbox(comp.getCanonicalName(), service::offer);
+        return service;
+    }
+
+    private xMsgMessage request(String service, String composition, String data)
+            throws Exception {
+        EngineData input = new EngineData();
+        input.setData(EngineDataType.STRING.mimeType(), data);
+        input.setCommunicationId(++nextId);
+        xMsgMessage msg = DataUtil.serialize(xMsgTopic.wrap(service), input,
+                                             ClaraUtil.buildDataTypes(EngineDataType.STRING));
+        xMsgMeta.Builder meta = msg.getMetaData();
+        meta.setAuthor("orchestrator");
+        meta.setSender("orchestrator");
+        meta.setComposition(composition);
+        meta.setAction(xMsgMeta.ControlAction.EXECUTE);
+        return msg;
+    }
+
+
+    /**
+     * Records and returns the received data.
+     */
+    public static class EchoEngine implements Engine {
+
+        @Override
+        public EngineData configure(EngineData input) {
+            return null;
+        }
+
+        @Override
+        public EngineData execute(EngineData input) {
+            try {
+                engineLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            RECEIVED.add(input.getData());
+            EngineData output = new EngineData();
+            output.setData(EngineDataType.STRING.mimeType(), input.getData());
+            return output;
+        }
+
+        @Override
+        public EngineData executeGroup(Set<EngineData> inputs) {
+            return null;
+        }
+
+        @Override
+        public Set<EngineDataType> getInputDataTypes() {
+            return ClaraUtil.buildDataTypes(EngineDataType.STRING);
+        }
+
+        @Override
+        public Set<EngineDataType> getOutputDataTypes() {
+            return ClaraUtil.buildDataTypes(EngineDataType.STRING);
+        }
+
+        @Override
+        public Set<String> getStates() {
+            return null;
+        }
+
+        @Override
+        public String getDescription() {
+            return "echo";
+        }
+
+        @Override
+        public String getVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public String getAuthor() {
+            return "test";
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -100,6 +101,30 @@ public class CompositionCompilerTest {
         assertThat(cc.getUnconditionalLinks(), is(expected));
     }
 
+    @Test
+    public void testLogicalAndJoin() throws Exception {
+        CompositionCompiler cc = new CompositionCompiler("10.10.10.1_java:C:S4");
+        String composition = "10.10.10.1_java:C:S1+"
+                           + "10.10.10.1_java:C:S2,"
+                           + "10.10.10.1_java:C:S3;"
+                           + "10.10.10.1_java:C:S2,"
+                           + "10.10.10.1_java:C:S3+"
+                           + "&10.10.10.1_java:C:S4;";
+        cc.compile(composition);
+
+        Set<String> expected = new HashSet<>(Arrays.asList("10.10.10.1_java:C:S2",
+                                                           "10.10.10.1_java:C:S3"));
+        assertThat(cc.getJoinInputs(), is(expected));
+    }
+
+    @Test
+    public void testNoLogicalAndJoin() throws Exception {
+        CompositionCompiler cc = new CompositionCompiler("10.10.10.1_java:C:S2");
+        cc.compile(composition);
+
+        assertThat(cc.getJoinInputs(), is(empty()));
+    }
+
     @Test
     public void testMultiStatementBranching() throws Exception {
         CompositionCompiler cc = new CompositionCompiler("10.10.10.1_java:C:S2");
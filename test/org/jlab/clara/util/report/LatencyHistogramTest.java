@@ -0,0 +1,129 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.util.report;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void valuesAreCountedInPowerOfTwoBuckets() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(100);
+
+        assertThat(histogram.counts(), is(new long[] {1, 1, 2, 0, 0, 0, 0, 1}));
+        assertThat(histogram.count(), is(5L));
+    }
+
+    @Test
+    public void percentileReturnsBucketUpperBound() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(10);
+        }
+        histogram.record(1000);
+
+        assertThat(histogram.percentile(50), is(15L));
+        assertThat(histogram.percentile(99), is(15L));
+        assertThat(histogram.percentile(100), is(1023L));
+    }
+
+    @Test
+    public void preciseHistogramSplitsPowersOfTwo() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(2);
+
+        histogram.record(3);
+        histogram.record(4);
+        histogram.record(5);
+        histogram.record(7);
+        histogram.record(8);
+
+        assertThat(histogram.counts(), is(new long[] {0, 0, 0, 1, 1, 1, 0, 1, 1}));
+        assertThat(histogram.percentile(100), is(9L));
+    }
+
+    @Test
+    public void preciseHistogramKeepsRelativeError() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(3);
+
+        histogram.record(1000);
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.percentile(50), is(1023L));
+        assertThat(histogram.percentile(100), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void histogramsAreMerged() throws Exception {
+        LatencyHistogram first = new LatencyHistogram(3);
+        LatencyHistogram second = new LatencyHistogram(3);
+        first.record(10);
+        second.record(10);
+        second.record(500);
+
+        first.merge(second);
+
+        assertThat(first.count(), is(3L));
+        assertThat(first.percentile(50), is(10L));
+    }
+
+    @Test
+    public void deltaContainsOnlyNewValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(3);
+        histogram.record(10);
+        LatencyHistogram previous = new LatencyHistogram(3, histogram.counts());
+        histogram.record(2000);
+
+        LatencyHistogram delta = histogram.minus(previous);
+
+        assertThat(delta.count(), is(1L));
+        assertThat(delta.percentile(50), is(2047L));
+    }
+
+    @Test
+    public void differentPrecisionIsRejected() throws Exception {
+        LatencyHistogram first = new LatencyHistogram(3);
+        LatencyHistogram second = new LatencyHistogram();
+
+        assertThrows(IllegalArgumentException.class, () -> first.merge(second));
+        assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram(7));
+    }
+
+    @Test
+    public void emptyHistogramHasNoPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.counts().length, is(0));
+        assertThat(histogram.percentile(99), is(0L));
+    }
+}
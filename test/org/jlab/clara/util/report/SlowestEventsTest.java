@@ -0,0 +1,62 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.util.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class SlowestEventsTest {
+
+    @Test
+    public void keepsSlowestEventsSorted() throws Exception {
+        SlowestEvents events = new SlowestEvents(3);
+
+        events.add(1, 20);
+        events.add(2, 50);
+        events.add(3, 10);
+        events.add(4, 40);
+        events.add(5, 5);
+
+        assertThat(ids(events), contains(2, 4, 1));
+    }
+
+    @Test
+    public void keepsAllEventsWhenNotFull() throws Exception {
+        SlowestEvents events = new SlowestEvents(10);
+
+        events.add(1, 20);
+        events.add(2, 30);
+
+        assertThat(ids(events), contains(2, 1));
+    }
+
+
+    private static List<Integer> ids(SlowestEvents events) {
+        return events.get().stream().map(SlowestEvents.Event::id).collect(Collectors.toList());
+    }
+}